@@ -18,6 +18,7 @@
 
 package com.microfocus.adm.almoctane.ciplugins.gocd.dto;
 
+import com.google.gson.annotations.SerializedName;
 import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoGetPipelineHistory;
 
 import java.util.List;
@@ -28,6 +29,8 @@ import java.util.List;
 public class GoPipelineHistory {
 
 	private List<GoPipelineInstance> pipelines;
+	@SerializedName("_links")
+	private GoLinks links;
 
 	public List<GoPipelineInstance> getPipelines() {
 		return pipelines;
@@ -36,4 +39,19 @@ public class GoPipelineHistory {
 	public void setPipelines(List<GoPipelineInstance> pipelines) {
 		this.pipelines = pipelines;
 	}
+
+	public GoLinks getLinks() {
+		return links;
+	}
+
+	public void setLinks(GoLinks links) {
+		this.links = links;
+	}
+
+	/**
+	 * @return the link to the next (older) page of the history or null if this is the last page
+	 */
+	public String getNextPageHref() {
+		return links != null && links.getNext() != null ? links.getNext().getHref() : null;
+	}
 }
@@ -28,22 +28,28 @@ import com.hp.octane.integrations.dto.pipelines.PipelineNode;
 import com.hp.octane.integrations.dto.pipelines.PipelinePhase;
 import com.hp.octane.integrations.dto.tests.BuildContext;
 import com.hp.octane.integrations.dto.tests.TestRun;
-import com.hp.octane.integrations.dto.tests.TestsResult;
+import com.hp.octane.integrations.dto.tests.TestRunError;
 import com.microfocus.adm.almoctane.ciplugins.gocd.dto.*;
 import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.OctaneGoCDPlugin;
 import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter.OctaneTestResultsBuilder;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter.PipelineDependencyGraph;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter.ReportFormat;
 import com.microfocus.adm.almoctane.ciplugins.gocd.service.*;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.LruCache;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.SpoolBuffer;
 import com.microfocus.adm.almoctane.ciplugins.gocd.util.converter.Converter;
 import com.microfocus.adm.almoctane.ciplugins.gocd.util.converter.ListConverter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.*;
 import java.security.AccessControlException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 /**
  * This class is the entry point into the Octane-PluginService.
  * As described in <a href="https://github.com/MicroFocus/octane-ci-java-sdk/blob/master/README.md">ReadMe</a>
@@ -56,6 +62,18 @@ public class GoPluginServices extends CIPluginServices {
 	private static String goServerID;
 	private static String goServerURL;
 
+	/** The pipeline structures Octane requested so far, keyed by the pipeline name. */
+	private static final LruCache<String, CachedPipelineStructure> PipelineStructureCache = new LruCache<>(1024);
+	/** The test results of recently finished pipeline runs, prefetched before Octane pulls them. */
+	private static final TestResultStaging StagedTestResults = new TestResultStaging(TestResultStaging.DefaultMaxEntries,
+		TestResultStaging.DefaultMaxBytes, TestResultStaging.DefaultMaxAgeMillis, 2, (jobId, buildNumber) -> new GoPluginServices().loadTestsResult(jobId, buildNumber));
+	/** The test runs of finished stages, converted while the rest of the pipeline run is still building. */
+	private static final TestReportFetcher<TestRun> ReportFetcher = new TestReportFetcher<>(TestReportFetcher.DefaultWorkers, TestReportFetcher.DefaultMaxInFlightBytes);
+
+	private static final TestRunAccumulator<TestRun> IngestedTestRuns = new TestRunAccumulator<>(TestRunAccumulator.DefaultMaxBuilds,
+		TestRunAccumulator.DefaultMaxBytes, 2, GoPluginServices::estimateSize,
+		(pipelineName, pipelineCounter, stageName, stageCounter) -> new GoPluginServices().loadTestRuns(pipelineName, pipelineCounter, stageName, stageCounter));
+
 	public String getGoServerID() {
 		return goServerID;
 	}
@@ -164,49 +182,188 @@ public class GoPluginServices extends CIPluginServices {
 		if (rootCIJobId == null || rootCIJobId.isEmpty()) {
 			throw new IllegalArgumentException("no pipeline identifier was given");
 		}
-		final GoPipelineConfig config = new GoGetPipelineConfig(createGoApiClient()).get(rootCIJobId);
-		if (config == null) {
+		return getPipeline(createGoApiClient(), rootCIJobId);
+	}
+
+	/**
+	 * @return the structure of the given pipeline; reused as long as the eTag of its configuration does not change
+	 */
+	PipelineNode getPipeline(final GoApiClient goApiClient, final String rootCIJobId) {
+		final CachedPipelineStructure cached = PipelineStructureCache.get(rootCIJobId);
+		final GoGetPipelineConfig.Result result = new GoGetPipelineConfig(goApiClient).get(rootCIJobId, cached != null ? cached.eTag : null);
+		if (result == null) {
+			PipelineStructureCache.remove(rootCIJobId);
+			return null;
+		}
+		if (cached != null && (result.isNotModified() || cached.eTag.equals(result.getETag()))) {
+			Log.debug("Configuration of '" + rootCIJobId + "' did not change, reusing the pipeline structure");
+			return cached.structure;
+		}
+		if (result.getConfig() == null) {
 			return null;
 		}
 
-		return createPipelineStructure(config);
+		PipelineDependencyGraph.getInstance().update(rootCIJobId, result.getConfig(), result.getETag());
+		final PipelineNode structure = createPipelineStructure(result.getConfig());
+		PipelineStructureCache.put(rootCIJobId, new CachedPipelineStructure(result.getETag(), structure));
+		OctaneGoCDPlugin.requestHistoryBackfill(rootCIJobId); // Octane reads the structure when the pipeline gets linked.
+		return structure;
+	}
+
+	/**
+	 * A pipeline structure together with the eTag of the configuration it was built from.
+	 * The structure is shared between requests and must not be modified.
+	 */
+	private static class CachedPipelineStructure {
+
+		private final String eTag;
+		private final PipelineNode structure;
+
+		private CachedPipelineStructure(String eTag, PipelineNode structure) {
+			this.eTag = eTag;
+			this.structure = structure;
+		}
+	}
+
+	/**
+	 * Starts loading the test results of a finished pipeline run in the background,
+	 * so they are ready when Octane pulls them.
+	 */
+	public static void prefetchTestsResult(final String jobId, final String buildNumber) {
+		StagedTestResults.prefetch(jobId, buildNumber);
+	}
+
+	/**
+	 * Starts fetching and converting the test results of a finished stage in the background,
+	 * so only the remaining stages need to be fetched when the pipeline run ends.
+	 */
+	public static void ingestStageTestRuns(String pipelineName, int pipelineCounter, String stageName, int stageCounter) {
+		IngestedTestRuns.ingest(pipelineName, pipelineCounter, stageName, stageCounter);
 	}
 
 	@Override
 	public InputStream getTestsResult(final String jobId, final String buildNumber) {
 		Log.debug("Retrieving test results for '" + jobId + "' and buildNumber '" + buildNumber + "'");
-		final TestsResult result = DTOFactory.getInstance().newDTO(TestsResult.class)
-			.setBuildContext(DTOFactory.getInstance().newDTO(BuildContext.class).setServerId(goServerID))
-			.setTestRuns(new ArrayList<TestRun>());
+		return StagedTestResults.get(jobId, buildNumber);
+	}
 
+	/**
+	 * Collects and converts the test results of all jobs of the given pipeline run. The test runs are
+	 * serialized one by one as they are converted; large results are spooled to a temporary file.
+	 *
+	 * @return the serialized test results or null if there are none
+	 */
+	private SpoolBuffer loadTestsResult(final String jobId, final String buildNumber) {
 		/** Use the same client for all requests in this method. Notice that {@link GoGetAllArtifacts}
 		 * needs an authentication cookie which is received by the client when performing an API request. */
 		final GoApiClient goApiClient = createGoApiClient();
 		GoPipelineInstance pipelineInstance = new GoGetPipelineInstance(goApiClient).get(jobId, Integer.valueOf(buildNumber));
-		if (pipelineInstance != null && pipelineInstance.getStages() != null) {
-			result.getBuildContext()
-				.setJobId(pipelineInstance.getName())
-				.setJobName(pipelineInstance.getName())
-				.setBuildId(String.valueOf(pipelineInstance.getCounter()))
-				.setBuildName(pipelineInstance.getLabel());
+		if (pipelineInstance == null || pipelineInstance.getStages() == null) {
+			Log.info("There are no test results for '" + jobId + "' and buildNumber '" + buildNumber + "'");
+			return null;
+		}
+		final BuildContext buildContext = DTOFactory.getInstance().newDTO(BuildContext.class)
+			.setServerId(goServerID)
+			.setJobId(pipelineInstance.getName())
+			.setJobName(pipelineInstance.getName())
+			.setBuildId(String.valueOf(pipelineInstance.getCounter()))
+			.setBuildName(pipelineInstance.getLabel());
 
+		final SpoolBuffer content = new SpoolBuffer(SpoolBuffer.DefaultMemoryThreshold);
+		final int testRunCount;
+		try (TestsResultWriter writer = new TestsResultWriter(content, buildContext)) {
 			for (GoStageInstance stageInstance : pipelineInstance.getStages()) {
 				if (stageInstance.getJobs() != null) {
-					for (GoJobInstance jobInstance : stageInstance.getJobs()) {
-						List<GoArtifact> artifacts = new GoGetAllArtifacts(goApiClient).get(pipelineInstance.getName(), pipelineInstance.getCounter(), stageInstance.getName(), Integer.valueOf(stageInstance.getCounter()), jobInstance.getName());
-						result.getTestRuns().addAll(new OctaneTestResultsBuilder(goApiClient).convert(artifacts));
+					final int stageCounter = Integer.valueOf(stageInstance.getCounter());
+					List<TestRun> testRuns = IngestedTestRuns.get(pipelineInstance.getName(), pipelineInstance.getCounter(), stageInstance.getName(), stageCounter);
+					if (testRuns != null) {
+						testRuns.forEach(writer);
+					} else { // the stage has not been ingested when it finished.
+						List<String> jobNames = new ArrayList<>();
+						for (GoJobInstance jobInstance : stageInstance.getJobs()) {
+							jobNames.add(jobInstance.getName());
+						}
+						ReportFetcher.fetch(jobNames, reportSource(goApiClient, pipelineInstance.getName(), pipelineInstance.getCounter(), stageInstance.getName(), stageCounter), writer);
 					}
 				}
 			}
+			IngestedTestRuns.discard(pipelineInstance.getName(), pipelineInstance.getCounter());
+			testRunCount = writer.getTestRunCount();
+		} catch (IOException e) {
+			Log.error("Could not serialize test results for '" + jobId + "' and buildNumber '" + buildNumber + "'", e);
+			content.delete();
+			return null;
 		}
 
-		if(result.getTestRuns() == null || result.getTestRuns().isEmpty()){
+		if (testRunCount == 0) {
 			Log.info("There are no test results for '" + jobId + "' and buildNumber '" + buildNumber + "'");
+			content.delete();
 			return null;
 		}
-		Log.info("Sending "+ result.getTestRuns().size() +" test results for '" + jobId + "', buildNumber '" + buildNumber + "'");
-		InputStream output =  DTOFactory.getInstance().dtoToXmlStream(result);
-		return output;
+		Log.info("Sending " + testRunCount + " test results for '" + jobId + "', buildNumber '" + buildNumber + "'");
+		return content;
+	}
+
+	/**
+	 * Fetches and converts the test results of all jobs of a finished stage.
+	 */
+	private List<TestRun> loadTestRuns(String pipelineName, int pipelineCounter, String stageName, int stageCounter) {
+		final GoApiClient goApiClient = createGoApiClient(); // the API request provides the cookie needed by GoGetAllArtifacts.
+		final GoStageInstance stageInstance = new GoGetStageInstance(goApiClient).get(pipelineName, pipelineCounter, stageName, stageCounter);
+		final List<String> jobNames = new ArrayList<>();
+		if (stageInstance != null && stageInstance.getJobs() != null) {
+			for (GoJobInstance jobInstance : stageInstance.getJobs()) {
+				jobNames.add(jobInstance.getName());
+			}
+		}
+		return loadTestRuns(goApiClient, pipelineName, pipelineCounter, stageName, stageCounter, jobNames);
+	}
+
+	/**
+	 * Fetches and converts the test results of the given jobs of a stage.
+	 */
+	private List<TestRun> loadTestRuns(GoApiClient goApiClient, String pipelineName, int pipelineCounter, String stageName, int stageCounter, List<String> jobNames) {
+		return ReportFetcher.fetch(jobNames, reportSource(goApiClient, pipelineName, pipelineCounter, stageName, stageCounter));
+	}
+
+	/**
+	 * @return the estimated heap size of a converted test run in bytes
+	 */
+	static long estimateSize(TestRun testRun) {
+		long chars = length(testRun.getModuleName()) + length(testRun.getPackageName())
+			+ length(testRun.getClassName()) + length(testRun.getTestName());
+		final TestRunError error = testRun.getError();
+		if (error != null) {
+			chars += length(error.getErrorType()) + length(error.getErrorMessage()) + length(error.getStackTrace());
+		}
+		return 128 + 2 * chars; // the object headers and fields plus the characters of its strings.
+	}
+
+	private static int length(String value) {
+		return value != null ? value.length() : 0;
+	}
+
+	/**
+	 * @return the test reports of the jobs of a stage, downloaded and converted with the given client
+	 */
+	private static TestReportFetcher.ReportSource<TestRun> reportSource(final GoApiClient goApiClient, final String pipelineName, final int pipelineCounter, final String stageName, final int stageCounter) {
+		return new TestReportFetcher.ReportSource<TestRun>() {
+			@Override
+			public List<GoArtifact> list(String jobName) {
+				return OctaneTestResultsBuilder.collectReports(new GoGetAllArtifacts(goApiClient).get(pipelineName, pipelineCounter, stageName, stageCounter, jobName),
+					OctaneGoCDPlugin.getReportFilter().forPipeline(pipelineName));
+			}
+
+			@Override
+			public InputStream download(GoArtifact report) {
+				return new GoGetArtifact(goApiClient).get(report.getUrl(), ReportFormat::mayBeReport);
+			}
+
+			@Override
+			public void convert(GoArtifact report, InputStream content, Consumer<TestRun> testRuns) {
+				OctaneTestResultsBuilder.convert(report, content, testRuns);
+			}
+		};
 	}
 
 	@Override
@@ -0,0 +1,209 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.octane;
+
+import com.hp.octane.integrations.OctaneClient;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.CircuitBreaker;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.DaemonThreadFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * This lane delivers event batches to a single Octane client.
+ *
+ * Every client owns its lane with a dedicated thread and a bounded queue, so batches are handed
+ * over to all clients in parallel and a slow client can not delay the others. The batches of one
+ * client are delivered in the order they were dispatched.
+ *
+ * The client queues and retries the delivery to Octane on its own, so a lane only fails when the client
+ * refuses a batch. A circuit breaker per lane stops delivering to a client which keeps failing. While the
+ * breaker is open, batches for that client are dropped instead of filling up its queue. Dropped batches
+ * are reported as undelivered, so their notifications stay journaled.
+ */
+public class OctaneClientLane {
+
+	private static final Logger Log = LogManager.getLogger(OctaneClientLane.class);
+
+	public static final int QueueCapacity = 1000;
+	public static final int FailureThreshold = 5;
+	public static final long OpenMillis = 30 * 1000;
+
+	private static final Map<String, OctaneClientLane> Lanes = new ConcurrentHashMap<>();
+
+	private final String instanceId;
+	private final ThreadPoolExecutor executor;
+	private final CircuitBreaker circuitBreaker = new CircuitBreaker(FailureThreshold, OpenMillis);
+	private final BiFunction<OctaneClient, List<OctaneEventBatch.Entry>, Integer> publisher;
+
+	private final AtomicLong dispatched = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * @param instanceId the instance id of the Octane client
+	 * @param publisher  hands a batch over to the client and returns the number of failed entries
+	 */
+	OctaneClientLane(String instanceId, BiFunction<OctaneClient, List<OctaneEventBatch.Entry>, Integer> publisher) {
+		this.instanceId = instanceId;
+		this.publisher = publisher;
+		this.executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(QueueCapacity), new DaemonThreadFactory("octane-dispatch-" + instanceId));
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @return the lane of the given client; created on first use
+	 */
+	public static OctaneClientLane of(OctaneClient client) {
+		return Lanes.computeIfAbsent(client.getInstanceId(), instanceId -> new OctaneClientLane(instanceId, OctaneEventBatch::publish));
+	}
+
+	/**
+	 * Removes the lanes of the clients which are gone. Batches already queued in these lanes are
+	 * still attempted, but no new ones are accepted.
+	 */
+	static void retain(Collection<OctaneClient> clients) {
+		final Set<String> instanceIds = new HashSet<>();
+		for (OctaneClient client : clients) {
+			instanceIds.add(client.getInstanceId());
+		}
+		Lanes.values().removeIf(lane -> {
+			if (instanceIds.contains(lane.instanceId)) {
+				return false;
+			}
+			lane.executor.shutdown();
+			return true;
+		});
+	}
+
+	/**
+	 * Closes the circuit breakers of all lanes, e.g. after the connection settings have been changed.
+	 */
+	public static void resetAll() {
+		for (OctaneClientLane lane : Lanes.values()) {
+			lane.circuitBreaker.recordSuccess();
+		}
+	}
+
+	/**
+	 * @return the lanes of all current clients which have been dispatched to so far
+	 */
+	public static Map<String, OctaneClientLane> getLanes() {
+		return Lanes;
+	}
+
+	/**
+	 * Enqueues the given batch for delivery to the given client.
+	 *
+	 * @param onCompletion told whether the whole batch has been handed over to the client; called exactly once
+	 * @return false if the batch was dropped, because the queue is full or the circuit breaker is open
+	 */
+	public boolean dispatch(final OctaneClient client, final List<OctaneEventBatch.Entry> batch, final Consumer<Boolean> onCompletion) {
+		dispatched.incrementAndGet();
+		if (!circuitBreaker.allowRequest()) {
+			dropped.incrementAndGet();
+			Log.debug("Circuit breaker of Octane client '" + instanceId + "' is open, dropping " + batch.size() + " events");
+			onCompletion.accept(false);
+			return false;
+		}
+		try {
+			executor.execute(() -> onCompletion.accept(deliver(client, batch)));
+			return true;
+		} catch (RejectedExecutionException e) {
+			dropped.incrementAndGet();
+			Log.warn("Dispatch queue of Octane client '" + instanceId + "' is full or closed, dropping " + batch.size() + " events. " + getStatistics());
+			onCompletion.accept(false);
+			return false;
+		}
+	}
+
+	/**
+	 * @return whether the whole batch has been handed over to the client
+	 */
+	private boolean deliver(OctaneClient client, List<OctaneEventBatch.Entry> batch) {
+		if (!circuitBreaker.allowRequest()) { // the breaker might have opened while the batch was waiting.
+			dropped.incrementAndGet();
+			return false;
+		}
+		int failures;
+		try {
+			failures = publisher.apply(client, batch);
+		} catch (RuntimeException e) {
+			Log.error("Could not hand over events to Octane client '" + instanceId + "'", e);
+			failures = batch.size();
+		}
+		if (failures == 0) {
+			delivered.incrementAndGet();
+			circuitBreaker.recordSuccess();
+			return true;
+		}
+		failed.incrementAndGet();
+		if (circuitBreaker.recordFailure()) {
+			Log.warn("Octane client '" + instanceId + "' keeps failing, pausing delivery for " + OpenMillis / 1000 + "s. " + getStatistics());
+		}
+		return false;
+	}
+
+	public String getInstanceId() {
+		return instanceId;
+	}
+
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	public long getDispatchedCount() {
+		return dispatched.get();
+	}
+
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public CircuitBreaker.State getCircuitState() {
+		return circuitBreaker.getState();
+	}
+
+	public String getStatistics() {
+		return "queue depth: " + getQueueDepth() + ", dispatched batches: " + getDispatchedCount() + ", delivered: " + getDeliveredCount()
+			+ ", failed: " + getFailedCount() + ", dropped: " + getDroppedCount() + ", circuit: " + getCircuitState();
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.octane;
+
+import com.hp.octane.integrations.OctaneClient;
+import com.hp.octane.integrations.OctaneSDK;
+import com.hp.octane.integrations.dto.events.CIEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This batch collects the {@link CIEvent}s and test result pushes produced while handling
+ * a single GoCD notification and hands them over to every Octane client in one pass.
+ * Each client receives the batch through its own {@link OctaneClientLane}.
+ *
+ * The order in which events and pushes were added is preserved. The batch is flushed
+ * explicitly or as soon as it reaches {@link #MaxBatchSize} entries.
+ *
+ * The batch tracks the delivery of everything it flushed: {@link #close(Runnable)} runs its
+ * callback only after every client has been handed over every entry. Entries which were dropped
+ * by a lane or could not be handed over, or which found no client at all, are undelivered.
+ */
+public class OctaneEventBatch {
+
+	private static final Logger Log = LogManager.getLogger(OctaneEventBatch.class);
+
+	public static final int MaxBatchSize = 50;
+
+	private final List<Entry> entries = new ArrayList<>();
+	/** The dispatches which have not completed yet; plus one until the batch is closed. */
+	private final AtomicInteger pendingDispatches = new AtomicInteger(1);
+	private volatile boolean undelivered;
+	private volatile Runnable onDelivered;
+
+	public OctaneEventBatch add(CIEvent event) {
+		return add(new Entry(event, null, null));
+	}
+
+	/**
+	 * Adds a request to tell Octane that it can pull the test results of the given build.
+	 */
+	public OctaneEventBatch addTestsResultPush(String jobId, String buildId) {
+		return add(new Entry(null, jobId, buildId));
+	}
+
+	private OctaneEventBatch add(Entry entry) {
+		entries.add(entry);
+		if (entries.size() >= MaxBatchSize) {
+			flush();
+		}
+		return this;
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * Dispatches all collected entries to the lanes of all Octane clients and clears this batch.
+	 */
+	public void flush() {
+		if (entries.isEmpty()) {
+			return;
+		}
+		final List<Entry> batch = new ArrayList<>(entries);
+		entries.clear();
+		final List<OctaneClient> clients = OctaneSDK.getClients();
+		OctaneClientLane.retain(clients);
+		if (clients.isEmpty()) {
+			undelivered = true;
+		}
+		for (OctaneClient client : clients) {
+			pendingDispatches.incrementAndGet();
+			OctaneClientLane.of(client).dispatch(client, batch, this::dispatchCompleted);
+		}
+	}
+
+	/**
+	 * Flushes the remaining entries. Nothing must be added afterwards.
+	 *
+	 * @param onDelivered run once all entries of this batch have been handed over to all clients;
+	 *                    never run if any of them remained undelivered
+	 */
+	public void close(Runnable onDelivered) {
+		this.onDelivered = onDelivered;
+		flush();
+		dispatchCompleted(true);
+	}
+
+	private void dispatchCompleted(boolean delivered) {
+		if (!delivered) {
+			undelivered = true;
+		}
+		if (pendingDispatches.decrementAndGet() == 0 && !undelivered && onDelivered != null) {
+			onDelivered.run();
+		}
+	}
+
+	/**
+	 * Hands the given entries over to the given client.
+	 *
+	 * @return the number of entries which could not be handed over
+	 */
+	static int publish(OctaneClient client, List<Entry> batch) {
+		int failures = 0;
+		for (Entry entry : batch) {
+			try {
+				if (entry.event != null) {
+					client.getEventsService().publishEvent(entry.event);
+				} else {
+					client.getTestsService().enqueuePushTestsResult(entry.jobId, entry.buildId, null);
+				}
+			} catch (RuntimeException e) {
+				failures++;
+				Log.error("Could not hand over event to Octane client '" + client.getInstanceId() + "'", e);
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Either an event or a test result push.
+	 */
+	static class Entry {
+
+		private final CIEvent event;
+		private final String jobId;
+		private final String buildId;
+
+		private Entry(CIEvent event, String jobId, String buildId) {
+			this.event = event;
+			this.jobId = jobId;
+			this.buildId = buildId;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.microfocus.adm.almoctane.ciplugins.gocd.octane;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoArtifact;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.DaemonThreadFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * This fetcher lists, downloads and converts the test reports of the jobs of a stage in parallel.
+ *
+ * The artifacts of all jobs are listed concurrently and every report is downloaded and converted by
+ * its own task, using a pool of threads which is separate from the event processing. The converted
+ * runs are merged in the order of the jobs and of their listings, so the result does not depend on
+ * which download finishes first. The runs of the report at the head of that order are handed over
+ * while it is converted; only the runs of the reports behind it are held until their turn. To bound
+ * the memory held this way, no further report is started while the bytes of the reports not merged yet
+ * exceed a limit. The bytes are counted while the reports are read; a report whose download has not
+ * returned yet counts with an estimated size.
+ *
+ * @param <Run> the type of the converted test runs
+ */
+public class TestReportFetcher<Run> {
+
+	private static final Logger Log = LogManager.getLogger(TestReportFetcher.class);
+
+	public static final int DefaultWorkers = 8;
+	public static final long DefaultMaxInFlightBytes = 32L * 1024 * 1024;
+	public static final long EstimatedReportBytes = 64 * 1024;
+
+	/**
+	 * Provides the reports of the jobs and converts them.
+	 */
+	public interface ReportSource<Run> {
+		/**
+		 * @return the possible test reports of the given job in the order of its listing
+		 */
+		List<GoArtifact> list(String jobName);
+
+		/**
+		 * @return the content of the given report or null if it could not be downloaded
+		 */
+		InputStream download(GoArtifact report);
+
+		/**
+		 * Converts the given content of a report and closes it.
+		 */
+		void convert(GoArtifact report, InputStream content, Consumer<Run> runs);
+	}
+
+	private final ThreadPoolExecutor executor;
+	private final long maxInFlightBytes;
+
+	/**
+	 * @param workers          the number of threads listing, downloading and converting reports
+	 * @param maxInFlightBytes the downloaded bytes of reports not merged yet above which no further report is started
+	 */
+	public TestReportFetcher(int workers, long maxInFlightBytes) {
+		this.maxInFlightBytes = maxInFlightBytes;
+		this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(4 * workers), new DaemonThreadFactory("octane-report-fetch"),
+			new ThreadPoolExecutor.CallerRunsPolicy()); // a full queue slows down the caller instead of failing.
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Fetches and converts the reports of the given jobs. This method blocks until all reports are merged.
+	 *
+	 * @return the test runs in the order of the jobs and of their reports
+	 */
+	public List<Run> fetch(List<String> jobNames, ReportSource<Run> source) {
+		final List<Run> runs = new ArrayList<>();
+		fetch(jobNames, source, runs::add);
+		return runs;
+	}
+
+	/**
+	 * Fetches and converts the reports of the given jobs and hands the test runs over as soon as they
+	 * are merged, so they do not have to be held until all reports are fetched. This method blocks
+	 * until all reports are merged; the consumer is only called by the calling thread.
+	 *
+	 * @param runs receives the test runs in the order of the jobs and of their reports
+	 * @return the number of test runs
+	 */
+	public int fetch(List<String> jobNames, final ReportSource<Run> source, Consumer<Run> runs) {
+		final List<Future<List<GoArtifact>>> listings = new ArrayList<>();
+		for (final String jobName : jobNames) {
+			listings.add(executor.submit(() -> source.list(jobName)));
+		}
+		final Deque<Fetched<Run>> pending = new ArrayDeque<>();
+		final List<Future<?>> tasks = new ArrayList<>();
+		final AtomicLong inFlightBytes = new AtomicLong();
+		int count = 0;
+		try {
+			for (int i = 0; i < listings.size(); i++) {
+				for (final GoArtifact report : await(listings.get(i), jobNames.get(i))) {
+					while (inFlightBytes.get() >= maxInFlightBytes && !pending.isEmpty()) {
+						count += merge(pending.poll(), runs, inFlightBytes);
+					}
+					final Fetched<Run> fetched = new Fetched<>();
+					inFlightBytes.addAndGet(EstimatedReportBytes);
+					pending.add(fetched);
+					tasks.add(executor.submit(() -> fetch(report, source, fetched, inFlightBytes)));
+				}
+			}
+			while (!pending.isEmpty()) {
+				count += merge(pending.poll(), runs, inFlightBytes);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			for (Future<?> listing : listings) {
+				listing.cancel(true);
+			}
+			for (Future<?> task : tasks) {
+				task.cancel(true);
+			}
+			Log.warn("Interrupted while fetching test reports, " + count + " test runs were fetched");
+		}
+		return count;
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private List<GoArtifact> await(Future<List<GoArtifact>> listing, String jobName) throws InterruptedException {
+		try {
+			final List<GoArtifact> reports = listing.get();
+			return reports != null ? reports : new ArrayList<>();
+		} catch (ExecutionException e) {
+			Log.error("Could not list the artifacts of job '" + jobName + "'", e.getCause());
+			return new ArrayList<>();
+		}
+	}
+
+	/**
+	 * Hands over the runs of the given report as they are converted and waits until it is finished.
+	 */
+	private int merge(Fetched<Run> fetched, Consumer<Run> runs, AtomicLong inFlightBytes) throws InterruptedException {
+		int count = 0;
+		for (Run run = fetched.take(); run != null; run = fetched.take()) {
+			runs.accept(run);
+			count++;
+		}
+		inFlightBytes.addAndGet(-fetched.bytes.get());
+		return count;
+	}
+
+	private void fetch(GoArtifact report, ReportSource<Run> source, Fetched<Run> result, AtomicLong inFlightBytes) {
+		try {
+			final InputStream content;
+			try {
+				content = source.download(report);
+			} finally {
+				inFlightBytes.addAndGet(-EstimatedReportBytes); // from now on the bytes are counted as they are read.
+			}
+			if (content != null) {
+				source.convert(report, new CountingInputStream(content, result.bytes, inFlightBytes), result);
+			}
+		} catch (RuntimeException e) {
+			Log.error("Could not fetch test report '" + report.getUrl() + "'", e);
+		} finally {
+			result.finish();
+		}
+	}
+
+	/**
+	 * The runs of a report, which are taken by the merging thread while the report is converted.
+	 */
+	private static class Fetched<Run> implements Consumer<Run> {
+
+		private final Deque<Run> runs = new ArrayDeque<>();
+		private final AtomicLong bytes = new AtomicLong();
+		private boolean finished;
+
+		@Override
+		public synchronized void accept(Run run) {
+			runs.add(run);
+			notifyAll();
+		}
+
+		private synchronized void finish() {
+			finished = true;
+			notifyAll();
+		}
+
+		/**
+		 * @return the next run, waiting for it to be converted; null once the report is finished
+		 */
+		private synchronized Run take() throws InterruptedException {
+			while (runs.isEmpty() && !finished) {
+				wait();
+			}
+			return runs.poll();
+		}
+	}
+
+	/**
+	 * Counts the bytes read from a report into its own and the shared count.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		private final AtomicLong bytes;
+		private final AtomicLong inFlightBytes;
+
+		private CountingInputStream(InputStream in, AtomicLong bytes, AtomicLong inFlightBytes) {
+			super(in);
+			this.bytes = bytes;
+			this.inFlightBytes = inFlightBytes;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int next = super.read();
+			if (next != -1) {
+				count(1);
+			}
+			return next;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			final int read = super.read(buffer, offset, length);
+			if (read > 0) {
+				count(read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long length) throws IOException {
+			final long skipped = super.skip(length);
+			count(skipped);
+			return skipped;
+		}
+
+		private void count(long read) {
+			bytes.addAndGet(read);
+			inFlightBytes.addAndGet(read);
+		}
+	}
+}
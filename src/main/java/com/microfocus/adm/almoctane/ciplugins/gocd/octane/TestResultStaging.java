@@ -0,0 +1,255 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.octane;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.DaemonThreadFactory;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.SpoolBuffer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+
+/**
+ * This staging area holds the serialized test results of recently finished pipeline runs.
+ *
+ * As soon as a pipeline run ends, its test results are loaded in the background, so the pull of
+ * Octane is served from the staged content; large results are kept in temporary files by their
+ * {@link SpoolBuffer}. A pull which arrives while the results are still being loaded waits
+ * for that load instead of starting another one. The staging area is bounded by the number of runs and
+ * the total size of the staged results; the oldest results are evicted first. Prefetches which do not
+ * fit into the queue are skipped, the results are then loaded when Octane pulls them. Expired results
+ * are removed whenever the staging area is accessed.
+ */
+public class TestResultStaging {
+
+	private static final Logger Log = LogManager.getLogger(TestResultStaging.class);
+
+	public static final int DefaultMaxEntries = 64;
+	public static final long DefaultMaxBytes = 64L * 1024 * 1024;
+	public static final long DefaultMaxAgeMillis = 30 * 60 * 1000;
+	public static final long MaxWaitMillis = 5 * 60 * 1000;
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private final long maxAgeMillis;
+	private final BiFunction<String, String, SpoolBuffer> loader;
+	private final ThreadPoolExecutor executor;
+	private final Map<String, Staged> staged = new LinkedHashMap<>();
+	private long stagedBytes;
+
+	/**
+	 * @param maxEntries   the maximum number of staged runs
+	 * @param maxBytes     the maximum total size of the staged results
+	 * @param maxAgeMillis the time after which staged results are loaded again
+	 * @param workers      the number of threads loading results in the background
+	 * @param loader       loads the serialized test results of a pipeline run into a closed buffer; null if there are none
+	 */
+	public TestResultStaging(int maxEntries, long maxBytes, long maxAgeMillis, int workers, BiFunction<String, String, SpoolBuffer> loader) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.maxAgeMillis = maxAgeMillis;
+		this.loader = loader;
+		this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(maxEntries), new DaemonThreadFactory("octane-test-prefetch"));
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Starts loading the test results of the given run in the background. Results staged before
+	 * are replaced, since a rerun stage changes the results of the run.
+	 *
+	 * @return false if the results are already being loaded or the prefetch was skipped
+	 */
+	public boolean prefetch(final String jobId, final String buildNumber) {
+		final String key = keyOf(jobId, buildNumber);
+		final Staged entry = new Staged(key, () -> loader.apply(jobId, buildNumber));
+		synchronized (this) {
+			final Staged current = staged.get(key);
+			if (current != null && !current.isDone()) {
+				return false;
+			}
+			remove(key);
+			removeExpired();
+			if (staged.size() >= maxEntries && !evictOldest()) {
+				Log.debug("Staging area full, skipping prefetch of test results for '" + key + "'");
+				return false;
+			}
+			staged.put(key, entry);
+		}
+		try {
+			executor.execute(entry);
+			return true;
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				staged.remove(key, entry);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @return the staged test results of the given run, waiting for a running prefetch; if nothing
+	 * is staged the results are loaded directly. Null if there are no test results.
+	 */
+	public InputStream get(String jobId, String buildNumber) {
+		final String key = keyOf(jobId, buildNumber);
+		final Staged entry;
+		synchronized (this) {
+			removeExpired();
+			entry = staged.get(key);
+		}
+		if (entry != null) {
+			try {
+				SpoolBuffer content = entry.get(MaxWaitMillis, TimeUnit.MILLISECONDS);
+				return content != null ? content.openStream() : null;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (ExecutionException | TimeoutException | IOException e) {
+				Log.warn("Prefetching test results for '" + key + "' failed, loading them again: " + e.getMessage());
+			}
+		}
+		final SpoolBuffer content = loader.apply(jobId, buildNumber);
+		try {
+			return content != null ? content.takeStream() : null; // not staged, so it is released once read.
+		} catch (IOException e) {
+			Log.warn("Could not read test results for '" + key + "': " + e.getMessage());
+			content.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * @return whether results of the given run are staged or being loaded
+	 */
+	public synchronized boolean isStaged(String jobId, String buildNumber) {
+		return staged.containsKey(keyOf(jobId, buildNumber));
+	}
+
+	/**
+	 * @return the total size of the staged results in bytes
+	 */
+	public synchronized long getStagedBytes() {
+		return stagedBytes;
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private synchronized void loaded(Staged entry, long size) {
+		if (staged.get(entry.key) != entry) { // replaced or evicted while loading.
+			entry.release();
+			return;
+		}
+		entry.size = size;
+		stagedBytes += size;
+		while (stagedBytes > maxBytes && evictOldest()) {
+			// evicted.
+		}
+	}
+
+	/**
+	 * Evicts the oldest loaded entry; entries being loaded are kept.
+	 *
+	 * @return false if there is no entry to evict
+	 */
+	private boolean evictOldest() {
+		for (Iterator<Staged> iterator = staged.values().iterator(); iterator.hasNext(); ) {
+			Staged entry = iterator.next();
+			if (entry.isDone()) {
+				iterator.remove();
+				stagedBytes -= entry.size;
+				entry.release();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void removeExpired() {
+		for (Iterator<Staged> iterator = staged.values().iterator(); iterator.hasNext(); ) {
+			Staged entry = iterator.next();
+			if (entry.isExpired()) {
+				iterator.remove();
+				stagedBytes -= entry.size;
+				entry.release();
+			}
+		}
+	}
+
+	private void remove(String key) {
+		Staged entry = staged.remove(key);
+		if (entry != null) {
+			stagedBytes -= entry.size;
+			entry.release();
+		}
+	}
+
+	private static String keyOf(String jobId, String buildNumber) {
+		return jobId + "@" + buildNumber;
+	}
+
+	private class Staged extends FutureTask<SpoolBuffer> {
+
+		private final String key;
+		private final long stagedAt = System.currentTimeMillis();
+		private long size;
+		private volatile SpoolBuffer content;
+
+		private Staged(String key, Callable<SpoolBuffer> load) {
+			super(load);
+			this.key = key;
+		}
+
+		private boolean isExpired() {
+			return isDone() && System.currentTimeMillis() - stagedAt > maxAgeMillis;
+		}
+
+		/**
+		 * Deletes the content of an entry which is no longer staged. Results still being read
+		 * are kept until their streams are closed.
+		 */
+		private void release() {
+			final SpoolBuffer current = content;
+			if (current != null) {
+				current.delete();
+			}
+		}
+
+		@Override
+		protected void set(SpoolBuffer content) {
+			this.content = content;
+			loaded(this, content != null ? content.size() : 0); // account for the result before waiting readers are released.
+			super.set(content);
+		}
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.octane;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.DaemonThreadFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.ToLongFunction;
+
+/**
+ * This accumulator collects the converted test runs of a pipeline run stage by stage.
+ *
+ * Whenever a stage finishes, the test results of its jobs are fetched and converted in the
+ * background and kept for the pipeline run. When the pipeline run ends, only the stages which have
+ * not been ingested yet need to be fetched. The runs of a stage are kept per stage counter, so a
+ * rerun stage never serves the results of its previous attempt. The accumulator is bounded by the
+ * number of pipeline runs and the estimated size of the kept test runs; the least recently used run
+ * is dropped first and its results are fetched again at the end. The run whose stage has just been
+ * ingested is always kept, even if it exceeds the size on its own, so its reports are not fetched twice.
+ *
+ * @param <Run> the type of the converted test runs
+ */
+public class TestRunAccumulator<Run> {
+
+	private static final Logger Log = LogManager.getLogger(TestRunAccumulator.class);
+
+	public static final int DefaultMaxBuilds = 64;
+	public static final long DefaultMaxBytes = 32L * 1024 * 1024;
+	public static final long MaxWaitMillis = 5 * 60 * 1000;
+
+	/**
+	 * Fetches and converts the test results of all jobs of a stage.
+	 */
+	public interface StageLoader<Run> {
+		List<Run> load(String pipelineName, int pipelineCounter, String stageName, int stageCounter);
+	}
+
+	private final int maxBuilds;
+	private final long maxBytes;
+	private final ToLongFunction<Run> weigher;
+	private final StageLoader<Run> loader;
+	private final ThreadPoolExecutor executor;
+	private final Map<String, Map<String, Stage>> builds = new LinkedHashMap<>(16, 0.75f, true);
+	private long keptBytes;
+
+	/**
+	 * @param maxBuilds the maximum number of pipeline runs whose test runs are kept
+	 * @param maxBytes  the maximum estimated size of all kept test runs
+	 * @param workers   the number of threads ingesting stages in the background
+	 * @param weigher   estimates the size of a test run in bytes
+	 * @param loader    fetches and converts the test results of a stage
+	 */
+	public TestRunAccumulator(int maxBuilds, long maxBytes, int workers, ToLongFunction<Run> weigher, StageLoader<Run> loader) {
+		this.maxBuilds = maxBuilds;
+		this.maxBytes = maxBytes;
+		this.weigher = weigher;
+		this.loader = loader;
+		this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(maxBuilds), new DaemonThreadFactory("octane-test-ingest"));
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Starts ingesting the test results of a finished stage in the background.
+	 *
+	 * @return false if the ingestion was skipped, because the queue is full
+	 */
+	public boolean ingest(final String pipelineName, final int pipelineCounter, final String stageName, final int stageCounter) {
+		final String buildKey = keyOf(pipelineName, pipelineCounter);
+		final String stageKey = keyOf(stageName, stageCounter);
+		final Stage stage = new Stage(buildKey, stageKey, pipelineName, pipelineCounter, stageName, stageCounter);
+		synchronized (this) {
+			Map<String, Stage> stages = builds.get(buildKey);
+			if (stages == null) {
+				stages = new HashMap<>();
+				builds.put(buildKey, stages);
+				while (builds.size() > maxBuilds && evictEldest(buildKey)) {
+					// evicted.
+				}
+			}
+			final Stage previous = stages.put(stageKey, stage);
+			if (previous != null) {
+				keptBytes -= previous.size;
+			}
+		}
+		try {
+			executor.execute(stage);
+			return true;
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				final Map<String, Stage> stages = builds.get(buildKey);
+				if (stages != null) {
+					stages.remove(stageKey, stage);
+				}
+			}
+			Log.debug("Ingestion queue full, skipping test results of stage '" + stageName + "' of '" + buildKey + "'");
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the ingested test runs of the given stage, waiting for a running ingestion.
+	 *
+	 * @return the test runs or null if the stage has not been ingested
+	 */
+	public List<Run> get(String pipelineName, int pipelineCounter, String stageName, int stageCounter) {
+		final Stage stage;
+		synchronized (this) {
+			final Map<String, Stage> stages = builds.get(keyOf(pipelineName, pipelineCounter));
+			stage = stages != null ? stages.get(keyOf(stageName, stageCounter)) : null;
+		}
+		if (stage == null) {
+			return null;
+		}
+		try {
+			return stage.get(MaxWaitMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			Log.warn("Ingesting test results of stage '" + stageName + "' of '" + keyOf(pipelineName, pipelineCounter) + "' failed: " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Drops all test runs kept for the given pipeline run.
+	 */
+	public synchronized void discard(String pipelineName, int pipelineCounter) {
+		release(builds.remove(keyOf(pipelineName, pipelineCounter)));
+	}
+
+	/**
+	 * @return the estimated size of all kept test runs in bytes
+	 */
+	public synchronized long getKeptBytes() {
+		return keptBytes;
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private synchronized void loaded(Stage stage, long size) {
+		final Map<String, Stage> stages = builds.get(stage.buildKey);
+		if (stages == null || stages.get(stage.stageKey) != stage) { // replaced or evicted while loading.
+			return;
+		}
+		stage.size = size;
+		keptBytes += size;
+		while (keptBytes > maxBytes && evictEldest(stage.buildKey)) {
+			// evicted.
+		}
+		if (keptBytes > maxBytes) {
+			Log.debug("Test runs of '" + stage.buildKey + "' exceed the size of the accumulator, keeping them as the only run");
+		}
+	}
+
+	/**
+	 * Evicts the least recently used pipeline run other than the given one; a stage still being
+	 * ingested is simply not kept.
+	 *
+	 * @return false if there is no run to evict
+	 */
+	private boolean evictEldest(String keptBuildKey) {
+		for (Iterator<Map.Entry<String, Map<String, Stage>>> iterator = builds.entrySet().iterator(); iterator.hasNext(); ) {
+			final Map.Entry<String, Map<String, Stage>> build = iterator.next();
+			if (!build.getKey().equals(keptBuildKey)) {
+				release(build.getValue());
+				iterator.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void release(Map<String, Stage> stages) {
+		if (stages != null) {
+			for (Stage stage : stages.values()) {
+				keptBytes -= stage.size;
+			}
+		}
+	}
+
+	private static String keyOf(String name, int counter) {
+		return name + "@" + counter;
+	}
+
+	private class Stage extends FutureTask<List<Run>> {
+
+		private final String buildKey;
+		private final String stageKey;
+		private long size;
+
+		private Stage(String buildKey, String stageKey, String pipelineName, int pipelineCounter, String stageName, int stageCounter) {
+			super(() -> loader.load(pipelineName, pipelineCounter, stageName, stageCounter));
+			this.buildKey = buildKey;
+			this.stageKey = stageKey;
+		}
+
+		@Override
+		protected void set(List<Run> runs) {
+			long size = 0;
+			if (runs != null) {
+				for (Run run : runs) {
+					size += weigher.applyAsLong(run);
+				}
+			}
+			loaded(this, size); // account for the runs before waiting readers are released.
+			super.set(runs);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.microfocus.adm.almoctane.ciplugins.gocd.octane;
+
+import com.hp.octane.integrations.dto.tests.BuildContext;
+import com.hp.octane.integrations.dto.tests.TestRun;
+import com.hp.octane.integrations.dto.tests.TestRunError;
+import com.hp.octane.integrations.dto.tests.TestRunResult;
+import com.hp.octane.integrations.dto.tests.TestsResult;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * This writer serializes a {@link TestsResult} one {@link TestRun} at a time, so the test runs of a
+ * pipeline run never have to be held in memory together. The document has the same structure as the
+ * one the SDK creates from the DTOs:
+ * <pre>
+ * &lt;test_result&gt;
+ *   &lt;build server_id="" job_id="" job_name="" build_id="" build_name=""/&gt;
+ *   &lt;test_runs&gt;
+ *     &lt;test_run module="" package="" class="" name="" duration="" status="" started=""&gt;
+ *       &lt;error type="" message=""&gt;stack trace&lt;/error&gt;
+ *     &lt;/test_run&gt;
+ *   &lt;/test_runs&gt;
+ * &lt;/test_result&gt;
+ * </pre>
+ *
+ * The test runs are passed as a {@link Consumer}; a failure while writing is kept and reported by {@link #close()}.
+ */
+public class TestsResultWriter implements Consumer<TestRun>, Closeable {
+
+	private static final XMLOutputFactory OutputFactory = XMLOutputFactory.newInstance();
+
+	private final OutputStream output;
+	private final XMLStreamWriter writer;
+	private XMLStreamException failure;
+	private int testRunCount;
+
+	/**
+	 * Starts the document with the given build context.
+	 *
+	 * @param output receives the document; it is closed together with this writer
+	 */
+	public TestsResultWriter(OutputStream output, BuildContext buildContext) throws IOException {
+		this.output = output;
+		try {
+			writer = OutputFactory.createXMLStreamWriter(output, "UTF-8");
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeStartElement("test_result");
+			writer.writeEmptyElement("build");
+			writeAttribute("server_id", buildContext.getServerId());
+			writeAttribute("job_id", buildContext.getJobId());
+			writeAttribute("job_name", buildContext.getJobName());
+			writeAttribute("build_id", buildContext.getBuildId());
+			writeAttribute("build_name", buildContext.getBuildName());
+			writeAttribute("sub_type", buildContext.getSubType());
+			writer.writeStartElement("test_runs");
+		} catch (XMLStreamException e) {
+			throw new IOException("could not start test results", e);
+		}
+	}
+
+	@Override
+	public void accept(TestRun testRun) {
+		if (failure != null) {
+			return;
+		}
+		try {
+			final TestRunError error = testRun.getError();
+			if (error != null) {
+				writer.writeStartElement("test_run");
+			} else {
+				writer.writeEmptyElement("test_run");
+			}
+			writeAttribute("module", testRun.getModuleName());
+			writeAttribute("package", testRun.getPackageName());
+			writeAttribute("class", testRun.getClassName());
+			writeAttribute("name", testRun.getTestName());
+			writeAttribute("duration", String.valueOf(testRun.getDuration()));
+			writeAttribute("status", toStatus(testRun.getResult()));
+			writeAttribute("started", String.valueOf(testRun.getStarted()));
+			if (error != null) {
+				writer.writeStartElement("error");
+				writeAttribute("type", error.getErrorType());
+				writeAttribute("message", error.getErrorMessage());
+				if (error.getStackTrace() != null) {
+					writer.writeCharacters(error.getStackTrace());
+				}
+				writer.writeEndElement();
+				writer.writeEndElement();
+			}
+			testRunCount++;
+		} catch (XMLStreamException e) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * @return the number of test runs written
+	 */
+	public int getTestRunCount() {
+		return testRunCount;
+	}
+
+	/**
+	 * Ends the document and closes the output.
+	 *
+	 * @throws IOException if writing a test run or the end of the document failed
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (failure == null) {
+				writer.writeEndElement();
+				writer.writeEndElement();
+				writer.writeEndDocument();
+			}
+			writer.close(); // does not close the output.
+		} catch (XMLStreamException e) {
+			failure = failure != null ? failure : e;
+		} finally {
+			output.close();
+		}
+		if (failure != null) {
+			throw new IOException("could not write test results", failure);
+		}
+	}
+
+	private void writeAttribute(String name, String value) throws XMLStreamException {
+		if (value != null) { // like the SDK, missing values are omitted.
+			writer.writeAttribute(name, value);
+		}
+	}
+
+	private static String toStatus(TestRunResult result) {
+		if (result == null) {
+			return null;
+		}
+		switch (result) {
+			case PASSED: return "Passed";
+			case FAILED: return "Failed";
+			default: return "Skipped";
+		}
+	}
+}
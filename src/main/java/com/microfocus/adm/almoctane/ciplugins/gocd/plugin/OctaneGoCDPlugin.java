@@ -25,18 +25,30 @@ import com.google.gson.Gson;
 import com.hp.octane.integrations.OctaneConfiguration;
 import com.hp.octane.integrations.OctaneSDK;
 import com.hp.octane.integrations.exceptions.OctaneConnectivityException;
-import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GenericJsonObject;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineInstance;
 import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoServerInfo;
 import com.microfocus.adm.almoctane.ciplugins.gocd.octane.GoPluginServices;
+import com.microfocus.adm.almoctane.ciplugins.gocd.octane.OctaneClientLane;
 import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter.OctaneCIEventBuilder;
 import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter.StatusInfoWrapper;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing.BackfillCheckpoints;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing.DuplicateNotificationFilter;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing.HistoryBackfill;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing.NotificationJournal;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing.ReconciliationCursors;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing.ReconciliationSweeper;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing.StageStatusProcessor;
 import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.settings.OctaneGoCDPluginSettings;
 import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.settings.OctaneGoCDPluginSettingsWrapper;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.settings.PipelineFilter;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.settings.ReportFilter;
 import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.settings.SettingsValidator;
 import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.validation.ValidationIssue;
 import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoGetServerHealth;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.DaemonThreadFactory;
 import com.microfocus.adm.almoctane.ciplugins.gocd.util.GoApiUtil;
 import com.microfocus.adm.almoctane.ciplugins.gocd.util.MapBuilder;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.SpoolBuffer;
 import com.microfocus.adm.almoctane.ciplugins.gocd.util.Streams;
 import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
 import com.thoughtworks.go.plugin.api.GoPlugin;
@@ -51,12 +63,16 @@ import com.thoughtworks.go.plugin.api.response.GoApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import org.apache.http.HttpResponse;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is the entry point into the Octane-GoCD-plugin.
@@ -69,11 +85,27 @@ public class OctaneGoCDPlugin implements GoPlugin {
 
 	/** This ID is referred to in the plugin.xml */
 	public static String PluginID = "com.microfocus.adm.almoctane.ciplugins.gocd.gocd";
+	public static final String DataDirectoryProperty = "octane.gocd.data.dir";
+	public static final long StatisticsIntervalMillis = 5 * 60 * 1000;
+	/** Notifications which are still not completed after this time are processed again. */
+	public static final long JournalRetryMillis = 15 * 60 * 1000;
+	/** Notifications which are still not completed after this time are given up. */
+	public static final long JournalMaxAgeMillis = 24 * 60 * 60 * 1000;
+	/** The number of older journal segments which may be kept open for notifications not completed yet. */
+	public static final int JournalMaxOlderSegments = 8;
 	private static GoApplicationAccessor GoApplicationAccessor;
 	private static final Logger Log = Logger.getLoggerFor(OctaneGoCDPlugin.class);
 	private static GoPluginIdentifier PluginIdentifier;
 	private GoPluginServices goPluginServices = new GoPluginServices();
 	private static OctaneGoCDPluginSettings settings;
+	private static PipelineFilter pipelineFilter = new PipelineFilter(null, null);
+	private static ReportFilter reportFilter = new ReportFilter(null, null);
+	private volatile DuplicateNotificationFilter duplicateFilter = new DuplicateNotificationFilter(OctaneGoCDPluginSettings.DefaultDuplicateWindow * 1000L);
+	private StageStatusProcessor stageStatusProcessor;
+	private NotificationJournal journal;
+	private ReconciliationCursors reconciliationCursors;
+	private ReconciliationSweeper reconciliationSweeper;
+	private static HistoryBackfill historyBackfill;
 
 	@Override
 	public void initializeGoApplicationAccessor(GoApplicationAccessor goApplicationAccessor) {
@@ -84,9 +116,9 @@ public class OctaneGoCDPlugin implements GoPlugin {
 			GoApiResponse response = goApplicationAccessor.submit(request);
 			if (response.responseCode() == 200) {
 				OctaneGoCDPluginSettings pluginSettings = new Gson().fromJson(response.responseBody(), OctaneGoCDPluginSettings.class);
-				settings = new OctaneGoCDPluginSettings(pluginSettings);
+				applySettings(new OctaneGoCDPluginSettings(pluginSettings));
 			} else {
-				settings = new OctaneGoCDPluginSettings();
+				applySettings(new OctaneGoCDPluginSettings());
 			}
 		}
 		{ // retrieve server info.
@@ -103,9 +135,62 @@ public class OctaneGoCDPlugin implements GoPlugin {
 			Log.error("Plugin initialization: unable to create Octane client, please check the connection with Octane. error:"+ e.getMessage(), e);
 		}
 
+		final File dataDirectory = new File(System.getProperty(DataDirectoryProperty, new File(System.getProperty("user.dir"), "octane-gocd-plugin").getPath()));
+		openSpoolDirectory(new File(dataDirectory, "spool"));
+		openJournal(new File(dataDirectory, "journal"));
+		startReconciliation(new File(dataDirectory, "reconciliation-cursors.json"));
+		startBackfill(new File(dataDirectory, "backfill-checkpoints.json"));
+		startStatisticsLog();
+
 		Log.info("MicroFocus ALM Octane initialized with '" + settings.getServerURL() + "'");
 	}
 
+	/**
+	 * Lets large test results be spooled into the plugin's own directory and removes the files left
+	 * there by the last run.
+	 */
+	private static void openSpoolDirectory(File directory) {
+		try {
+			SpoolBuffer.useDirectory(directory);
+		} catch (IOException e) {
+			Log.warn("Could not use spool directory '" + directory + "', using the temporary directory instead: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Opens the journal of received notifications and resubmits the notifications which were
+	 * not processed before the last shutdown. Notifications which stay uncompleted while the plugin
+	 * is running are resubmitted periodically, until they are given up.
+	 * The location of the plugin's data can be overridden by the system property {@value #DataDirectoryProperty}.
+	 */
+	private void openJournal(File directory) {
+		try {
+			journal = new NotificationJournal(directory);
+		} catch (IOException e) {
+			Log.error("Could not open notification journal in '" + directory + "'. Notifications will not survive a restart.", e);
+			return;
+		}
+		resubmit(journal.getRecoveredEntries());
+		final NotificationJournal openedJournal = journal;
+		Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("octane-journal-retry")).scheduleWithFixedDelay(() -> {
+			openedJournal.giveUp(JournalMaxAgeMillis, JournalMaxOlderSegments);
+			if (getStageStatusProcessor().getQueueDepth() == 0) { // queued notifications might still complete their entries.
+				resubmit(openedJournal.takeStaleEntries(JournalRetryMillis));
+			}
+		}, JournalRetryMillis, JournalRetryMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void resubmit(List<NotificationJournal.Entry> entries) {
+		for (NotificationJournal.Entry entry : entries) {
+			StatusInfoWrapper statusInfo = new StatusInfoWrapper(entry.getBody());
+			if (pipelineFilter.isTracked(statusInfo.getPipelineName())) {
+				submitStageStatus(statusInfo, entry.getId());
+			} else {
+				journal.markDone(entry.getId());
+			}
+		}
+	}
+
 	private OctaneConfiguration createOctaneConfiguration(OctaneGoCDPluginSettings octaneGoCDPluginSettings){
 
 		OctaneConfiguration conf = OctaneConfiguration.createWithUiLocation(goPluginServices.getGoServerID(), octaneGoCDPluginSettings.getServerURL());
@@ -117,14 +202,25 @@ public class OctaneGoCDPlugin implements GoPlugin {
 	@Override
 	public GoPluginApiResponse handle(GoPluginApiRequest request) throws UnhandledRequestTypeException {
 		if ("stage-status".equals(request.requestName())) { // server is informing about a status change.
-			GenericJsonObject statusInfo = new Gson().fromJson(request.requestBody(), GenericJsonObject.class);
-			try { // trying to retrieve the OctaneSDK-instance might create an exception if Octane is not yet initialized.
-				//new OctaneCIEventBuilder(goPluginServices.createGoApiClient(), OctaneSDK.getInstance()).sendCIEvent(statusInfo);
-				new OctaneCIEventBuilder(goPluginServices.createGoApiClient()).sendCIEvent(new StatusInfoWrapper(request.requestBody()));
-
-			} catch (IllegalArgumentException e) {
-				Log.info("Octane plugin not yet configured. Skipping sending status info. " + e.getMessage());
+			StatusInfoWrapper statusInfoWrapper = new StatusInfoWrapper(request.requestBody());
+			if (!pipelineFilter.isTracked(statusInfoWrapper.getPipelineName())) {
+				Log.debug("Pipeline '" + statusInfoWrapper.getPipelineName() + "' is not tracked. Skipping sending status info.");
+				return new DefaultGoPluginApiResponse(200, new Gson().toJson(Collections.singletonMap("status", "success")));
+			}
+			if (duplicateFilter.isDuplicate(statusInfoWrapper)) { // GoCD re-delivers notifications after slow or failed responses.
+				Log.debug("Suppressing repeated status of pipeline '" + statusInfoWrapper.getPipelineName() + "' (" + duplicateFilter.getSuppressedCount() + " suppressed so far).");
+				return new DefaultGoPluginApiResponse(200, new Gson().toJson(Collections.singletonMap("status", "success")));
 			}
+			// the notification is journaled and then processed asynchronously, so GoCD's notification thread is not blocked.
+			Long journalId = null;
+			if (journal != null) {
+				try {
+					journalId = journal.append(request.requestBody());
+				} catch (IOException e) {
+					Log.warn("Could not journal status of pipeline '" + statusInfoWrapper.getPipelineName() + "': " + e.getMessage());
+				}
+			}
+			submitStageStatus(statusInfoWrapper, journalId);
 			return new DefaultGoPluginApiResponse(200, new Gson().toJson(Collections.singletonMap("status", "success")));
 		} else if (GoApiUtil.GET_SETTINGS_VIEW_REQ.equals(request.requestName())) {
 			// server is requesting the HTML template for this plugin's configuration.
@@ -162,6 +258,51 @@ public class OctaneGoCDPlugin implements GoPlugin {
 					.put("required", true)
 					.put("secure", true)
 					.build())
+				.put("includedPipelines", new MapBuilder<>(new HashMap<String,Object>())
+					.put("display-name", "Included Pipelines")
+					.put("display-order", "5")
+					.put("required", false)
+					.build())
+				.put("excludedPipelines", new MapBuilder<>(new HashMap<String,Object>())
+					.put("display-name", "Excluded Pipelines")
+					.put("display-order", "6")
+					.put("required", false)
+					.build())
+				.put("eventWorkers", new MapBuilder<>(new HashMap<String,Object>())
+					.put("display-name", "Event Processing Threads")
+					.put("display-order", "7")
+					.put("required", false)
+					.build())
+				.put("eventQueueSize", new MapBuilder<>(new HashMap<String,Object>())
+					.put("display-name", "Event Queue Size")
+					.put("display-order", "8")
+					.put("required", false)
+					.build())
+				.put("stageEventThreshold", new MapBuilder<>(new HashMap<String,Object>())
+					.put("display-name", "Stage Event Threshold")
+					.put("display-order", "9")
+					.put("required", false)
+					.build())
+				.put("duplicateWindow", new MapBuilder<>(new HashMap<String,Object>())
+					.put("display-name", "Duplicate Suppression Window")
+					.put("display-order", "10")
+					.put("required", false)
+					.build())
+				.put("backfillBuilds", new MapBuilder<>(new HashMap<String,Object>())
+					.put("display-name", "Backfilled Builds")
+					.put("display-order", "11")
+					.put("required", false)
+					.build())
+				.put("includedReports", new MapBuilder<>(new HashMap<String,Object>())
+					.put("display-name", "Included Test Reports")
+					.put("display-order", "12")
+					.put("required", false)
+					.build())
+				.put("excludedReports", new MapBuilder<>(new HashMap<String,Object>())
+					.put("display-name", "Excluded Test Reports")
+					.put("display-order", "13")
+					.put("required", false)
+					.build())
 				.build()));
 		} else if (GoApiUtil.VALIDATE_SETTINGS_CONFIGURATION_REQ.equals(request.requestName())) { // server is asking for a validation of the given values.
 			final OctaneGoCDPluginSettingsWrapper wrapper = new Gson().fromJson(request.requestBody(), OctaneGoCDPluginSettingsWrapper.class);
@@ -198,7 +339,7 @@ public class OctaneGoCDPlugin implements GoPlugin {
 				//3. if there is no errors - update the SDK with the new connection properties
 				if (issues.isEmpty()){
 					//update the current configuration
-					OctaneGoCDPlugin.settings = new OctaneGoCDPluginSettings(newSettings);
+					applySettings(new OctaneGoCDPluginSettings(newSettings));
 					try {
 						if (OctaneSDK.getClients().isEmpty()) {
 							OctaneSDK.addClient(newConf, GoPluginServices.class);
@@ -208,6 +349,7 @@ public class OctaneGoCDPlugin implements GoPlugin {
 							currentConf.setClient(newConf.getClient());
 							currentConf.setUrlAndSpace(newConf.getUrl(),newConf.getSharedSpace());
 						}
+						OctaneClientLane.resetAll(); // give the new connection settings a chance right away.
 					} catch ( Error e) {
 						Log.error("Validate and connect plugin to Octane: Unable to create Octane client, please check the connection with Octane. error:"+ e.getMessage(), e);
 					}
@@ -223,7 +365,9 @@ public class OctaneGoCDPlugin implements GoPlugin {
 
 	@Override
 	public GoPluginIdentifier pluginIdentifier() {
-		PluginIdentifier = new GoPluginIdentifier("notification", Collections.singletonList("1.0"));
+		// GoCD uses the highest version both sides support. The decoder skips the properties added by newer versions
+		// (e.g. the label and the previous stage); StatusInfoWrapperTest covers a payload of that shape.
+		PluginIdentifier = new GoPluginIdentifier("notification", Arrays.asList("1.0", "2.0", "3.0", "4.0"));
 		return PluginIdentifier;
 	}
 
@@ -231,6 +375,143 @@ public class OctaneGoCDPlugin implements GoPlugin {
 		return settings;
 	}
 
+	private synchronized void applySettings(OctaneGoCDPluginSettings newSettings) {
+		settings = newSettings;
+		pipelineFilter = new PipelineFilter(newSettings);
+		reportFilter = new ReportFilter(newSettings);
+		if (duplicateFilter.getWindowMillis() != newSettings.getDuplicateWindowMillis()) {
+			duplicateFilter = new DuplicateNotificationFilter(newSettings.getDuplicateWindowMillis());
+		}
+		if (stageStatusProcessor != null) { // a second processor would break the order of the notifications of a pipeline.
+			stageStatusProcessor.reconfigure(newSettings.getEventWorkerCount(), newSettings.getEventQueueCapacity(),
+				newSettings.getStageEventSheddingThreshold());
+		} else {
+			stageStatusProcessor = new StageStatusProcessor(newSettings.getEventWorkerCount(), newSettings.getEventQueueCapacity(),
+				newSettings.getStageEventSheddingThreshold(), this::processStageStatus);
+		}
+	}
+
+	private synchronized StageStatusProcessor getStageStatusProcessor() {
+		if (stageStatusProcessor == null) {
+			final OctaneGoCDPluginSettings defaults = new OctaneGoCDPluginSettings();
+			stageStatusProcessor = new StageStatusProcessor(defaults.getEventWorkerCount(), defaults.getEventQueueCapacity(),
+				defaults.getStageEventSheddingThreshold(), this::processStageStatus);
+		}
+		return stageStatusProcessor;
+	}
+
+	/**
+	 * Periodically logs the statistics of the notification processing, as long as notifications arrive.
+	 */
+	private void startStatisticsLog() {
+		final long[] lastAccepted = {-1};
+		Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("octane-statistics")).scheduleWithFixedDelay(() -> {
+			final StageStatusProcessor processor = getStageStatusProcessor();
+			final long accepted = processor.getAcceptedCount() + processor.getDroppedCount();
+			if (accepted != lastAccepted[0]) { // nothing to report while idle.
+				lastAccepted[0] = accepted;
+				Log.info("Notification processing: " + processor.getStatistics());
+			}
+		}, StatisticsIntervalMillis, StatisticsIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts the background sweeper which reports pipeline runs whose notifications have been missed.
+	 */
+	private void startReconciliation(File cursorsFile) {
+		reconciliationCursors = new ReconciliationCursors(cursorsFile);
+		reconciliationSweeper = new ReconciliationSweeper(goPluginServices::createGoApiClient, pipelineName -> pipelineFilter.isTracked(pipelineName),
+			reconciliationCursors, () -> getStageStatusProcessor().getQueueDepth() > 0, this::reportMissedPipelineEnd);
+		reconciliationSweeper.start();
+	}
+
+	/**
+	 * Prepares the backfill of pipeline histories and resumes the backfills interrupted by the last shutdown.
+	 */
+	private void startBackfill(File checkpointsFile) {
+		if (historyBackfill != null) {
+			historyBackfill.shutdown();
+		}
+		historyBackfill = new HistoryBackfill(() -> goPluginServices.createGoApiClient(), new BackfillCheckpoints(checkpointsFile),
+			HistoryBackfill.DefaultConcurrency, this::reportHistoricalRun);
+		historyBackfill.resumeUnfinished();
+	}
+
+	/**
+	 * Requests the backfill of the given pipeline's history, if configured and the pipeline has not
+	 * been backfilled before. Requesting it again has no effect, so this can be called whenever
+	 * Octane asks for the pipeline.
+	 */
+	public static void requestHistoryBackfill(String pipelineName) {
+		final HistoryBackfill backfill = historyBackfill;
+		if (backfill != null && settings != null && pipelineFilter.isTracked(pipelineName)) {
+			backfill.requestIfUnknown(pipelineName, settings.getBackfillBuildCount());
+		}
+	}
+
+	/**
+	 * @return whether the run has been handed over; once it has been delivered, the reconciliation does not report it again
+	 */
+	private boolean reportHistoricalRun(GoPipelineInstance pipelineInstance) {
+		try { // trying to retrieve the OctaneSDK-instance might create an exception if Octane is not yet initialized.
+			new OctaneCIEventBuilder(goPluginServices.createGoApiClient()).sendHistoricalRun(pipelineInstance, () -> {
+				if (reconciliationCursors != null) {
+					reconciliationCursors.markDone(pipelineInstance.getName(), pipelineInstance.getCounter());
+				}
+			});
+			return true;
+		} catch (IllegalArgumentException e) {
+			Log.info("Octane plugin not yet configured. Skipping historical pipeline run. " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * @return whether the end of the run has been handed over; onDelivered is run once it has been delivered
+	 */
+	private boolean reportMissedPipelineEnd(GoPipelineInstance pipelineInstance, Runnable onDelivered) {
+		try { // trying to retrieve the OctaneSDK-instance might create an exception if Octane is not yet initialized.
+			new OctaneCIEventBuilder(goPluginServices.createGoApiClient()).sendMissedPipelineEnd(pipelineInstance, onDelivered);
+			return true;
+		} catch (IllegalArgumentException e) {
+			Log.info("Octane plugin not yet configured. Skipping missed pipeline end. " + e.getMessage());
+			return false;
+		}
+	}
+
+	private void submitStageStatus(StatusInfoWrapper statusInfo, final Long journalId) {
+		if (journalId == null) {
+			getStageStatusProcessor().submit(statusInfo);
+		} else { // dropped pipeline starts and ends stay journaled, so they are replayed after a restart.
+			getStageStatusProcessor().submit(statusInfo, () -> journal.markDone(journalId));
+		}
+	}
+
+	/**
+	 * Sends the events of the given notification. The notification is only completed once its events
+	 * have been delivered; otherwise it stays journaled and the run stays open for the reconciliation.
+	 */
+	private void processStageStatus(StatusInfoWrapper statusInfo, Runnable onCompletion) {
+		try { // trying to retrieve the OctaneSDK-instance might create an exception if Octane is not yet initialized.
+			new OctaneCIEventBuilder(goPluginServices.createGoApiClient()).sendCIEvent(statusInfo, pipelineEnded -> {
+				if (pipelineEnded && reconciliationCursors != null) {
+					reconciliationCursors.markDone(statusInfo.getPipelineName(), statusInfo.getPipelineCounter());
+				}
+				onCompletion.run();
+			});
+		} catch (IllegalArgumentException e) {
+			Log.info("Octane plugin not yet configured. Skipping sending status info. " + e.getMessage());
+		}
+	}
+
+	public static PipelineFilter getPipelineFilter() {
+		return pipelineFilter;
+	}
+
+	public static ReportFilter getReportFilter() {
+		return reportFilter;
+	}
+
 	public static void setGoServerUrl(GoPluginServices goPluginServices){
 		try {
 			DefaultGoApiRequest request = new DefaultGoApiRequest(GoApiUtil.GET_SERVER_INFO_REQ, "1.0", OctaneGoCDPlugin.PluginIdentifier);
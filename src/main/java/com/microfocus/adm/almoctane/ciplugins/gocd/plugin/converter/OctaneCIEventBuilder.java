@@ -20,7 +20,6 @@
 
 package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter;
 
-import com.hp.octane.integrations.OctaneSDK;
 import com.hp.octane.integrations.dto.DTOFactory;
 import com.hp.octane.integrations.dto.causes.CIEventCause;
 import com.hp.octane.integrations.dto.causes.CIEventCauseType;
@@ -33,13 +32,16 @@ import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineConfig;
 import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineInstance;
 import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoStageConfig;
 import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoStageInstance;
+import com.microfocus.adm.almoctane.ciplugins.gocd.octane.GoPluginServices;
+import com.microfocus.adm.almoctane.ciplugins.gocd.octane.OctaneEventBatch;
 import com.microfocus.adm.almoctane.ciplugins.gocd.service.*;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.LruCache;
 import com.thoughtworks.go.plugin.api.logging.Logger;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This build helps converting GoCD status information into {@link CIEvent}s Octane can understand.
@@ -62,8 +64,15 @@ public class OctaneCIEventBuilder {
 	}
 
 	protected static final Logger Log = Logger.getLoggerFor(OctaneCIEventBuilder.class);
+	/** The recently seen pipeline runs, fed by all notifications. */
+	private static final LruCache<String, PipelineRunState> RunStates = new LruCache<>(1024);
+	/** Upstream causes are nested at most this deep, i.e. up to the run which triggered the whole chain. */
+	private static final int MaxCauseDepth = 10;
+	private static final PipelineDependencyGraph Dependencies = PipelineDependencyGraph.getInstance();
 
 	private final GoApiClient goApiClient;
+	private final OctaneEventBatch eventBatch = new OctaneEventBatch();
+	private boolean pipelineEnded;
 
 	public OctaneCIEventBuilder(final GoApiClient goApiClient) {
 		this.goApiClient = goApiClient;
@@ -71,18 +80,105 @@ public class OctaneCIEventBuilder {
 
 	/**
 	 * This method will analyze the given 'statusInfo' and may or may not generate
-	 * and send a {@link CIEvent} to Octane.
+	 * and send a {@link CIEvent} to Octane. All events generated for one notification
+	 * are handed over to Octane as a single batch.
 	 * @param statusInfo the status of the internal GoCD event
+	 * @param onDelivered told whether the end of the pipeline run has been sent, once all events
+	 *                    have been handed over to all Octane clients; not called if any remained undelivered
 	 */
-	public void sendCIEvent(StatusInfoWrapper statusInfo) {
+	public void sendCIEvent(StatusInfoWrapper statusInfo, Consumer<Boolean> onDelivered) {
 		if (statusInfo == null) {
 			return;
 		}
+		try {
+			collectCIEvents(statusInfo);
+		} catch (RuntimeException e) {
+			eventBatch.flush();
+			throw e;
+		}
+		final boolean ended = pipelineEnded;
+		eventBatch.close(() -> onDelivered.accept(ended));
+	}
+
+	/**
+	 * Sends the end of a pipeline run whose notifications have been missed: the pipeline end event,
+	 * the SCM event and the request to pull the test results.
+	 * @param pipelineInstance the finished pipeline run as found in the pipeline history
+	 * @param onDelivered run once all events have been handed over to all Octane clients
+	 */
+	public void sendMissedPipelineEnd(GoPipelineInstance pipelineInstance, Runnable onDelivered) {
+		try {
+			collectPipelineEnd(pipelineInstance, true);
+		} catch (RuntimeException e) {
+			eventBatch.flush();
+			throw e;
+		}
+		eventBatch.close(onDelivered);
+	}
+
+	/**
+	 * Sends a complete past pipeline run, reconstructed from the pipeline history: the pipeline
+	 * start and end events, the SCM event and the request to pull the test results. The test results
+	 * are not prefetched, so a backfill does not crowd out the staged results of live runs.
+	 * @param pipelineInstance the finished pipeline run as found in the pipeline history
+	 * @param onDelivered run once all events have been handed over to all Octane clients
+	 */
+	public void sendHistoricalRun(GoPipelineInstance pipelineInstance, Runnable onDelivered) {
+		final String pipelineName = pipelineInstance.getName();
+		final String pipelineCounter = String.valueOf(pipelineInstance.getCounter());
+		try {
+			CIEvent event = DTOFactory.getInstance().newDTO(CIEvent.class)
+				.setEventType(CIEventType.STARTED)
+				.setProject(pipelineName)
+				.setProjectDisplayName(pipelineName)
+				.setBuildCiId(pipelineCounter)
+				.setNumber(pipelineCounter)
+				.setCauses(toCauses(Dependencies.recordRun(pipelineInstance), 0))
+				.setStartTime(pipelineInstance.getFirstScheduledDate());
+			eventBatch.add(event);
+			collectPipelineEnd(pipelineInstance, false);
+		} catch (RuntimeException e) {
+			eventBatch.flush();
+			throw e;
+		}
+		eventBatch.close(onDelivered);
+	}
+
+	private void collectPipelineEnd(GoPipelineInstance pipelineInstance, boolean prefetch) {
+		final String pipelineName = pipelineInstance.getName();
+		final String pipelineCounter = String.valueOf(pipelineInstance.getCounter());
+		CIEvent event = DTOFactory.getInstance().newDTO(CIEvent.class)
+			.setEventType(CIEventType.FINISHED)
+			.setProject(pipelineName)
+			.setProjectDisplayName(pipelineName)
+			.setBuildCiId(pipelineCounter)
+			.setNumber(pipelineCounter)
+			.setCauses(toCauses(Dependencies.recordRun(pipelineInstance), 0))
+			.setResult(getResult(pipelineInstance))
+			.setStartTime(pipelineInstance.getFirstScheduledDate())
+			.setDuration(pipelineInstance.getDuration());
+		eventBatch.add(event);
+		sendPipelineSCMEvent(pipelineName, pipelineCounter, pipelineInstance);
+		requestTestsResult(pipelineName, pipelineCounter, prefetch);
+	}
+
+	private void collectCIEvents(StatusInfoWrapper statusInfo) {
+		pipelineEnded = false;
 
 		final String pipelineName = statusInfo.getPipelineName();
 		final String stageName = statusInfo.getStageName();
-		final GoPipelineConfig pipelineConfig = new GoGetPipelineConfig(goApiClient).get(pipelineName);
+		if (statusInfo.getStageStatus() == null) { // GoCD sent a state this plugin does not know.
+			Log.warn("Skipping status of pipeline '" + pipelineName + "' with unknown stage state '" + statusInfo.getStageState() + "'");
+			return;
+		}
+		final GoPipelineConfig pipelineConfig = Dependencies.getConfig(goApiClient, pipelineName);
 		final List<GoStageConfig> stages = pipelineConfig.getStages();
+		final PipelineRunState runState = RunStates.computeIfAbsent(
+			PipelineRunState.keyOf(pipelineName, statusInfo.getPipelineCounter()), key -> new PipelineRunState());
+		runState.update(statusInfo, isFirstStage(stageName, stages));
+		if (statusInfo.hasBuildCause()) {
+			Dependencies.recordRun(pipelineName, statusInfo.getPipelineCounter(), statusInfo.getBuildCause());
+		}
 
 		switch (statusInfo.getStageStatus()){
 			case Building:
@@ -96,18 +192,20 @@ public class OctaneCIEventBuilder {
 			case Passed:
 				//send stage end event
 				sendStageEndEvent(statusInfo);
+				GoPluginServices.ingestStageTestRuns(pipelineName, statusInfo.getPipelineCounter(), stageName, statusInfo.getStageCounter());
 				if(isLastStage(stageName,stages)){
-					sendPipelineEndEvent(statusInfo);
+					sendPipelineEndEvent(statusInfo, runState);
 					//send pipeline end event
 				}
 				break;
 			case Failed:
 			case Cancelled:
 				sendStageEndEvent(statusInfo);
-				sendPipelineEndEvent(statusInfo);
+				GoPluginServices.ingestStageTestRuns(pipelineName, statusInfo.getPipelineCounter(), stageName, statusInfo.getStageCounter());
+				sendPipelineEndEvent(statusInfo, runState);
 				break;
 			default:
-				sendPipelineEndEvent(statusInfo);
+				sendPipelineEndEvent(statusInfo, runState);
 		}
 	}
 
@@ -116,13 +214,51 @@ public class OctaneCIEventBuilder {
 		CIEventCause cause = DTOFactory.getInstance().newDTO(CIEventCause.class)
 			.setType(CIEventCauseType.UPSTREAM)
 			.setProject(statusInfo.getPipelineName())
-			.setBuildCiId(statusInfo.getPipelineCounter());
+			.setBuildCiId(String.valueOf(statusInfo.getPipelineCounter()))
+			.setCauses(getUpstreamCauses(statusInfo));
 		List<CIEventCause> causeList =new ArrayList<>();
 		causeList.add(cause);
 		return causeList;
 
 	}
 
+	/**
+	 * @return the causes pointing to the upstream runs which triggered the pipeline run
+	 */
+	private List<CIEventCause> getUpstreamCauses(StatusInfoWrapper statusInfo) {
+		return toCauses(Dependencies.getUpstreamRuns(statusInfo.getPipelineName(), statusInfo.getPipelineCounter()), 0);
+	}
+
+	/**
+	 * Converts the given upstream runs into causes, each nesting the causes of its own upstream runs.
+	 */
+	private static List<CIEventCause> toCauses(List<PipelineDependencyGraph.Run> upstreamRuns, int depth) {
+		if (upstreamRuns.isEmpty() || depth >= MaxCauseDepth) {
+			return Collections.emptyList();
+		}
+		List<CIEventCause> causes = new ArrayList<>();
+		for (PipelineDependencyGraph.Run run : upstreamRuns) {
+			causes.add(DTOFactory.getInstance().newDTO(CIEventCause.class)
+				.setType(CIEventCauseType.UPSTREAM)
+				.setProject(run.getPipelineName())
+				.setBuildCiId(String.valueOf(run.getCounter()))
+				.setCauses(toCauses(Dependencies.getUpstreamRuns(run.getPipelineName(), run.getCounter()), depth + 1)));
+		}
+		return causes;
+	}
+
+	private static CIBuildResult getResult(GoPipelineInstance pipelineInstance) {
+		if (pipelineInstance.isPassed()) {
+			return CIBuildResult.SUCCESS;
+		}
+		for (GoStageInstance stageInstance : pipelineInstance.getStages()) {
+			if ("Cancelled".equals(stageInstance.getResult())) {
+				return CIBuildResult.ABORTED;
+			}
+		}
+		return CIBuildResult.FAILURE;
+	}
+
 	private CIBuildResult getResult(PipelineStageState stageState){
 		switch (stageState) {
 			case Passed: return CIBuildResult.SUCCESS;
@@ -156,7 +292,7 @@ public class OctaneCIEventBuilder {
 
 	private void sendStageStartEvent(StatusInfoWrapper statusInfo){
 		final String stageName = statusInfo.getStageName();
-		final String pipelineCounter = statusInfo.getPipelineCounter();
+		final String pipelineCounter = String.valueOf(statusInfo.getPipelineCounter());
 		CIEvent event = DTOFactory.getInstance().newDTO(CIEvent.class)
 			.setEventType(CIEventType.STARTED)
 			.setProject(stageName)
@@ -165,33 +301,32 @@ public class OctaneCIEventBuilder {
 			.setNumber(pipelineCounter)
 			.setCauses(getCauses(statusInfo));
 
-		Date createTime = statusInfo.getStageCreateTime();
-		if (createTime != null) {
-			event.setStartTime(createTime.getTime());
+		if (statusInfo.getStageCreateTime() != StatusInfoWrapper.UnknownTime) {
+			event.setStartTime(statusInfo.getStageCreateTime());
 		}
 
-		OctaneSDK.getClients().forEach(client -> client.getEventsService().publishEvent(event));
+		eventBatch.add(event);
 	}
 
-	private void sendPipelineSCMEvent(StatusInfoWrapper statusInfo, GoPipelineInstance pipelineInstance){
+	private void sendPipelineSCMEvent(String pipelineName, String pipelineCounter, GoPipelineInstance pipelineInstance){
 
 		if (pipelineInstance != null) {
 
 			SCMData scmData = new OctaneSCMDataBuilder().retrieveFrom(pipelineInstance);
 			if(scmData != null && scmData.getCommits()!=null) {
-				scmData.setBuiltRevId(statusInfo.getPipelineCounter());
+				scmData.setBuiltRevId(pipelineCounter);
 
 				CIEvent scmEvent = DTOFactory.getInstance().newDTO(CIEvent.class)
 					.setEventType(CIEventType.SCM)
-					.setProject(statusInfo.getPipelineName())
-					.setProjectDisplayName(statusInfo.getPipelineName())
-					.setBuildCiId(statusInfo.getPipelineCounter())
-					.setNumber(statusInfo.getPipelineCounter())
+					.setProject(pipelineName)
+					.setProjectDisplayName(pipelineName)
+					.setBuildCiId(pipelineCounter)
+					.setNumber(pipelineCounter)
 					.setCauses(Collections.<CIEventCause>emptyList())
 					.setPhaseType(PhaseType.INTERNAL)
 					.setScmData(scmData);
 
-				OctaneSDK.getClients().forEach(client -> client.getEventsService().publishEvent(scmEvent));
+				eventBatch.add(scmEvent);
 			}
 		}
 	}
@@ -199,7 +334,7 @@ public class OctaneCIEventBuilder {
 	private void sendStageEndEvent(StatusInfoWrapper statusInfo) {
 
 		final String stageName = statusInfo.getStageName();
-		final String pipelineCounter = statusInfo.getPipelineCounter();
+		final String pipelineCounter = String.valueOf(statusInfo.getPipelineCounter());
 		CIEvent event = DTOFactory.getInstance().newDTO(CIEvent.class)
 			.setEventType(CIEventType.FINISHED)
 			.setProject(stageName)
@@ -208,26 +343,27 @@ public class OctaneCIEventBuilder {
 			.setNumber(pipelineCounter)
 			.setCauses(getCauses(statusInfo))
 			.setResult(getResult(statusInfo.getStageStatus()))
-			.setDuration(Long.valueOf(1));
+			.setDuration(getStageDuration(statusInfo));
 
-		//setTime(event, statusInfo);
-		OctaneSDK.getClients().forEach(client -> client.getEventsService().publishEvent(event));
+		if (statusInfo.getStageCreateTime() != StatusInfoWrapper.UnknownTime) {
+			event.setStartTime(statusInfo.getStageCreateTime());
+		}
+		eventBatch.add(event);
 	}
 
 	private void sendPipelineStartEvent(StatusInfoWrapper statusInfo) {
 		final String pipelineName = statusInfo.getPipelineName();
-		final String pipelineCounter =statusInfo.getPipelineCounter();
+		final String pipelineCounter = String.valueOf(statusInfo.getPipelineCounter());
 		CIEvent event = DTOFactory.getInstance().newDTO(CIEvent.class)
 			.setEventType(CIEventType.STARTED)
 			.setProject(pipelineName)
 			.setProjectDisplayName(pipelineName)
 			.setBuildCiId(pipelineCounter)
 			.setNumber(pipelineCounter)
-			.setCauses(Collections.<CIEventCause>emptyList());
+			.setCauses(getUpstreamCauses(statusInfo));
 
-		Date createTime = statusInfo.getStageCreateTime();
-		if (createTime != null) {
-			event.setStartTime(createTime.getTime());
+		if (statusInfo.getStageCreateTime() != StatusInfoWrapper.UnknownTime) {
+			event.setStartTime(statusInfo.getStageCreateTime());
 		}
 
 		// try to give an estimate about the expected building time.
@@ -243,40 +379,95 @@ public class OctaneCIEventBuilder {
 		}
 		event.setEstimatedDuration(estimatedDuration);
 
-		OctaneSDK.getClients().forEach(client -> client.getEventsService().publishEvent(event));
+		eventBatch.add(event);
 	}
 
-	private void sendPipelineEndEvent(StatusInfoWrapper statusInfo) {
+	private void sendPipelineEndEvent(StatusInfoWrapper statusInfo, PipelineRunState runState) {
 		final String pipelineName = statusInfo.getPipelineName();
-		final String pipelineCounter = statusInfo.getPipelineCounter();
+		final String pipelineCounter = String.valueOf(statusInfo.getPipelineCounter());
 		CIEvent event = DTOFactory.getInstance().newDTO(CIEvent.class)
 			.setEventType(CIEventType.FINISHED)
 			.setProject(pipelineName)
 			.setProjectDisplayName(pipelineName)
 			.setBuildCiId(pipelineCounter)
 			.setNumber(pipelineCounter)
-			.setCauses(Collections.<CIEventCause>emptyList())
+			.setCauses(getUpstreamCauses(statusInfo))
 			.setResult(getResult(statusInfo.getStageStatus()));
 
-		// determine the start-time of this pipeline.
-		GoPipelineInstance pipelineInstance = new GoGetPipelineInstance(goApiClient).get(pipelineName, Integer.valueOf(pipelineCounter));
-		if (pipelineInstance != null) {
-			Long firstScheduledDate = pipelineInstance.getFirstScheduledDate();
-			// correct the start time to the first documented date.
-			event.setStartTime(firstScheduledDate);
-			Date lastTransitionTime = statusInfo.getStageLastTransitionTime();
-			if (lastTransitionTime != null && firstScheduledDate != null) {
-				event.setDuration(lastTransitionTime.getTime() - firstScheduledDate); // in ms
+		// determine the start-time of this pipeline; only ask GoCD if the start of the run has been missed.
+		GoPipelineInstance pipelineInstance = null;
+		Long startTime = null;
+		if (runState.getStartTime() != StatusInfoWrapper.UnknownTime) {
+			startTime = runState.getStartTime();
+		} else {
+			pipelineInstance = new GoGetPipelineInstance(goApiClient).get(pipelineName, statusInfo.getPipelineCounter());
+			if (pipelineInstance != null) {
+				startTime = pipelineInstance.getFirstScheduledDate(); // the first documented date.
+			}
+		}
+		if (startTime != null) {
+			event.setStartTime(startTime);
+			long lastTransitionTime = statusInfo.getStageLastTransitionTime();
+			if (lastTransitionTime != StatusInfoWrapper.UnknownTime) {
+				event.setDuration(lastTransitionTime - startTime); // in ms
 			}
 		}
 	//	event.setScmData(new OctaneSCMDataBuilder().retrieveFrom(pipelineInstance));
-		OctaneSDK.getClients().forEach(client -> client.getEventsService().publishEvent(event));
-		sendPipelineSCMEvent(statusInfo, pipelineInstance);
+		eventBatch.add(event);
+		if (!statusInfo.hasBuildCause() || hasChangedSCMMaterial(statusInfo.getBuildCause())) {
+			if (pipelineInstance == null) { // the commit details are only part of the pipeline instance.
+				pipelineInstance = new GoGetPipelineInstance(goApiClient).get(pipelineName, statusInfo.getPipelineCounter());
+			}
+			sendPipelineSCMEvent(pipelineName, pipelineCounter, pipelineInstance);
+		}
 		// tell octane to request the test results.
 
-		OctaneSDK.getClients().forEach(client ->
-			client.getTestsService().enqueuePushTestsResult(pipelineName, pipelineCounter, null));
+		requestTestsResult(pipelineName, pipelineCounter, true);
+		pipelineEnded = true;
+	}
+
+	/**
+	 * Tells Octane to pull the test results of the run.
+	 * @param prefetch whether to start loading them right away
+	 */
+	private void requestTestsResult(String pipelineName, String pipelineCounter, boolean prefetch) {
+		if (prefetch) {
+			GoPluginServices.prefetchTestsResult(pipelineName, pipelineCounter);
+		}
+		eventBatch.addTestsResultPush(pipelineName, pipelineCounter);
+	}
+
+	/**
+	 * @return the duration of the stage in ms; taken from the stage's times or its jobs
+	 */
+	private static Long getStageDuration(StatusInfoWrapper statusInfo) {
+		if (statusInfo.getStageCreateTime() != StatusInfoWrapper.UnknownTime
+			&& statusInfo.getStageLastTransitionTime() != StatusInfoWrapper.UnknownTime) {
+			return statusInfo.getStageLastTransitionTime() - statusInfo.getStageCreateTime();
+		}
+		long scheduled = Long.MAX_VALUE;
+		long completed = Long.MIN_VALUE;
+		for (StatusInfoWrapper.Job job : statusInfo.getJobs()) {
+			if (job.getScheduleTime() != StatusInfoWrapper.UnknownTime) {
+				scheduled = Math.min(scheduled, job.getScheduleTime());
+			}
+			if (job.getCompleteTime() != StatusInfoWrapper.UnknownTime) {
+				completed = Math.max(completed, job.getCompleteTime());
+			}
+		}
+		return scheduled <= completed ? completed - scheduled : Long.valueOf(1);
+	}
 
+	/**
+	 * Only changed materials other than upstream pipelines contribute commits to the SCM event.
+	 */
+	private static boolean hasChangedSCMMaterial(List<StatusInfoWrapper.MaterialRevision> buildCause) {
+		for (StatusInfoWrapper.MaterialRevision revision : buildCause) {
+			if (revision.isChanged() && !"pipeline".equalsIgnoreCase(revision.getType())) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -27,6 +27,7 @@ import com.hp.octane.integrations.dto.tests.TestRunError;
 import com.hp.octane.integrations.dto.tests.TestRunResult;
 import com.hp.octane.integrations.dto.tests.TestsResult;
 import com.microfocus.adm.almoctane.ciplugins.gocd.report.junit.JUnitReportParser;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.junit.JUnitStreamingParser;
 import com.microfocus.adm.almoctane.ciplugins.gocd.report.junit.dom.JUnitFailure;
 import com.microfocus.adm.almoctane.ciplugins.gocd.report.junit.dom.JUnitTestCase;
 import com.microfocus.adm.almoctane.ciplugins.gocd.report.junit.dom.JUnitTestSuite;
@@ -35,12 +36,14 @@ import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoGetArtifact;
 import com.thoughtworks.go.plugin.api.logging.Logger;
 
 import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This builder helps converting junit test reports into Octane {@link TestsResult}.
@@ -72,28 +75,55 @@ public class OctaneJUnitTestResultsBuilder {
 		JUnitTestSuite testSuite = new JUnitReportParser().parseFrom(artifactStream);
 		if (testSuite != null) {
 			List<JUnitTestCase> testCases = testSuite.getTestCases();
-			long startTime;
-			try {
-				startTime = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").parse(testSuite.getTimestamp()).getTime();
-			} catch (Exception e) {
-				Log.warn("Could not parse timestamp '" + testSuite.getTimestamp() + "' using current timestamp instead");
-				startTime = new Date().getTime();
-			}
+			long startTime = extractStartTime(testSuite);
 			for (JUnitTestCase testCase : testCases) {
-				testResults.add(DTOFactory.getInstance().newDTO(TestRun.class)
-					.setModuleName(testSuite.getName())
-					.setPackageName(extractPackageName(testCase.getClassName()))
-					.setClassName(extractSimpleClassName(testCase.getClassName()))
-					.setTestName(testCase.getName())
-					.setDuration((long)(testCase.getTime() * 1000))
-					.setStarted(startTime)
-					.setResult(convert(testCase))
-					.setError(extractTestRunError(testCase)));
+				testResults.add(convert(testSuite, testCase, startTime));
 			}
 		}
 		return testResults;
 	}
 
+	/**
+	 * Converts the given report while it is read. The test runs are handed over one at a time,
+	 * so the memory used does not depend on the size of the report.
+	 */
+	public static void convert(InputStream artifactStream, Consumer<TestRun> testRuns) throws XMLStreamException {
+		new JUnitStreamingParser().parse(artifactStream, new JUnitStreamingParser.Listener() {
+			private JUnitTestSuite currentSuite;
+			private long startTime;
+
+			@Override
+			public void testCase(JUnitTestSuite testSuite, JUnitTestCase testCase) {
+				if (testSuite != currentSuite) { // only parse the timestamp once per suite.
+					currentSuite = testSuite;
+					startTime = extractStartTime(testSuite);
+				}
+				testRuns.accept(convert(testSuite, testCase, startTime));
+			}
+		});
+	}
+
+	private static TestRun convert(JUnitTestSuite testSuite, JUnitTestCase testCase, long startTime) {
+		return DTOFactory.getInstance().newDTO(TestRun.class)
+			.setModuleName(testSuite.getName())
+			.setPackageName(extractPackageName(testCase.getClassName()))
+			.setClassName(extractSimpleClassName(testCase.getClassName()))
+			.setTestName(testCase.getName())
+			.setDuration((long)(testCase.getTime() * 1000))
+			.setStarted(startTime)
+			.setResult(convert(testCase))
+			.setError(extractTestRunError(testCase));
+	}
+
+	private static long extractStartTime(JUnitTestSuite testSuite) {
+		try {
+			return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").parse(testSuite.getTimestamp()).getTime();
+		} catch (Exception e) {
+			Log.warn("Could not parse timestamp '" + testSuite.getTimestamp() + "' using current timestamp instead");
+			return new Date().getTime();
+		}
+	}
+
 	public static TestRunResult convert(JUnitTestCase testCase) {
 		if (testCase.wasSkipped()) {
 			return TestRunResult.SKIPPED;
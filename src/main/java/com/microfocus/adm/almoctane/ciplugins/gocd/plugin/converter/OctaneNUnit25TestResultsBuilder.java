@@ -28,12 +28,14 @@ import com.hp.octane.integrations.dto.tests.TestsResult;
 import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoApiClient;
 import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoGetArtifact;
 import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v25.NUnit25ReportParser;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v25.NUnit25StreamingParser;
 import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v25.dom.NUnitFailure;
 import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v25.dom.NUnitTestCase;
 import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v25.dom.NUnitTestResults;
 import com.thoughtworks.go.plugin.api.logging.Logger;
 
 import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.ParseException;
@@ -41,6 +43,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This builder helps converting nUnit test reports into Octane {@link TestsResult}.
@@ -72,28 +75,53 @@ public class OctaneNUnit25TestResultsBuilder {
 		NUnitTestResults testResults = new NUnit25ReportParser().parseFrom(artifactStream);
 		if (testResults != null && testResults.getTestSuite() != null) {
 			List<NUnitTestCase> testCases = testResults.getTestSuite().getAllTestCases();
-			long startTime;
-			try {
-				startTime = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").parse(testResults.getDate() + "T" + testResults.getTime()).getTime();
-			} catch (ParseException e) {
-				Log.warn("Could not parse timestamp '" + testResults.getDate() + "T" + testResults.getTime() + "' using current timestamp instead");
-				startTime = new Date().getTime();
-			}
+			long startTime = extractStartTime(testResults);
 			for (NUnitTestCase testCase : testCases) {
-				final String fullyQualifiedClassName = extractFullyQualifiedClassName(testCase.getName());
-				testRuns.add(DTOFactory.getInstance().newDTO(TestRun.class)
-					.setPackageName(extractPackageName(fullyQualifiedClassName))
-					.setClassName(extractSimpleClassName(fullyQualifiedClassName))
-					.setTestName(extractTestName(testCase.getName()))
-					.setDuration((long)(testCase.getTime() * 1000))
-					.setStarted(startTime)
-					.setResult(convert(testCase))
-					.setError(extractTestRunError(testCase)));
+				testRuns.add(convert(testCase, startTime));
 			}
 		}
 		return testRuns;
 	}
 
+	/**
+	 * Converts the given report while it is read. The test runs are handed over one at a time,
+	 * so the memory used does not depend on the size of the report.
+	 */
+	public static void convert(InputStream artifactStream, Consumer<TestRun> testRuns) throws XMLStreamException {
+		new NUnit25StreamingParser().parse(artifactStream, new NUnit25StreamingParser.Listener() {
+			private Long startTime;
+
+			@Override
+			public void testCase(NUnitTestResults testResults, NUnitTestCase testCase) {
+				if (startTime == null) { // all test cases share the start time of the report.
+					startTime = extractStartTime(testResults);
+				}
+				testRuns.accept(convert(testCase, startTime));
+			}
+		});
+	}
+
+	private static TestRun convert(NUnitTestCase testCase, long startTime) {
+		final String fullyQualifiedClassName = extractFullyQualifiedClassName(testCase.getName());
+		return DTOFactory.getInstance().newDTO(TestRun.class)
+			.setPackageName(extractPackageName(fullyQualifiedClassName))
+			.setClassName(extractSimpleClassName(fullyQualifiedClassName))
+			.setTestName(extractTestName(testCase.getName()))
+			.setDuration((long)(testCase.getTime() * 1000))
+			.setStarted(startTime)
+			.setResult(convert(testCase))
+			.setError(extractTestRunError(testCase));
+	}
+
+	private static long extractStartTime(NUnitTestResults testResults) {
+		try {
+			return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").parse(testResults.getDate() + "T" + testResults.getTime()).getTime();
+		} catch (ParseException e) {
+			Log.warn("Could not parse timestamp '" + testResults.getDate() + "T" + testResults.getTime() + "' using current timestamp instead");
+			return new Date().getTime();
+		}
+	}
+
 	public static TestRunResult convert(NUnitTestCase testCase) {
 		if (!testCase.wasExecuted()) {
 			return TestRunResult.SKIPPED;
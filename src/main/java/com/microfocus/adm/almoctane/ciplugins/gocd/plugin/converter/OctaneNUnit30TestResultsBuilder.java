@@ -29,12 +29,14 @@ import com.hp.octane.integrations.dto.tests.TestsResult;
 import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoApiClient;
 import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoGetArtifact;
 import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v30.NUnit30ReportParser;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v30.NUnit30StreamingParser;
 import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v30.dom.NUnitFailure;
 import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v30.dom.NUnitTestCase;
 import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v30.dom.NUnitTestRun;
 import com.thoughtworks.go.plugin.api.logging.Logger;
 
 import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.ParseException;
@@ -42,6 +44,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This builder helps converting nUnit test reports into Octane {@link TestsResult}.
@@ -73,28 +76,56 @@ public class OctaneNUnit30TestResultsBuilder {
 		NUnitTestRun testRun = new NUnit30ReportParser().parseFrom(artifactStream);
 		if (testRun != null) {
 			List<NUnitTestCase> testCases = testRun.getAllTestCases();
-			long startTime;
-			try {
-				startTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ssX").parse(testRun.getStartTime()).getTime();
-			} catch (ParseException e) {
-				Log.warn("Could not parse timestamp '" + testRun.getStartTime() + "' using current timestamp instead");
-				startTime = new Date().getTime();
-			}
+			long startTime = extractStartTime(testRun);
 			for (NUnitTestCase testCase : testCases) {
-				testRuns.add(DTOFactory.getInstance().newDTO(TestRun.class)
-					.setPackageName(extractPackageName(testCase.getClassName()))
-					.setClassName(extractSimpleClassName(testCase.getClassName()))
-					.setTestName(testCase.getName())
-					.setDuration((long)(testCase.getDuration() * 1000))
-					.setStarted(startTime)
-					.setResult(convert(testCase))
-					.setError(extractTestRunError(testCase)));
+				testRuns.add(convert(testCase, startTime));
 			}
 		}
 		return testRuns;
 	}
 
+	/**
+	 * Converts the given report while it is read. The test runs are handed over one at a time,
+	 * so the memory used does not depend on the size of the report.
+	 */
+	public static void convert(InputStream artifactStream, Consumer<TestRun> testRuns) throws XMLStreamException {
+		new NUnit30StreamingParser().parse(artifactStream, new NUnit30StreamingParser.Listener() {
+			private Long startTime;
+
+			@Override
+			public void testCase(NUnitTestRun testRun, NUnitTestCase testCase) {
+				if (startTime == null) { // all test cases share the start time of the report.
+					startTime = extractStartTime(testRun);
+				}
+				testRuns.accept(convert(testCase, startTime));
+			}
+		});
+	}
+
+	private static TestRun convert(NUnitTestCase testCase, long startTime) {
+		return DTOFactory.getInstance().newDTO(TestRun.class)
+			.setPackageName(extractPackageName(testCase.getClassName()))
+			.setClassName(extractSimpleClassName(testCase.getClassName()))
+			.setTestName(testCase.getName())
+			.setDuration((long)(testCase.getDuration() * 1000))
+			.setStarted(startTime)
+			.setResult(convert(testCase))
+			.setError(extractTestRunError(testCase));
+	}
+
+	private static long extractStartTime(NUnitTestRun testRun) {
+		try {
+			return new SimpleDateFormat("yyyy-MM-dd HH:mm:ssX").parse(testRun.getStartTime()).getTime();
+		} catch (ParseException | NullPointerException e) {
+			Log.warn("Could not parse timestamp '" + testRun.getStartTime() + "' using current timestamp instead");
+			return new Date().getTime();
+		}
+	}
+
 	public static TestRunResult convert(NUnitTestCase testCase) {
+		if (testCase.getResult() == null) {
+			return TestRunResult.SKIPPED; // the result is unknown.
+		}
 		switch (testCase.getResult()) {
 			case Passed: return TestRunResult.PASSED;
 			case Failed: return TestRunResult.FAILED;
@@ -23,15 +23,26 @@ package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter;
 import com.hp.octane.integrations.dto.DTOFactory;
 import com.hp.octane.integrations.dto.scm.*;
 import com.microfocus.adm.almoctane.ciplugins.gocd.dto.*;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.LruCache;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * This builder helps retrieving the {@link SCMData} from a {@link GoPipelineInstance}.
+ *
+ * A single material (e.g. a mono repository) usually feeds many pipelines, which will all
+ * report the very same modifications. Therefore the converted {@link SCMRepository} is cached
+ * by the fingerprint of the material and the converted commits are cached by the fingerprint
+ * and the revision range of the modifications. The cached DTOs are shared between pipelines
+ * and must not be modified.
  */
 public class OctaneSCMDataBuilder {
 
+	private static final LruCache<String, SCMRepository> RepositoryCache = new LruCache<>(256);
+	private static final LruCache<String, List<SCMCommit>> CommitsCache = new LruCache<>(1024);
+
 	public SCMData retrieveFrom(GoPipelineInstance pipelineInstance) {
 		SCMData scmData = DTOFactory.getInstance().newDTO(SCMData.class);
 		GoBuildCause buildCause = pipelineInstance.getBuildCause();
@@ -39,26 +50,9 @@ public class OctaneSCMDataBuilder {
 			// search for the repository.
 			for (GoMaterialRevision materialRevision : buildCause.getMaterialRevision()) {
 				if (materialRevision.isChanged() && materialRevision.getMaterial() != null && !"Pipeline".equals(materialRevision.getMaterial().getType())) {
-					if (materialRevision.getMaterial() != null) {
-						scmData.setRepository(retrieveFrom(materialRevision.getMaterial()));
-					}
+					scmData.setRepository(retrieveFrom(materialRevision.getMaterial()));
 					if (materialRevision.getModifications() != null) {
-						scmData.setCommits(new ArrayList<SCMCommit>());
-						for (GoModification modification : materialRevision.getModifications()) {
-							List<SCMChange> changes = new ArrayList<>();
-							SCMChange change = DTOFactory.getInstance().newDTO(SCMChange.class);
-							change.setFile("revision_placeholder");
-							change.setType("edit");
-							changes.add(change);
-
-							scmData.getCommits().add(DTOFactory.getInstance().newDTO(SCMCommit.class)
-								.setUser(modification.getUserName())
-								.setUserEmail(modification.getEmailAddress())
-								.setComment(modification.getComment())
-								.setRevId(modification.getRevision())
-								.setTime(modification.getModifiedTime())
-								.setChanges(changes));
-						}
+						scmData.setCommits(retrieveCommits(materialRevision.getMaterial(), materialRevision.getModifications()));
 					}
 				}
 			}
@@ -67,6 +61,22 @@ public class OctaneSCMDataBuilder {
 	}
 
 	public SCMRepository retrieveFrom(GoMaterial material) {
+		if (material.getFingerprint() == null) {
+			return convert(material);
+		}
+		return RepositoryCache.computeIfAbsent(material.getFingerprint(), fingerprint -> convert(material));
+	}
+
+	protected List<SCMCommit> retrieveCommits(GoMaterial material, List<GoModification> modifications) {
+		if (material.getFingerprint() == null || modifications.isEmpty()) {
+			return convert(modifications);
+		}
+		final String revisionRange = material.getFingerprint() + "@" + modifications.size() + ":"
+			+ modifications.get(0).getRevision() + ".." + modifications.get(modifications.size() - 1).getRevision();
+		return CommitsCache.computeIfAbsent(revisionRange, key -> convert(modifications));
+	}
+
+	private static SCMRepository convert(GoMaterial material) {
 		SCMRepository repository = DTOFactory.getInstance().newDTO(SCMRepository.class)
 			.setType(SCMType.fromValue(material.getType().toLowerCase()));
 
@@ -80,4 +90,24 @@ public class OctaneSCMDataBuilder {
 		}
 		return repository;
 	}
+
+	private static List<SCMCommit> convert(List<GoModification> modifications) {
+		final List<SCMCommit> commits = new ArrayList<>(modifications.size());
+		for (GoModification modification : modifications) {
+			List<SCMChange> changes = new ArrayList<>();
+			SCMChange change = DTOFactory.getInstance().newDTO(SCMChange.class);
+			change.setFile("revision_placeholder");
+			change.setType("edit");
+			changes.add(change);
+
+			commits.add(DTOFactory.getInstance().newDTO(SCMCommit.class)
+				.setUser(modification.getUserName())
+				.setUserEmail(modification.getEmailAddress())
+				.setComment(modification.getComment())
+				.setRevId(modification.getRevision())
+				.setTime(modification.getModifiedTime())
+				.setChanges(changes));
+		}
+		return Collections.unmodifiableList(commits);
+	}
 }
@@ -25,11 +25,18 @@ import com.hp.octane.integrations.dto.events.CIEvent;
 import com.hp.octane.integrations.dto.tests.TestRun;
 import com.hp.octane.integrations.dto.tests.TestsResult;
 import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoArtifact;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.settings.ReportFilter;
 import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoApiClient;
+import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoGetArtifact;
 import com.thoughtworks.go.plugin.api.logging.Logger;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This builder helps converting test reports into Octane {@link TestsResult}.
@@ -52,29 +59,119 @@ public class OctaneTestResultsBuilder {
 	 */
 	public List<TestRun> convert(List<GoArtifact> artifacts) {
 		final List<TestRun> testResults = new ArrayList<>();
+		for (GoArtifact artifact : collectReports(artifacts)) {
+			testResults.addAll(convert(artifact));
+		}
+		return testResults;
+	}
+
+	/**
+	 * Collects the XML files among the given artifacts, including the files of nested folders.
+	 * @param artifacts the artifacts of GocD build
+	 * @return the possible test reports in the order of the listing
+	 */
+	public static List<GoArtifact> collectReports(List<GoArtifact> artifacts) {
+		return collectReports(artifacts, new ReportFilter(null, null).forPipeline(null));
+	}
+
+	/**
+	 * Collects the test reports among the given artifacts which match the given rules. Folders below
+	 * which no report can match are not traversed; they are part of the given listing nonetheless.
+	 * @param artifacts the artifacts of GocD build
+	 * @param rules the report rules of the pipeline
+	 * @return the possible test reports in the order of the listing
+	 */
+	public static List<GoArtifact> collectReports(List<GoArtifact> artifacts, ReportFilter.PathRules rules) {
+		final List<GoArtifact> reports = new ArrayList<>();
+		collectReports(artifacts, rules, new ArrayList<>(), reports);
+		return reports;
+	}
+
+	private static void collectReports(List<GoArtifact> artifacts, ReportFilter.PathRules rules, List<String> path, List<GoArtifact> reports) {
 		if (artifacts != null) {
 			for (GoArtifact artifact : artifacts) {
+				if (artifact.getName() == null) {
+					continue;
+				}
+				path.add(artifact.getName());
 				if ("folder".equals(artifact.getType())) {
-					testResults.addAll(convert(artifact.getFiles()));
-				} else if ("file".equals(artifact.getType()) && artifact.getName() != null && artifact.getName().toLowerCase().endsWith(".xml")) {
-					testResults.addAll(convert(artifact));
+					if (rules.mayContainReports(path)) {
+						collectReports(artifact.getFiles(), rules, path, reports);
+					}
+				} else if ("file".equals(artifact.getType()) && rules.isReport(path)) {
+					reports.add(artifact);
 				}
+				path.remove(path.size() - 1);
 			}
 		}
-		return testResults;
 	}
 
+	/**
+	 * Downloads the given artifact once and converts it with the parser matching its root element.
+	 * @param artifact a XML file artifact
+	 * @return TestRun's list; empty if the artifact is no test report
+	 */
 	public List<TestRun> convert(GoArtifact artifact) {
 		final List<TestRun> testResults = new ArrayList<>();
-		testResults.addAll(new OctaneJUnitTestResultsBuilder(goApiClient).convert(artifact.getUrl()));
-		testResults.addAll(new OctaneNUnit25TestResultsBuilder(goApiClient).convert(artifact.getUrl()));
-		testResults.addAll(new OctaneNUnit30TestResultsBuilder(goApiClient).convert(artifact.getUrl()));
+		convert(artifact, testResults::add);
+		return testResults;
+	}
+
+	/**
+	 * Downloads the given artifact once and converts it with the streaming parser matching its
+	 * root element. The test runs are handed over while the report is read. Artifacts whose first
+	 * bytes already show that they are no test report are not downloaded completely.
+	 * @param artifact a XML file artifact
+	 * @param testRuns receives the test runs; nothing if the artifact is no test report
+	 * @return the number of test runs found
+	 */
+	public int convert(GoArtifact artifact, Consumer<TestRun> testRuns) {
+		final InputStream download = new GoGetArtifact(goApiClient).get(artifact.getUrl(), ReportFormat::mayBeReport);
+		return download != null ? convert(artifact, download, testRuns) : 0;
+	}
+
+	/**
+	 * Converts the given download of an artifact with the streaming parser matching its root element.
+	 * @param artifact a XML file artifact
+	 * @param download the content of the artifact; it is closed afterwards
+	 * @param testRuns receives the test runs; nothing if the artifact is no test report
+	 * @return the number of test runs found
+	 */
+	public static int convert(GoArtifact artifact, InputStream download, Consumer<TestRun> testRuns) {
+		final int[] count = new int[1];
+		final Consumer<TestRun> counting = testRun -> {
+			count[0]++;
+			testRuns.accept(testRun);
+		};
+		ReportFormat format = null;
+		try (InputStream report = new BufferedInputStream(download)) {
+			report.mark(ReportFormat.SniffLimit);
+			format = ReportFormat.sniff(report);
+			if (format == null) {
+				Log.debug("artifact '" + artifact.getUrl() + "' is no test-result-file");
+				return 0;
+			}
+			report.reset();
+			switch (format) {
+				case JUnit:
+					OctaneJUnitTestResultsBuilder.convert(report, counting);
+					break;
+				case NUnit25:
+					OctaneNUnit25TestResultsBuilder.convert(report, counting);
+					break;
+				case NUnit30:
+					OctaneNUnit30TestResultsBuilder.convert(report, counting);
+					break;
+			}
+		} catch (XMLStreamException e) {
+			Log.warn("artifact '" + artifact.getUrl() + "' could not be parsed as " + format + " test-result-file");
+		} catch (IOException e) {
+			Log.error("could not read artifact '" + artifact.getUrl() + "' from server", e);
+		}
 		// create some logfile output.
-		if (!testResults.isEmpty()) {
-			Log.info("artifact '" + artifact.getUrl() + "' could be parsed as test-result-file. Found " + testResults.size() + " tests.");
-		} else {
-			Log.debug("artifact '" + artifact.getUrl() + "' could not be parsed as test-result-file");
+		if (count[0] > 0) {
+			Log.info("artifact '" + artifact.getUrl() + "' could be parsed as " + format + " test-result-file. Found " + count[0] + " tests.");
 		}
-		return testResults;
+		return count[0];
 	}
 }
@@ -0,0 +1,246 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoBuildCause;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoMaterialConfig;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoMaterialRevision;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoModification;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineConfig;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineInstance;
+import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoApiClient;
+import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoGetPipelineConfig;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This graph knows which pipelines depend on which upstream pipelines and which upstream runs
+ * triggered the recently seen pipeline runs.
+ *
+ * The dependencies are taken from the pipeline materials of the pipeline configurations. A
+ * configuration is only processed again once its eTag changed. The upstream runs are taken from
+ * the build causes GoCD sends along with the notifications or the pipeline instances, so no extra
+ * API call is needed to link a run to the run which triggered it.
+ */
+public class PipelineDependencyGraph {
+
+	private static final PipelineDependencyGraph Instance = new PipelineDependencyGraph(1024);
+
+	private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+	private final LruCache<String, List<Run>> upstreamRuns;
+
+	PipelineDependencyGraph(int maxRuns) {
+		this.upstreamRuns = new LruCache<>(maxRuns);
+	}
+
+	public static PipelineDependencyGraph getInstance() {
+		return Instance;
+	}
+
+	/**
+	 * Retrieves the configuration of the given pipeline. The request is conditional, so the
+	 * configuration is only transferred and the graph only updated if the configuration changed.
+	 *
+	 * @return the current configuration; the last known one if the request failed
+	 */
+	public GoPipelineConfig getConfig(GoApiClient goApiClient, String pipelineName) {
+		final Node node = nodes.get(pipelineName);
+		final GoGetPipelineConfig.Result result = new GoGetPipelineConfig(goApiClient).get(pipelineName, node != null ? node.eTag : null);
+		if (result == null || (node != null && result.isNotModified())) {
+			return node != null ? node.config : null;
+		}
+		if (result.getConfig() == null) {
+			return null;
+		}
+		update(pipelineName, result.getConfig(), result.getETag());
+		return result.getConfig();
+	}
+
+	/**
+	 * Updates the dependencies of the given pipeline, unless the configuration is the one already known.
+	 */
+	public void update(String pipelineName, GoPipelineConfig config, String eTag) {
+		final Node node = nodes.get(pipelineName);
+		if (config == null || (node != null && eTag != null && eTag.equals(node.eTag))) {
+			return;
+		}
+		final Set<String> upstreamPipelines = new HashSet<>();
+		if (config.getMaterials() != null) {
+			for (GoMaterialConfig material : config.getMaterials()) {
+				if ("dependency".equals(material.getType()) && material.getAttributes() != null && material.getAttributes().get("pipeline") != null) {
+					upstreamPipelines.add(String.valueOf(material.getAttributes().get("pipeline")));
+				}
+			}
+		}
+		nodes.put(pipelineName, new Node(eTag, config, Collections.unmodifiableSet(upstreamPipelines)));
+	}
+
+	/**
+	 * @return the last retrieved configuration of the given pipeline, without asking GoCD; null if unknown
+	 */
+	public GoPipelineConfig getKnownConfig(String pipelineName) {
+		final Node node = nodes.get(pipelineName);
+		return node != null ? node.config : null;
+	}
+
+	/**
+	 * @return the names of the pipelines the given pipeline depends on; empty if its configuration is unknown
+	 */
+	public Set<String> getUpstreamPipelines(String pipelineName) {
+		final Node node = nodes.get(pipelineName);
+		return node != null ? node.upstreamPipelines : Collections.<String>emptySet();
+	}
+
+	/**
+	 * Remembers the upstream runs which triggered the given run, as stated by a stage-status notification.
+	 *
+	 * @param buildCause the material revisions of the notification
+	 * @return the upstream runs
+	 */
+	public List<Run> recordRun(String pipelineName, int counter, List<StatusInfoWrapper.MaterialRevision> buildCause) {
+		final List<Run> runs = new ArrayList<>();
+		for (StatusInfoWrapper.MaterialRevision revision : buildCause) {
+			if (revision.isChanged() && "pipeline".equalsIgnoreCase(revision.getType())) {
+				for (String pipelineRevision : revision.getRevisions()) {
+					addUpstreamRun(pipelineName, pipelineRevision, runs);
+				}
+			}
+		}
+		upstreamRuns.put(PipelineRunState.keyOf(pipelineName, counter), runs);
+		return runs;
+	}
+
+	/**
+	 * Remembers the upstream runs which triggered the given run, as stated by the pipeline history.
+	 *
+	 * @return the upstream runs
+	 */
+	public List<Run> recordRun(GoPipelineInstance pipelineInstance) {
+		final List<Run> runs = new ArrayList<>();
+		final GoBuildCause buildCause = pipelineInstance.getBuildCause();
+		if (buildCause != null && buildCause.getMaterialRevision() != null) {
+			for (GoMaterialRevision revision : buildCause.getMaterialRevision()) {
+				if (revision.isChanged() && revision.getMaterial() != null && "Pipeline".equalsIgnoreCase(revision.getMaterial().getType())
+					&& revision.getModifications() != null) {
+					for (GoModification modification : revision.getModifications()) {
+						addUpstreamRun(pipelineInstance.getName(), modification.getRevision(), runs);
+					}
+				}
+			}
+		}
+		upstreamRuns.put(PipelineRunState.keyOf(pipelineInstance.getName(), pipelineInstance.getCounter()), runs);
+		return runs;
+	}
+
+	/**
+	 * @return the remembered upstream runs which triggered the given run; empty if unknown
+	 */
+	public List<Run> getUpstreamRuns(String pipelineName, int counter) {
+		final List<Run> runs = upstreamRuns.get(PipelineRunState.keyOf(pipelineName, counter));
+		return runs != null ? runs : Collections.<Run>emptyList();
+	}
+
+	/**
+	 * Adds the run referred to by a revision of a pipeline material, e.g. 'upstream/4/deploy/1'.
+	 * Revisions of pipelines which are not a declared dependency are ignored once the configuration is known.
+	 */
+	private void addUpstreamRun(String pipelineName, String revision, List<Run> runs) {
+		if (revision == null) {
+			return;
+		}
+		final String[] parts = revision.split("/");
+		if (parts.length < 2) {
+			return;
+		}
+		final Node node = nodes.get(pipelineName);
+		if (node != null && !node.upstreamPipelines.contains(parts[0])) {
+			return;
+		}
+		try {
+			final Run run = new Run(parts[0], Integer.parseInt(parts[1]));
+			if (!runs.contains(run)) {
+				runs.add(run);
+			}
+		} catch (NumberFormatException e) {
+			// not a pipeline revision.
+		}
+	}
+
+	private static class Node {
+
+		private final String eTag;
+		private final GoPipelineConfig config;
+		private final Set<String> upstreamPipelines;
+
+		private Node(String eTag, GoPipelineConfig config, Set<String> upstreamPipelines) {
+			this.eTag = eTag;
+			this.config = config;
+			this.upstreamPipelines = upstreamPipelines;
+		}
+	}
+
+	/**
+	 * A single run of an upstream pipeline.
+	 */
+	public static class Run {
+
+		private final String pipelineName;
+		private final int counter;
+
+		Run(String pipelineName, int counter) {
+			this.pipelineName = pipelineName;
+			this.counter = counter;
+		}
+
+		public String getPipelineName() {
+			return pipelineName;
+		}
+
+		public int getCounter() {
+			return counter;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Run)) {
+				return false;
+			}
+			return counter == ((Run)other).counter && pipelineName.equals(((Run)other).pipelineName);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * pipelineName.hashCode() + counter;
+		}
+
+		@Override
+		public String toString() {
+			return PipelineRunState.keyOf(pipelineName, counter);
+		}
+	}
+}
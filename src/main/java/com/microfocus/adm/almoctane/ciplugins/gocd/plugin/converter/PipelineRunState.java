@@ -0,0 +1,59 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter;
+
+/**
+ * This is the state of a single pipeline run (identified by pipeline name and counter)
+ * as far as it is known from the stage-status notifications received so far.
+ *
+ * It records the start time of the run, so the pipeline end event can be built without requesting
+ * the pipeline instance from GoCD. The instance is only requested if the start of the run has been
+ * missed or if the SCM event needs the details of changed commits.
+ */
+public class PipelineRunState {
+
+	private long startTime = StatusInfoWrapper.UnknownTime;
+
+	/**
+	 * Feeds the given notification of this run into the state.
+	 *
+	 * @param statusInfo the notification
+	 * @param firstStage whether the notification is about the first stage of the pipeline
+	 */
+	public synchronized void update(StatusInfoWrapper statusInfo, boolean firstStage) {
+		if (firstStage && statusInfo.getStageStatus() == OctaneCIEventBuilder.PipelineStageState.Building
+			&& statusInfo.getStageCounter() <= 1 && statusInfo.getStageCreateTime() != StatusInfoWrapper.UnknownTime) {
+			startTime = statusInfo.getStageCreateTime();
+		}
+	}
+
+	/**
+	 * @return the create time of the first stage in epoch millis or {@link StatusInfoWrapper#UnknownTime}
+	 * if the start of the run has not been seen
+	 */
+	public synchronized long getStartTime() {
+		return startTime;
+	}
+
+	public static String keyOf(String pipelineName, int pipelineCounter) {
+		return pipelineName + "@" + pipelineCounter;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.XmlStreams;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * The test report formats this plugin can convert, identified by the root element of the report.
+ */
+public enum ReportFormat {
+
+	JUnit,
+	NUnit25,
+	NUnit30;
+
+	/** The maximum number of bytes read to find the root element. */
+	public static final int SniffLimit = 1024 * 1024;
+
+	/**
+	 * Reads the given report up to its root element. The caller has to reset the stream afterwards,
+	 * so it should be marked with a read limit of {@link #SniffLimit}.
+	 *
+	 * @return the format of the report or null if the stream is no test report this plugin knows
+	 */
+	public static ReportFormat sniff(InputStream report) {
+		return ofRootElement(rootElement(report));
+	}
+
+	/**
+	 * Decides on the first bytes of a file whether it has to be downloaded completely. A prefix which
+	 * ends before the root element can not be rejected.
+	 *
+	 * @return false if the root element of the file is no test report this plugin knows
+	 */
+	public static boolean mayBeReport(InputStream prefix) {
+		final String rootElement = rootElement(prefix);
+		return rootElement == null || ofRootElement(rootElement) != null;
+	}
+
+	/**
+	 * @return the name of the root element or null if the stream ends or is malformed before it
+	 */
+	private static String rootElement(InputStream report) {
+		XMLStreamReader reader = null;
+		try {
+			reader = XmlStreams.createReader(report);
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamReader.START_ELEMENT) {
+					return reader.getLocalName();
+				}
+			}
+		} catch (XMLStreamException e) { // not even well-formed XML up to the root element.
+			return null;
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close(); // does not close the underlying stream.
+				} catch (XMLStreamException e) {
+					// nothing to release.
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the format of reports with the given root element or null if it is unknown
+	 */
+	public static ReportFormat ofRootElement(String name) {
+		if ("testsuite".equals(name) || "testsuites".equals(name)) {
+			return JUnit;
+		} else if ("test-results".equals(name)) {
+			return NUnit25;
+		} else if ("test-run".equals(name)) {
+			return NUnit30;
+		}
+		return null;
+	}
+}
@@ -20,45 +20,302 @@
 
 package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter;
 
-import com.google.gson.Gson;
-import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GenericJsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.thoughtworks.go.plugin.api.logging.Logger;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * This is the typed model of a stage-status notification sent by GoCD.
+ *
+ * The notification is decoded in a single pass with a streaming reader; counters are kept as
+ * primitives and times are parsed once into epoch millis. Unknown properties are skipped.
+ *
+ * Besides the stage itself the notification contains the stage's jobs and the material revisions
+ * of the pipeline's build cause. Older servers might omit them, which can be checked with
+ * {@link #hasJobs()} and {@link #hasBuildCause()}.
+ */
 public class StatusInfoWrapper {
-	private GenericJsonObject statusInfo;
+
+	/** Returned by the time getters if the time is missing or could not be parsed. */
+	public static final long UnknownTime = -1;
+
 	protected static final Logger Log = Logger.getLoggerFor(StatusInfoWrapper.class);
 
-	public StatusInfoWrapper(String requestBody){
-		GenericJsonObject statusInfo = new Gson().fromJson(requestBody, GenericJsonObject.class);
-		this.statusInfo = statusInfo;
+	private String pipelineName;
+	private int pipelineCounter;
+	private String stageName;
+	private int stageCounter;
+	private String stageState;
+	private OctaneCIEventBuilder.PipelineStageState stageStatus;
+	private long stageCreateTime = UnknownTime;
+	private long stageLastTransitionTime = UnknownTime;
+	private List<Job> jobs;
+	private List<MaterialRevision> buildCause;
+
+	public StatusInfoWrapper(String requestBody) {
+		this(new StringReader(requestBody));
+	}
+
+	public StatusInfoWrapper(Reader requestBody) {
+		try (JsonReader reader = new JsonReader(requestBody)) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if ("pipeline".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+					readPipeline(reader);
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		} catch (IOException | IllegalStateException | NumberFormatException e) {
+			throw new JsonParseException("Could not decode stage-status notification", e);
+		}
+		if (stageState != null) {
+			try {
+				stageStatus = OctaneCIEventBuilder.PipelineStageState.valueOf(stageState);
+			} catch (IllegalArgumentException e) {
+				Log.warn("Unknown stage state '" + stageState + "' of pipeline '" + pipelineName + "'");
+			}
+		}
+	}
+
+	private void readPipeline(JsonReader reader) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+				case "name": pipelineName = nextString(reader); break;
+				case "counter": pipelineCounter = nextInt(reader); break;
+				case "build-cause":
+					if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+						buildCause = readBuildCause(reader);
+					} else {
+						reader.skipValue();
+					}
+					break;
+				case "stage":
+					if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+						readStage(reader);
+					} else {
+						reader.skipValue();
+					}
+					break;
+				default: reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	private void readStage(JsonReader reader) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+				case "name": stageName = nextString(reader); break;
+				case "counter": stageCounter = nextInt(reader); break;
+				case "state": stageState = nextString(reader); break;
+				case "create-time": stageCreateTime = toMillis(parseTime(nextString(reader))); break;
+				case "last-transition-time": stageLastTransitionTime = toMillis(parseTime(nextString(reader))); break;
+				case "jobs":
+					if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+						jobs = readJobs(reader);
+					} else {
+						reader.skipValue();
+					}
+					break;
+				default: reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	private static List<Job> readJobs(JsonReader reader) throws IOException {
+		final List<Job> jobs = new ArrayList<>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			final Job job = new Job();
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+					case "name": job.name = nextString(reader); break;
+					case "state": job.state = nextString(reader); break;
+					case "result": job.result = nextString(reader); break;
+					case "schedule-time": job.scheduleTime = toMillis(parseTime(nextString(reader))); break;
+					case "complete-time": job.completeTime = toMillis(parseTime(nextString(reader))); break;
+					default: reader.skipValue();
+				}
+			}
+			reader.endObject();
+			jobs.add(job);
+		}
+		reader.endArray();
+		return jobs;
+	}
+
+	private static List<MaterialRevision> readBuildCause(JsonReader reader) throws IOException {
+		final List<MaterialRevision> revisions = new ArrayList<>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			final MaterialRevision revision = new MaterialRevision();
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+					case "changed": revision.changed = reader.peek() == JsonToken.BOOLEAN ? reader.nextBoolean() : Boolean.parseBoolean(nextString(reader)); break;
+					case "material": readMaterial(reader, revision); break;
+					case "modifications": readModifications(reader, revision); break;
+					default: reader.skipValue();
+				}
+			}
+			reader.endObject();
+			revisions.add(revision);
+		}
+		reader.endArray();
+		return revisions;
+	}
+
+	private static void readMaterial(JsonReader reader, MaterialRevision revision) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+			if ("type".equals(name)) {
+				revision.type = nextString(reader);
+			} else if (name.endsWith("-configuration") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+				reader.beginObject(); // e.g. git-configuration or pipeline-configuration; only simple values are kept.
+				while (reader.hasNext()) {
+					final String key = reader.nextName();
+					final JsonToken token = reader.peek();
+					if (token == JsonToken.STRING || token == JsonToken.NUMBER || token == JsonToken.BOOLEAN) {
+						revision.configuration.put(key, token == JsonToken.BOOLEAN ? String.valueOf(reader.nextBoolean()) : reader.nextString());
+					} else {
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	private static void readModifications(JsonReader reader, MaterialRevision revision) throws IOException {
+		if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+			reader.skipValue();
+			return;
+		}
+		reader.beginArray();
+		while (reader.hasNext()) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if ("revision".equals(reader.nextName())) {
+					revision.revisions.add(nextString(reader));
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		}
+		reader.endArray();
+	}
+
+	private static String nextString(JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		return reader.nextString(); // numbers are returned as string as well.
+	}
+
+	private static int nextInt(JsonReader reader) throws IOException {
+		String value = nextString(reader);
+		return value == null || value.isEmpty() ? 0 : Integer.parseInt(value);
+	}
+
+	private static long toMillis(Date date) {
+		return date != null ? date.getTime() : UnknownTime;
 	}
 
 	public String getStageName(){
-		return String.valueOf(statusInfo.getValue("pipeline", "stage", "name"));
+		return stageName;
 	}
 
 	public String getPipelineName(){
-		return String.valueOf(statusInfo.getValue("pipeline", "name"));
+		return pipelineName;
 	}
 
+	/**
+	 * @return the state of the stage or null if GoCD sent an unknown state
+	 */
 	public OctaneCIEventBuilder.PipelineStageState getStageStatus(){
-		return OctaneCIEventBuilder.PipelineStageState.valueOf(String.valueOf(statusInfo.getValue("pipeline", "stage", "state")));
+		return stageStatus;
 	}
 
-	public String getPipelineCounter(){
-		return String.valueOf(statusInfo.getValue("pipeline", "counter"));
+	/**
+	 * @return the state of the stage as sent by GoCD
+	 */
+	public String getStageState(){
+		return stageState;
 	}
 
-	public Date getStageCreateTime(){
-		return parseTime(String.valueOf(statusInfo.getValue("pipeline", "stage", "create-time")));
+	public int getPipelineCounter(){
+		return pipelineCounter;
 	}
 
-	public Date getStageLastTransitionTime(){
-		return parseTime(String.valueOf(statusInfo.getValue("pipeline", "stage", "last-transition-time")));
+	public int getStageCounter(){
+		return stageCounter;
+	}
+
+	/**
+	 * @return the create time of the stage in epoch millis or {@link #UnknownTime}
+	 */
+	public long getStageCreateTime(){
+		return stageCreateTime;
+	}
+
+	/**
+	 * @return the last transition time of the stage in epoch millis or {@link #UnknownTime}
+	 */
+	public long getStageLastTransitionTime(){
+		return stageLastTransitionTime;
+	}
+
+	/**
+	 * @return whether the notification contained the jobs of the stage
+	 */
+	public boolean hasJobs() {
+		return jobs != null;
+	}
+
+	/**
+	 * @return the jobs of the stage; empty if the notification did not contain them
+	 */
+	public List<Job> getJobs() {
+		return jobs != null ? Collections.unmodifiableList(jobs) : Collections.<Job>emptyList();
+	}
+
+	/**
+	 * @return whether the notification contained the build cause of the pipeline
+	 */
+	public boolean hasBuildCause() {
+		return buildCause != null;
+	}
+
+	/**
+	 * @return the material revisions which caused the pipeline; empty if the notification did not contain them
+	 */
+	public List<MaterialRevision> getBuildCause() {
+		return buildCause != null ? Collections.unmodifiableList(buildCause) : Collections.<MaterialRevision>emptyList();
 	}
 
 	/**
@@ -87,4 +344,78 @@ public class StatusInfoWrapper {
 		}
 		return null; // giving up
 	}
+
+	/**
+	 * A job of the notified stage.
+	 */
+	public static class Job {
+
+		private String name;
+		private String state;
+		private String result;
+		private long scheduleTime = UnknownTime;
+		private long completeTime = UnknownTime;
+
+		public String getName() {
+			return name;
+		}
+
+		public String getState() {
+			return state;
+		}
+
+		public String getResult() {
+			return result;
+		}
+
+		/**
+		 * @return the schedule time in epoch millis or {@link #UnknownTime}
+		 */
+		public long getScheduleTime() {
+			return scheduleTime;
+		}
+
+		/**
+		 * @return the complete time in epoch millis or {@link #UnknownTime}
+		 */
+		public long getCompleteTime() {
+			return completeTime;
+		}
+	}
+
+	/**
+	 * A material revision of the pipeline's build cause.
+	 */
+	public static class MaterialRevision {
+
+		private String type;
+		private boolean changed;
+		private final Map<String, String> configuration = new HashMap<>();
+		private final List<String> revisions = new ArrayList<>();
+
+		/**
+		 * @return the type of the material, e.g. git or pipeline
+		 */
+		public String getType() {
+			return type;
+		}
+
+		public boolean isChanged() {
+			return changed;
+		}
+
+		/**
+		 * @return the simple values of the material's configuration, e.g. url and branch or pipeline-name and stage-name
+		 */
+		public Map<String, String> getConfiguration() {
+			return Collections.unmodifiableMap(configuration);
+		}
+
+		/**
+		 * @return the revisions of the modifications, newest first
+		 */
+		public List<String> getRevisions() {
+			return Collections.unmodifiableList(revisions);
+		}
+	}
 }
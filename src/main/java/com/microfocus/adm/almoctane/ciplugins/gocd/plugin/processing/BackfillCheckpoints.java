@@ -0,0 +1,178 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This store remembers how far the history backfill of every pipeline has progressed.
+ *
+ * A checkpoint is written after each reported run, so an interrupted backfill continues after
+ * the last reported run instead of starting over. The store is persisted as a JSON file, so it
+ * survives restarts.
+ */
+public class BackfillCheckpoints {
+
+	private static final Logger Log = Logger.getLoggerFor(BackfillCheckpoints.class);
+
+	private final File file;
+	private final Map<String, Checkpoint> checkpoints = new HashMap<>();
+
+	public BackfillCheckpoints(File file) {
+		this.file = file;
+		load();
+	}
+
+	/**
+	 * @return the checkpoint of the given pipeline or null if its backfill has never been started
+	 */
+	public synchronized Checkpoint get(String pipelineName) {
+		Checkpoint checkpoint = checkpoints.get(pipelineName);
+		return checkpoint != null ? checkpoint.copy() : null;
+	}
+
+	/**
+	 * @return the names of all pipelines whose backfill has been started but not finished
+	 */
+	public synchronized List<String> getUnfinished() {
+		List<String> unfinished = new ArrayList<>();
+		for (Map.Entry<String, Checkpoint> entry : checkpoints.entrySet()) {
+			if (!entry.getValue().finished) {
+				unfinished.add(entry.getKey());
+			}
+		}
+		return unfinished;
+	}
+
+	/**
+	 * Stores the given checkpoint of a pipeline and writes the store to disk.
+	 */
+	public void put(String pipelineName, Checkpoint checkpoint) {
+		final String json;
+		synchronized (this) {
+			checkpoints.put(pipelineName, checkpoint.copy());
+			json = new Gson().toJson(checkpoints);
+		}
+		try {
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (!parent.isDirectory() && !parent.mkdirs()) {
+				throw new IOException("Could not create directory '" + parent + "'");
+			}
+			File temp = new File(parent, file.getName() + ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+				writer.write(json);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Log.warn("Could not save backfill checkpoints to '" + file + "'", e);
+		}
+	}
+
+	private void load() {
+		if (!file.isFile()) {
+			return;
+		}
+		try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			Map<String, Checkpoint> loaded = new Gson().fromJson(reader, new TypeToken<Map<String, Checkpoint>>(){}.getType());
+			if (loaded != null) {
+				checkpoints.putAll(loaded);
+			}
+		} catch (IOException | JsonParseException e) {
+			Log.warn("Could not load backfill checkpoints from '" + file + "'", e);
+		}
+	}
+
+	/**
+	 * The progress of a single pipeline's backfill.
+	 */
+	public static class Checkpoint {
+
+		private int builds;
+		private int newestCounter;
+		private int lastReported;
+		private boolean finished;
+
+		/**
+		 * @param builds the number of builds to backfill
+		 */
+		public Checkpoint(int builds) {
+			this.builds = builds;
+		}
+
+		private Checkpoint copy() {
+			Checkpoint copy = new Checkpoint(builds);
+			copy.newestCounter = newestCounter;
+			copy.lastReported = lastReported;
+			copy.finished = finished;
+			return copy;
+		}
+
+		public int getBuilds() {
+			return builds;
+		}
+
+		/**
+		 * @return the counter of the newest run to backfill, so runs started later do not shift the backfilled
+		 * range; 0 if the range has not been determined yet
+		 */
+		public int getNewestCounter() {
+			return newestCounter;
+		}
+
+		public void setNewestCounter(int newestCounter) {
+			this.newestCounter = newestCounter;
+		}
+
+		/**
+		 * @return the counter of the last run which has been reported; 0 if none
+		 */
+		public int getLastReported() {
+			return lastReported;
+		}
+
+		public void setLastReported(int lastReported) {
+			this.lastReported = lastReported;
+		}
+
+		public boolean isFinished() {
+			return finished;
+		}
+
+		public void setFinished(boolean finished) {
+			this.finished = finished;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter.StatusInfoWrapper;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.TimeBucketedSet;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GoCD re-delivers stage-status notifications if the plugin responded slowly or with an error.
+ * This filter recognizes such repeated notifications, so they do not cause duplicate events
+ * and test pushes in Octane.
+ *
+ * A notification is identified by its pipeline, pipeline counter, stage, stage counter and state,
+ * and is considered a duplicate if an identical notification was seen within the window.
+ */
+public class DuplicateNotificationFilter {
+
+	private static final int Buckets = 10;
+	private static final int MaxRememberedNotifications = 100000;
+
+	private final long windowMillis;
+	private final TimeBucketedSet<String> seen;
+	private final AtomicLong suppressed = new AtomicLong();
+
+	public DuplicateNotificationFilter(long windowMillis) {
+		this.windowMillis = windowMillis;
+		this.seen = new TimeBucketedSet<>(windowMillis, Buckets, MaxRememberedNotifications);
+	}
+
+	/**
+	 * Remembers the given notification.
+	 *
+	 * @return true if an identical notification has already been seen within the window
+	 */
+	public boolean isDuplicate(StatusInfoWrapper statusInfo) {
+		final String key = statusInfo.getPipelineName() + "/" + statusInfo.getPipelineCounter()
+			+ "/" + statusInfo.getStageName() + "/" + statusInfo.getStageCounter()
+			+ "/" + statusInfo.getStageState();
+		if (seen.add(key)) {
+			return false;
+		}
+		suppressed.incrementAndGet();
+		return true;
+	}
+
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	public long getSuppressedCount() {
+		return suppressed.get();
+	}
+}
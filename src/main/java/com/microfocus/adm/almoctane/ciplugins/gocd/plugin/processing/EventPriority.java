@@ -0,0 +1,92 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineConfig;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoStageConfig;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter.OctaneCIEventBuilder;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter.PipelineDependencyGraph;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter.StatusInfoWrapper;
+
+import java.util.List;
+
+/**
+ * The priority classes of stage-status notifications, by the kind of event they cause; declared from
+ * the highest to the lowest priority.
+ */
+public enum EventPriority {
+
+	/**
+	 * The last stage has completed, or a stage has failed or was cancelled. This causes the pipeline end
+	 * event, the SCM event and the push of the test results. Never shed.
+	 */
+	PipelineEnd,
+
+	/**
+	 * The first stage has been started, which causes the pipeline start event. Never shed.
+	 */
+	PipelineStart,
+
+	/**
+	 * An intermediate stage has passed, which only causes its stage end event. Shed after the stage starts.
+	 */
+	StageEnd,
+
+	/**
+	 * A later stage has been started, which only causes its stage start event. Shed first.
+	 */
+	StageStart;
+
+	/**
+	 * @return whether notifications of this class may be shed while the queue is under pressure
+	 */
+	public boolean isSheddable() {
+		return this == StageEnd || this == StageStart;
+	}
+
+	/**
+	 * Classifies the given notification by the last known configuration of its pipeline, so no
+	 * request to GoCD is needed on the notification thread.
+	 */
+	public static EventPriority of(StatusInfoWrapper statusInfo) {
+		final GoPipelineConfig config = PipelineDependencyGraph.getInstance().getKnownConfig(statusInfo.getPipelineName());
+		return of(statusInfo, config != null ? config.getStages() : null);
+	}
+
+	/**
+	 * @param stages the stages of the pipeline; if unknown, the notification is never classified as sheddable
+	 */
+	static EventPriority of(StatusInfoWrapper statusInfo, List<GoStageConfig> stages) {
+		final OctaneCIEventBuilder.PipelineStageState state = statusInfo.getStageStatus();
+		if (state == null) { // unknown states are treated like the end of the pipeline.
+			return PipelineEnd;
+		}
+		final boolean known = stages != null && !stages.isEmpty();
+		switch (state) {
+			case Building:
+				return known && !stages.get(0).getName().equals(statusInfo.getStageName()) ? StageStart : PipelineStart;
+			case Passed:
+				return known && !stages.get(stages.size() - 1).getName().equals(statusInfo.getStageName()) ? StageEnd : PipelineEnd;
+			default:
+				return PipelineEnd;
+		}
+	}
+}
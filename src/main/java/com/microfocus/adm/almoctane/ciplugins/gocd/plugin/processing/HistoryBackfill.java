@@ -0,0 +1,211 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineHistory;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineInstance;
+import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoApiClient;
+import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoGetPipelineHistory;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.DaemonThreadFactory;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * This backfill reports the past runs of a pipeline to Octane, so a newly linked pipeline
+ * gets its build and test history.
+ *
+ * First the pipeline's history is read page by page, newest run first, until the requested number
+ * of runs is known. Then the finished runs are handed to the reporter one after the other, oldest
+ * first, so Octane receives them in the order they ran. After each run a checkpoint is written (see
+ * {@link BackfillCheckpoints}), so an interrupted backfill continues after the last reported run.
+ * Backfills of different pipelines run in parallel, but never more than the configured number.
+ */
+public class HistoryBackfill {
+
+	private static final Logger Log = Logger.getLoggerFor(HistoryBackfill.class);
+
+	public static final int PageSize = 50;
+	public static final int DefaultConcurrency = 4;
+
+	private final BiFunction<String, String, GoPipelineHistory> pages;
+	private final BackfillCheckpoints checkpoints;
+	private final Predicate<GoPipelineInstance> reporter;
+	private final Set<String> pending = ConcurrentHashMap.newKeySet();
+	private final ExecutorService coordinators;
+
+	/**
+	 * @param goApiClients creates a client for the GoCD API
+	 * @param checkpoints  the store of the backfill progress
+	 * @param concurrency  the maximum number of pipelines backfilled at the same time
+	 * @param reporter     reports a finished pipeline run including its test results; returns false if the
+	 *                     run could not be handed over, which stops the backfill until it is requested again
+	 */
+	public HistoryBackfill(Supplier<GoApiClient> goApiClients, BackfillCheckpoints checkpoints, int concurrency, Predicate<GoPipelineInstance> reporter) {
+		this((pipelineName, pageHref) -> new GoGetPipelineHistory(goApiClients.get()).getPage(pipelineName, PageSize, pageHref),
+			checkpoints, concurrency, reporter);
+	}
+
+	/**
+	 * @param pages retrieves the page of the given pipeline's history behind the given link; the first page for null
+	 */
+	HistoryBackfill(BiFunction<String, String, GoPipelineHistory> pages, BackfillCheckpoints checkpoints, int concurrency, Predicate<GoPipelineInstance> reporter) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be positive");
+		}
+		this.pages = pages;
+		this.checkpoints = checkpoints;
+		this.reporter = reporter;
+		this.coordinators = Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory("octane-backfill"));
+	}
+
+	/**
+	 * Schedules the backfill of the given pipeline, unless it has already been finished or is
+	 * already scheduled. An unfinished backfill continues after its last reported run.
+	 *
+	 * @param builds the number of most recent runs to backfill
+	 */
+	public void request(final String pipelineName, final int builds) {
+		if (builds <= 0) {
+			return;
+		}
+		final BackfillCheckpoints.Checkpoint checkpoint = checkpoints.get(pipelineName);
+		if ((checkpoint != null && checkpoint.isFinished()) || !pending.add(pipelineName)) {
+			return;
+		}
+		coordinators.execute(() -> {
+			try {
+				backfill(pipelineName, builds, pageHref -> pages.apply(pipelineName, pageHref));
+			} catch (RuntimeException e) {
+				Log.error("Backfill of pipeline '" + pipelineName + "' failed", e);
+			} finally {
+				pending.remove(pipelineName);
+			}
+		});
+	}
+
+	/**
+	 * Schedules the backfill of a newly discovered pipeline. Pipelines which already have a checkpoint
+	 * are left alone, so looking at a pipeline again does not restart its backfill; interrupted
+	 * backfills are continued by {@link #resumeUnfinished()}.
+	 *
+	 * @param builds the number of most recent runs to backfill
+	 */
+	public void requestIfUnknown(String pipelineName, int builds) {
+		if (checkpoints.get(pipelineName) == null) {
+			request(pipelineName, builds);
+		}
+	}
+
+	/**
+	 * Schedules all backfills which have been interrupted, e.g. by a restart of the server.
+	 */
+	public void resumeUnfinished() {
+		for (String pipelineName : checkpoints.getUnfinished()) {
+			request(pipelineName, checkpoints.get(pipelineName).getBuilds());
+		}
+	}
+
+	public void shutdown() {
+		coordinators.shutdownNow();
+	}
+
+	/**
+	 * Backfills the given pipeline, continuing after the last reported run of its checkpoint. If the
+	 * history cannot be retrieved or a run cannot be reported, the backfill stops and continues the
+	 * next time it is requested.
+	 *
+	 * @param pages retrieves the page of the history behind the given link; the first page for null
+	 */
+	void backfill(String pipelineName, int builds, Function<String, GoPipelineHistory> pages) {
+		BackfillCheckpoints.Checkpoint checkpoint = checkpoints.get(pipelineName);
+		if (checkpoint == null) {
+			checkpoint = new BackfillCheckpoints.Checkpoint(builds);
+			Log.info("Backfilling the last " + builds + " runs of pipeline '" + pipelineName + "'");
+		}
+		if (checkpoint.isFinished()) {
+			return;
+		}
+		final List<GoPipelineInstance> runs = readRuns(pipelineName, checkpoint, pages);
+		if (runs == null) {
+			return;
+		}
+		if (checkpoint.getNewestCounter() == 0 && !runs.isEmpty()) {
+			checkpoint.setNewestCounter(runs.get(0).getCounter());
+			checkpoints.put(pipelineName, checkpoint);
+		}
+		int reported = 0;
+		for (int i = runs.size() - 1; i >= 0; i--) { // oldest run first.
+			final GoPipelineInstance instance = runs.get(i);
+			if (instance.getCounter() <= checkpoint.getLastReported() || !ReconciliationSweeper.isFinished(instance)) {
+				continue; // runs still in progress are reported live.
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			if (!reporter.test(instance)) {
+				Log.warn("Could not backfill run " + instance.getCounter() + " of pipeline '" + pipelineName + "'. Backfill stopped after " + reported + " runs.");
+				return;
+			}
+			reported++;
+			checkpoint.setLastReported(instance.getCounter());
+			checkpoints.put(pipelineName, checkpoint);
+		}
+		checkpoint.setFinished(true);
+		checkpoints.put(pipelineName, checkpoint);
+		Log.info("Backfilled " + reported + " runs of pipeline '" + pipelineName + "'");
+	}
+
+	/**
+	 * Reads the runs to backfill: the requested number of runs up to the newest counter of the checkpoint.
+	 *
+	 * @return the runs, newest first; null if the history could not be retrieved
+	 */
+	private List<GoPipelineInstance> readRuns(String pipelineName, BackfillCheckpoints.Checkpoint checkpoint, Function<String, GoPipelineHistory> pages) {
+		final List<GoPipelineInstance> runs = new ArrayList<>();
+		String pageHref = null;
+		do {
+			final GoPipelineHistory page = pages.apply(pageHref);
+			if (page == null) {
+				Log.warn("Could not retrieve the history of pipeline '" + pipelineName + "'. Backfill stopped.");
+				return null;
+			}
+			final List<GoPipelineInstance> instances = page.getPipelines() != null ? page.getPipelines() : Collections.<GoPipelineInstance>emptyList();
+			for (GoPipelineInstance instance : instances) {
+				if (runs.size() < checkpoint.getBuilds() && (checkpoint.getNewestCounter() == 0 || instance.getCounter() <= checkpoint.getNewestCounter())) {
+					runs.add(instance);
+				}
+			}
+			pageHref = instances.isEmpty() ? null : page.getNextPageHref();
+		} while (runs.size() < checkpoint.getBuilds() && pageHref != null);
+		return runs;
+	}
+}
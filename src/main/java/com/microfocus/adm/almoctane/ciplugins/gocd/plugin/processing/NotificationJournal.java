@@ -0,0 +1,479 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.DaemonThreadFactory;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This journal makes received stage-status notifications survive a restart of GoCD or the plugin.
+ *
+ * Every notification is appended to an append-only segment file and synced to disk before it is
+ * acknowledged. As soon as the notification has been processed it is marked as done. When the
+ * journal is opened, all entries which have not been marked as done are recovered, so they can be
+ * processed again.
+ *
+ * Appending uses group commit: a single flusher thread syncs the segment file, and all appends which
+ * arrived while the previous sync was running are made durable by the next one. Done-markers are not
+ * synced at all; after a crash this might only cause an already processed notification to be replayed.
+ *
+ * Each record is a single line: "A &lt;id&gt; &lt;base64 body&gt;" for an appended notification and
+ * "D &lt;id&gt;" for a done-marker. Incomplete lines at the end of a segment are cut off when the journal
+ * is opened. A done-marker is always written into the segment of its entry, so a segment can be deleted
+ * as soon as all its entries have been marked done, without losing markers of other segments. Older
+ * segments with pending entries stay open for their markers; they are never rewritten. Ids keep growing
+ * across restarts, so a marker can never refer to a different entry.
+ *
+ * Pending entries are kept in memory as well. Entries which stay pending for long, e.g. because their
+ * events could not be delivered, can be taken again with {@link #takeStaleEntries(long)} while the
+ * journal is open. To bound the disk space and the number of open segments, {@link #giveUp(long, int)}
+ * marks entries as done which are too old or which keep too many older segments open.
+ */
+public class NotificationJournal {
+
+	private static final Logger Log = Logger.getLoggerFor(NotificationJournal.class);
+
+	private static final Pattern SegmentName = Pattern.compile("journal-(\\d+)\\.log");
+	public static final long DefaultMaxSegmentSize = 16 * 1024 * 1024;
+
+	private final File directory;
+	private final long maxSegmentSize;
+	private final Object lock = new Object();
+	private final List<Entry> recoveredEntries = new ArrayList<>();
+
+	private long segmentNumber;
+	private FileChannel channel;
+	private long segmentSize;
+	private long writtenPosition;
+	private long syncedPosition;
+	private IOException syncFailure;
+	private long nextId = 1;
+	private boolean closed;
+
+	/** The entries which are not yet done, in the order they were appended. */
+	private final Map<Long, Entry> pendingEntries = new LinkedHashMap<>();
+	/** The older segments which still have pending entries, open for writing done-markers. */
+	private final Map<Long, FileChannel> olderSegments = new HashMap<>();
+	/** The number of entries which are not yet done per segment. */
+	private final Map<Long, Integer> pendingEntriesOfSegment = new HashMap<>();
+
+	public NotificationJournal(File directory) throws IOException {
+		this(directory, DefaultMaxSegmentSize);
+	}
+
+	public NotificationJournal(File directory, long maxSegmentSize) throws IOException {
+		this.directory = directory;
+		this.maxSegmentSize = maxSegmentSize;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create journal directory '" + directory + "'");
+		}
+		recover();
+		new DaemonThreadFactory("octane-journal").newThread(this::flushLoop).start();
+	}
+
+	/**
+	 * @return the entries which were not done when this journal was opened; in the order they were appended.
+	 */
+	public List<Entry> getRecoveredEntries() {
+		return recoveredEntries;
+	}
+
+	/**
+	 * Appends the given notification and waits until it has been synced to disk.
+	 *
+	 * @param body the raw body of the notification
+	 * @return the id of the entry, which has to be passed to {@link #markDone(long)}
+	 * @throws IOException if the entry could not be written or synced
+	 */
+	public long append(String body) throws IOException {
+		synchronized (lock) {
+			final long id = writeEntry(body);
+			final long position = writtenPosition;
+			lock.notifyAll(); // wake up the flusher.
+			try {
+				while (syncedPosition < position && syncFailure == null && !closed) {
+					lock.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting for the journal to be synced");
+			}
+			if (syncFailure != null) {
+				throw syncFailure;
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Marks the given entry as done, so it will not be recovered anymore.
+	 */
+	public void markDone(long id) {
+		synchronized (lock) {
+			final Entry entry = pendingEntries.remove(id);
+			if (entry == null || closed) {
+				return;
+			}
+			final long segment = entry.segment;
+			if (pendingEntriesOfSegment.merge(segment, -1, Integer::sum) <= 0) {
+				pendingEntriesOfSegment.remove(segment);
+				if (segment != segmentNumber) { // the whole segment is done, so no marker is needed.
+					closeQuietly(olderSegments.remove(segment));
+					deleteSegment(segment);
+					return;
+				}
+			}
+			try {
+				final byte[] marker = ("D " + id + "\n").getBytes(StandardCharsets.UTF_8);
+				if (segment == segmentNumber) {
+					write(marker);
+				} else {
+					writeFully(olderSegments.get(segment), marker);
+				}
+			} catch (IOException e) {
+				Log.warn("Could not mark journal entry " + id + " as done", e);
+			}
+		}
+	}
+
+	public int getPendingCount() {
+		synchronized (lock) {
+			return pendingEntries.size();
+		}
+	}
+
+	/**
+	 * Returns the pending entries which were appended, recovered or last taken by this method at least
+	 * the given time ago. The returned entries are only returned again after that time has passed once more.
+	 *
+	 * @return the stale entries in the order they were appended
+	 */
+	public List<Entry> takeStaleEntries(long olderThanMillis) {
+		final List<Entry> stale = new ArrayList<>();
+		synchronized (lock) {
+			final long now = System.currentTimeMillis();
+			for (Entry entry : pendingEntries.values()) {
+				if (now - entry.takenAt >= olderThanMillis) {
+					entry.takenAt = now;
+					stale.add(entry);
+				}
+			}
+		}
+		return stale;
+	}
+
+	/**
+	 * Marks the pending entries as done which were appended or recovered at least the given time ago,
+	 * as well as all entries of the oldest segments beyond the given number of older segments kept open.
+	 *
+	 * @return the number of entries given up
+	 */
+	public int giveUp(long maxAgeMillis, int maxOlderSegments) {
+		final List<Long> expired = new ArrayList<>();
+		synchronized (lock) {
+			final long now = System.currentTimeMillis();
+			final Set<Long> excessSegments = new HashSet<>();
+			for (Long segment : new TreeSet<>(olderSegments.keySet())) {
+				if (olderSegments.size() - excessSegments.size() <= maxOlderSegments) {
+					break;
+				}
+				excessSegments.add(segment);
+			}
+			for (Entry entry : pendingEntries.values()) {
+				if (now - entry.appendedAt >= maxAgeMillis || excessSegments.contains(entry.segment)) {
+					expired.add(entry.getId());
+				}
+			}
+			for (long id : expired) {
+				markDone(id);
+			}
+		}
+		if (!expired.isEmpty()) {
+			Log.warn("Gave up " + expired.size() + " journaled notifications which could not be processed");
+		}
+		return expired.size();
+	}
+
+	public void close() {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				channel.force(false);
+				channel.close();
+			} catch (IOException e) {
+				Log.warn("Could not close journal", e);
+			}
+			for (FileChannel older : olderSegments.values()) {
+				closeQuietly(older);
+			}
+			olderSegments.clear();
+			lock.notifyAll();
+		}
+	}
+
+	/** Must be called while holding the lock. */
+	private long writeEntry(String body) throws IOException {
+		if (closed) {
+			throw new IOException("journal is closed");
+		}
+		final byte[] record = ("A " + nextId + " " + Base64.getEncoder().encodeToString(body.getBytes(StandardCharsets.UTF_8)) + "\n").getBytes(StandardCharsets.UTF_8);
+		if (segmentSize > 0 && segmentSize + record.length > maxSegmentSize) { // only entries rotate, markers stay with their entries.
+			rotate();
+		}
+		write(record);
+		final long id = nextId++;
+		pendingEntries.put(id, new Entry(id, body, segmentNumber));
+		pendingEntriesOfSegment.merge(segmentNumber, 1, Integer::sum);
+		return id;
+	}
+
+	/** Writes the given record into the current segment; must be called while holding the lock. */
+	private void write(byte[] record) throws IOException {
+		writeFully(channel, record);
+		segmentSize += record.length;
+		writtenPosition += record.length;
+	}
+
+	private static void writeFully(FileChannel target, byte[] record) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		while (buffer.hasRemaining()) {
+			target.write(buffer);
+		}
+	}
+
+	/** Must be called while holding the lock. */
+	private void rotate() throws IOException {
+		channel.force(false);
+		syncedPosition = writtenPosition; // everything written so far is durable now.
+		lock.notifyAll();
+		if (pendingEntriesOfSegment.containsKey(segmentNumber)) {
+			olderSegments.put(segmentNumber, channel); // kept open for the markers of its entries.
+		} else {
+			channel.close();
+			deleteSegment(segmentNumber);
+		}
+		openSegment(segmentNumber + 1);
+	}
+
+	private void openSegment(long number) throws IOException {
+		segmentNumber = number;
+		segmentSize = 0;
+		channel = FileChannel.open(segmentFile(number).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	private static void closeQuietly(FileChannel segment) {
+		if (segment != null) {
+			try {
+				segment.close();
+			} catch (IOException e) {
+				Log.warn("Could not close journal segment", e);
+			}
+		}
+	}
+
+	private File segmentFile(long number) {
+		return new File(directory, "journal-" + number + ".log");
+	}
+
+	private void deleteSegment(long number) {
+		File file = segmentFile(number);
+		if (file.exists() && !file.delete()) {
+			Log.warn("Could not delete journal segment '" + file + "'");
+		}
+	}
+
+	private void flushLoop() {
+		while (true) {
+			final long target;
+			final FileChannel current;
+			synchronized (lock) {
+				try {
+					while (syncedPosition >= writtenPosition && !closed) {
+						lock.wait();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (closed) {
+					return;
+				}
+				target = writtenPosition;
+				current = channel;
+			}
+			try { // sync outside of the lock, so appends can go on and join the next group.
+				current.force(false);
+			} catch (ClosedChannelException e) {
+				continue; // the segment was rotated or closed, which synced it anyway.
+			} catch (IOException e) {
+				Log.error("Could not sync journal", e);
+				synchronized (lock) {
+					syncFailure = e;
+					lock.notifyAll();
+				}
+				return;
+			}
+			synchronized (lock) {
+				syncedPosition = Math.max(syncedPosition, target);
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Reads all existing segments and collects the entries which are not yet done. Segments without
+	 * pending entries are deleted; the others are kept in place, so a crash during recovery can neither
+	 * lose nor duplicate entries. New entries go into a fresh segment and continue after the largest id seen.
+	 */
+	private void recover() throws IOException {
+		final TreeMap<Long, File> segments = new TreeMap<>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				Matcher matcher = SegmentName.matcher(file.getName());
+				if (matcher.matches()) {
+					segments.put(Long.valueOf(matcher.group(1)), file);
+				}
+			}
+		}
+
+		final Map<Long, Entry> pending = new LinkedHashMap<>();
+		long maxId = 0;
+		for (Map.Entry<Long, File> segment : segments.entrySet()) {
+			cutIncompleteRecord(segment.getValue());
+			try (BufferedReader reader = Files.newBufferedReader(segment.getValue().toPath(), StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] record = line.split(" ");
+					try {
+						if (record.length == 3 && "A".equals(record[0])) {
+							final long id = Long.parseLong(record[1]);
+							pending.put(id, new Entry(id, new String(Base64.getDecoder().decode(record[2]), StandardCharsets.UTF_8), segment.getKey()));
+							maxId = Math.max(maxId, id);
+						} else if (record.length == 2 && "D".equals(record[0])) {
+							final long id = Long.parseLong(record[1]);
+							pending.remove(id); // markers of older journals might be in a later segment than their entry.
+							maxId = Math.max(maxId, id);
+						}
+					} catch (IllegalArgumentException e) { // includes NumberFormatException
+						Log.warn("Skipping corrupt record in journal segment '" + segment.getValue() + "'");
+					}
+				}
+			}
+		}
+
+		synchronized (lock) {
+			for (Entry entry : pending.values()) {
+				pendingEntries.put(entry.getId(), entry);
+				pendingEntriesOfSegment.merge(entry.segment, 1, Integer::sum);
+				recoveredEntries.add(entry);
+			}
+			for (Map.Entry<Long, File> segment : segments.entrySet()) {
+				if (pendingEntriesOfSegment.containsKey(segment.getKey())) {
+					olderSegments.put(segment.getKey(), FileChannel.open(segment.getValue().toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+				} else if (!segment.getValue().delete()) {
+					Log.warn("Could not delete journal segment '" + segment.getValue() + "'");
+				}
+			}
+			nextId = maxId + 1;
+			openSegment(segments.isEmpty() ? 1 : segments.lastKey() + 1);
+		}
+		if (!recoveredEntries.isEmpty()) {
+			Log.info("Recovered " + recoveredEntries.size() + " unfinished notifications from the journal");
+		}
+	}
+
+	/**
+	 * Cuts off the incomplete record a crash might have left at the end of the given segment, so
+	 * done-markers appended later start on a line of their own.
+	 */
+	private static void cutIncompleteRecord(File segment) throws IOException {
+		try (FileChannel file = FileChannel.open(segment.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			final ByteBuffer last = ByteBuffer.allocate(1);
+			long end = file.size();
+			while (end > 0) {
+				last.clear();
+				file.read(last, end - 1);
+				if (last.get(0) == '\n') {
+					break;
+				}
+				end--;
+			}
+			if (end < file.size()) {
+				Log.warn("Cutting off incomplete record at the end of journal segment '" + segment + "'");
+				file.truncate(end);
+			}
+		}
+	}
+
+	/**
+	 * A journaled notification.
+	 */
+	public static class Entry {
+
+		private final long id;
+		private final String body;
+		private final long segment;
+		private final long appendedAt = System.currentTimeMillis();
+		/** Guarded by the lock of the journal. */
+		private long takenAt = appendedAt;
+
+		Entry(long id, String body, long segment) {
+			this.id = id;
+			this.body = body;
+			this.segment = segment;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public String getBody() {
+			return body;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * This store keeps track of which pipeline runs have been completely reported to Octane.
+ *
+ * For every pipeline it holds a cursor (all runs up to this counter are done) and the counters
+ * above the cursor whose end has been published already. Whenever the run following the cursor
+ * is done, the cursor advances. The store is persisted as a JSON file, so it survives restarts.
+ */
+public class ReconciliationCursors {
+
+	private static final Logger Log = Logger.getLoggerFor(ReconciliationCursors.class);
+
+	private final File file;
+	private final Map<String, Cursor> cursors = new HashMap<>();
+	private boolean dirty;
+
+	public ReconciliationCursors(File file) {
+		this.file = file;
+		load();
+	}
+
+	/**
+	 * @return whether the cursor of the given pipeline has been positioned; counters start at 1
+	 */
+	public synchronized boolean isInitialized(String pipelineName) {
+		return getCursor(pipelineName) > 0;
+	}
+
+	/**
+	 * @return the counter up to which all runs of the given pipeline are done; 0 if unknown
+	 */
+	public synchronized int getCursor(String pipelineName) {
+		Cursor cursor = cursors.get(pipelineName);
+		return cursor != null ? cursor.position : 0;
+	}
+
+	/**
+	 * Moves the cursor of the given pipeline to the given counter, unless it is already beyond.
+	 */
+	public synchronized void moveTo(String pipelineName, int counter) {
+		Cursor cursor = cursors.computeIfAbsent(pipelineName, name -> new Cursor());
+		if (counter > cursor.position) {
+			cursor.position = counter;
+			cursor.done.headSet(counter, true).clear();
+			cursor.advance();
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Records that the end of the given run has been published.
+	 */
+	public synchronized void markDone(String pipelineName, int counter) {
+		Cursor cursor = cursors.computeIfAbsent(pipelineName, name -> new Cursor()); // positioned by the first sweep.
+		if (counter > cursor.position && cursor.done.add(counter)) {
+			cursor.advance();
+			dirty = true;
+		}
+	}
+
+	/**
+	 * @return whether the end of the given run has been published
+	 */
+	public synchronized boolean isDone(String pipelineName, int counter) {
+		Cursor cursor = cursors.get(pipelineName);
+		return cursor != null && (counter <= cursor.position || cursor.done.contains(counter));
+	}
+
+	/**
+	 * Writes the store to disk, if anything has changed since the last save.
+	 */
+	public void save() {
+		final String json;
+		synchronized (this) {
+			if (!dirty) {
+				return;
+			}
+			json = new Gson().toJson(cursors);
+			dirty = false;
+		}
+		try {
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (!parent.isDirectory() && !parent.mkdirs()) {
+				throw new IOException("Could not create directory '" + parent + "'");
+			}
+			File temp = new File(parent, file.getName() + ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+				writer.write(json);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Log.warn("Could not save reconciliation cursors to '" + file + "'", e);
+			synchronized (this) {
+				dirty = true;
+			}
+		}
+	}
+
+	private void load() {
+		if (!file.isFile()) {
+			return;
+		}
+		try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			Map<String, Cursor> loaded = new Gson().fromJson(reader, new TypeToken<Map<String, Cursor>>(){}.getType());
+			if (loaded != null) {
+				cursors.putAll(loaded);
+			}
+		} catch (IOException | JsonParseException e) {
+			Log.warn("Could not load reconciliation cursors from '" + file + "'", e);
+		}
+	}
+
+	private static class Cursor {
+
+		private int position;
+		private TreeSet<Integer> done = new TreeSet<>();
+
+		private void advance() {
+			while (done.remove(position + 1)) {
+				position++;
+			}
+		}
+	}
+}
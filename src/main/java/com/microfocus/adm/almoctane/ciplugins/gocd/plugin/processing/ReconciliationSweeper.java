@@ -0,0 +1,272 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoJobInstance;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipeline;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineGroup;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineHistory;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineInstance;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoStageInstance;
+import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoApiClient;
+import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoGetPipelineGroups;
+import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoGetPipelineHistory;
+import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoGetStageInstance;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.DaemonThreadFactory;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.RateLimiter;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * This sweeper finds pipeline runs whose end has never been reported to Octane, e.g. because
+ * notifications were lost during a plugin upgrade, and reports them afterwards.
+ *
+ * Periodically the history of every tracked pipeline is read, page by page from the newest run
+ * back to the pipeline's cursor (see {@link ReconciliationCursors}). All finished runs beyond the
+ * cursor whose end has not been published are handed to the given reporter, oldest first. A run
+ * is only marked done once its end has been delivered; if the reporter can not hand it over, the
+ * pipeline is retried by the next sweep. On the very first sweep of a pipeline the cursor is just
+ * positioned at its latest finished run, so older history is not reported.
+ *
+ * The sweeper never competes with live traffic: it sends at most one request per
+ * {@link #RequestIntervalMillis} and waits as long as live notifications are queued.
+ */
+public class ReconciliationSweeper {
+
+	private static final Logger Log = Logger.getLoggerFor(ReconciliationSweeper.class);
+
+	public static final long SweepIntervalMillis = 10 * 60 * 1000;
+	public static final long RequestIntervalMillis = 1000;
+	/** Runs which finished more recently might still have their notification queued. */
+	public static final long GraceMillis = 15 * 60 * 1000;
+	public static final int PageSize = 50;
+	/** The history is read back at most this many pages; older runs are given up. */
+	public static final int MaxPages = 20;
+
+	private final Supplier<GoApiClient> goApiClients;
+	private final Predicate<String> trackedPipelines;
+	private final ReconciliationCursors cursors;
+	private final BooleanSupplier busy;
+	private final BiPredicate<GoPipelineInstance, Runnable> reporter;
+	private final Function<GoPipelineInstance, Long> completionTimes;
+	private final RateLimiter rateLimiter = new RateLimiter(RequestIntervalMillis);
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("octane-reconciliation"));
+
+	/**
+	 * @param goApiClients     creates a client for the GoCD API
+	 * @param trackedPipelines decides which pipelines are reconciled
+	 * @param cursors          the store of reconciled runs
+	 * @param busy             whether live notifications are waiting to be processed
+	 * @param reporter         reports the end of a missed pipeline run and runs the given callback once it has been
+	 *                         delivered; returns false if the run could not be handed over
+	 */
+	public ReconciliationSweeper(Supplier<GoApiClient> goApiClients, Predicate<String> trackedPipelines, ReconciliationCursors cursors,
+	                             BooleanSupplier busy, BiPredicate<GoPipelineInstance, Runnable> reporter) {
+		this.goApiClients = goApiClients;
+		this.trackedPipelines = trackedPipelines;
+		this.cursors = cursors;
+		this.busy = busy;
+		this.reporter = reporter;
+		this.completionTimes = this::requestCompletionTime;
+	}
+
+	public void start() {
+		scheduler.scheduleWithFixedDelay(this::sweep, SweepIntervalMillis, SweepIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * Reconciles all tracked pipelines once.
+	 */
+	public void sweep() {
+		try {
+			final GoApiClient goApiClient = goApiClients.get();
+			awaitPermit();
+			for (GoPipelineGroup group : new GoGetPipelineGroups(goApiClient).get()) {
+				for (GoPipeline pipeline : group.getPipelines()) {
+					if (trackedPipelines.test(pipeline.getName())) {
+						reconcile(pipeline.getName(), readHistory(goApiClient, pipeline.getName()), System.currentTimeMillis());
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) { // keep the sweeper scheduled.
+			Log.error("Reconciliation sweep failed", e);
+		} finally {
+			cursors.save();
+		}
+	}
+
+	/**
+	 * Reads the history of the given pipeline back to its cursor; only the first page if the cursor is not yet positioned.
+	 *
+	 * @return the pipeline's history, newest run first
+	 */
+	private List<GoPipelineInstance> readHistory(GoApiClient goApiClient, String pipelineName) throws InterruptedException {
+		final List<GoPipelineInstance> history = new ArrayList<>();
+		final int cursor = cursors.getCursor(pipelineName);
+		String pageHref = null;
+		for (int page = 0; page < MaxPages; page++) {
+			awaitPermit();
+			final GoPipelineHistory historyPage = new GoGetPipelineHistory(goApiClient).getPage(pipelineName, PageSize, pageHref);
+			if (historyPage == null || historyPage.getPipelines() == null || historyPage.getPipelines().isEmpty()) {
+				break;
+			}
+			history.addAll(historyPage.getPipelines());
+			pageHref = historyPage.getNextPageHref();
+			if (!cursors.isInitialized(pipelineName) || pageHref == null || history.get(history.size() - 1).getCounter() <= cursor + 1) {
+				break;
+			}
+		}
+		return history;
+	}
+
+	/**
+	 * Reports the missed runs in the given history of a pipeline.
+	 *
+	 * @param history the pipeline's history, newest run first
+	 */
+	void reconcile(String pipelineName, List<GoPipelineInstance> history, long now) {
+		if (history == null || history.isEmpty()) {
+			return;
+		}
+		if (!cursors.isInitialized(pipelineName)) {
+			for (GoPipelineInstance instance : history) {
+				if (isSettled(instance, now)) {
+					cursors.moveTo(pipelineName, instance.getCounter());
+					break;
+				}
+			}
+			return;
+		}
+		final int oldestCounter = history.get(history.size() - 1).getCounter();
+		if (oldestCounter - 1 > cursors.getCursor(pipelineName)) {
+			Log.warn("Runs " + (cursors.getCursor(pipelineName) + 1) + " to " + (oldestCounter - 1) + " of pipeline '" + pipelineName + "' are too old to be reconciled");
+			cursors.moveTo(pipelineName, oldestCounter - 1);
+		}
+		for (int i = history.size() - 1; i >= 0; i--) { // oldest run first.
+			final GoPipelineInstance instance = history.get(i);
+			if (cursors.isDone(pipelineName, instance.getCounter()) || !isSettled(instance, now)) {
+				continue;
+			}
+			Log.info("Reporting missed end of run " + instance.getCounter() + " of pipeline '" + pipelineName + "'");
+			final int counter = instance.getCounter();
+			if (!reporter.test(instance, () -> cursors.markDone(pipelineName, counter))) {
+				Log.info("Could not report missed runs of pipeline '" + pipelineName + "', retrying with the next sweep");
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return whether the given run is finished and completed longer than {@link #GraceMillis} ago
+	 */
+	private boolean isSettled(GoPipelineInstance instance, long now) {
+		if (!isFinished(instance)) {
+			return false;
+		}
+		Long completed = getCompletionTime(instance);
+		if (completed == null) { // the history does not contain the job transitions.
+			completed = completionTimes.apply(instance);
+		}
+		return completed != null && now - completed >= GraceMillis;
+	}
+
+	/**
+	 * A run is finished if any of its stages failed or was cancelled, or if its last stage passed.
+	 */
+	static boolean isFinished(GoPipelineInstance instance) {
+		final List<GoStageInstance> stages = instance.getStages();
+		if (stages == null || stages.isEmpty()) {
+			return false;
+		}
+		boolean finished = "Passed".equals(stages.get(stages.size() - 1).getResult());
+		for (GoStageInstance stage : stages) {
+			finished |= "Failed".equals(stage.getResult()) || "Cancelled".equals(stage.getResult());
+		}
+		return finished;
+	}
+
+	/**
+	 * @return the time of the last job transition of the given run; null if its jobs carry no transitions
+	 */
+	static Long getCompletionTime(GoPipelineInstance instance) {
+		Long completed = null;
+		for (GoStageInstance stage : instance.getStages()) {
+			if (stage.getJobs() != null) {
+				for (GoJobInstance job : stage.getJobs()) {
+					final Long transition = job.getLastJobTransitionDate();
+					if (transition != null && (completed == null || transition > completed)) {
+						completed = transition;
+					}
+				}
+			}
+		}
+		return completed;
+	}
+
+	/**
+	 * Requests the stage which ended the given run, since only the stage instance contains the job transitions.
+	 *
+	 * @return the time of its last job transition; null if unknown
+	 */
+	private Long requestCompletionTime(GoPipelineInstance instance) {
+		GoStageInstance lastStage = null;
+		for (GoStageInstance stage : instance.getStages()) {
+			if (stage.getResult() != null && !"Unknown".equals(stage.getResult())) {
+				lastStage = stage;
+			}
+		}
+		if (lastStage == null) {
+			return null;
+		}
+		try {
+			awaitPermit();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		final GoStageInstance detailed = new GoGetStageInstance(goApiClients.get())
+			.get(instance.getName(), instance.getCounter(), lastStage.getName(), lastStage.getCounter() != null ? Integer.parseInt(lastStage.getCounter()) : 1);
+		return detailed != null ? detailed.getLastJobTransitionDate() : null;
+	}
+
+	private void awaitPermit() throws InterruptedException {
+		rateLimiter.acquire();
+		while (busy.getAsBoolean()) {
+			Thread.sleep(RequestIntervalMillis);
+		}
+	}
+}
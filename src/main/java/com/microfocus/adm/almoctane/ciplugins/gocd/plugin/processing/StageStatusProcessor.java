@@ -0,0 +1,251 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter.StatusInfoWrapper;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.StripedExecutor;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * This processor decouples the handling of stage-status notifications from the GoCD notification thread.
+ *
+ * GoCD delivers notifications from a small thread pool and waits for the plugin's response. Therefore
+ * notifications are put into a bounded in-memory queue and acknowledged immediately. A pool of worker
+ * threads takes them from the queue and hands them to the given handler. If the queue is full, the
+ * notification is dropped and counted.
+ *
+ * Notifications of the same pipeline are processed strictly in arrival order (e.g. the pipeline start
+ * event is always sent before its stage and end events), while different pipelines are processed in parallel.
+ *
+ * Notifications are classified by {@link EventPriority}, i.e. by the kind of event they cause. Pipelines
+ * whose next notification has a higher class are processed first. When the queue fills up beyond the
+ * shedding threshold, starts of later stages are shed; beyond the middle between the threshold and the
+ * capacity, ends of intermediate stages are shed as well. Pipeline starts and ends are never shed, so
+ * the remaining capacity is kept for them. Shedding a notification is intended, so shed notifications are
+ * completed right away, as are stage-level notifications dropped because the queue is full. Only dropped
+ * pipeline starts and ends are not completed.
+ */
+public class StageStatusProcessor {
+
+	private static final Logger Log = Logger.getLoggerFor(StageStatusProcessor.class);
+
+	private final StripedExecutor executor;
+	private volatile int sheddingThreshold;
+	private final BiConsumer<StatusInfoWrapper, Runnable> handler;
+
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong processed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong totalWaitMillis = new AtomicLong();
+	private final AtomicLong maxWaitMillis = new AtomicLong();
+	private final Map<EventPriority, AtomicLong> shed = new EnumMap<>(EventPriority.class);
+
+	public StageStatusProcessor(int workers, int queueSize, Consumer<StatusInfoWrapper> handler) {
+		this(workers, queueSize, queueSize, handler);
+	}
+
+	/**
+	 * @param workers           the number of worker threads
+	 * @param queueSize         the maximum number of waiting notifications
+	 * @param sheddingThreshold the number of waiting notifications from which on stage-level notifications are shed
+	 * @param handler           processes a single notification; the notification is completed as soon as it returns
+	 */
+	public StageStatusProcessor(int workers, int queueSize, int sheddingThreshold, Consumer<StatusInfoWrapper> handler) {
+		this(workers, queueSize, sheddingThreshold, (statusInfo, onCompletion) -> {
+			handler.accept(statusInfo);
+			onCompletion.run();
+		});
+	}
+
+	/**
+	 * @param workers           the number of worker threads
+	 * @param queueSize         the maximum number of waiting notifications
+	 * @param sheddingThreshold the number of waiting notifications from which on stage-level notifications are shed
+	 * @param handler           processes a single notification and runs the given callback once the notification
+	 *                          is completed, e.g. after its events have been delivered; possibly on another thread
+	 */
+	public StageStatusProcessor(int workers, int queueSize, int sheddingThreshold, BiConsumer<StatusInfoWrapper, Runnable> handler) {
+		if (workers < 1 || queueSize < 1 || sheddingThreshold < 1) {
+			throw new IllegalArgumentException("workers, queueSize and sheddingThreshold must be positive");
+		}
+		for (EventPriority priority : EventPriority.values()) {
+			shed.put(priority, new AtomicLong());
+		}
+		this.sheddingThreshold = sheddingThreshold;
+		this.handler = handler;
+		this.executor = new StripedExecutor(workers, queueSize, "octane-stage-status");
+	}
+
+	/**
+	 * Applies new settings without replacing the worker pool, so the notifications of a pipeline
+	 * are never processed by two pools at the same time. Queued notifications are kept.
+	 *
+	 * @param workers           the number of worker threads
+	 * @param queueSize         the maximum number of waiting notifications
+	 * @param sheddingThreshold the number of waiting notifications from which on stage-level notifications are shed
+	 */
+	public void reconfigure(int workers, int queueSize, int sheddingThreshold) {
+		if (sheddingThreshold < 1) {
+			throw new IllegalArgumentException("sheddingThreshold must be positive");
+		}
+		executor.resize(workers, queueSize);
+		this.sheddingThreshold = sheddingThreshold;
+	}
+
+	/**
+	 * Enqueues the given notification for asynchronous processing.
+	 *
+	 * @param statusInfo the notification
+	 * @return true if the notification was queued, false if it was dropped because the queue is full
+	 */
+	public boolean submit(final StatusInfoWrapper statusInfo) {
+		return submit(statusInfo, null);
+	}
+
+	/**
+	 * Enqueues the given notification for asynchronous processing.
+	 *
+	 * @param statusInfo   the notification
+	 * @param onCompletion run once the handler has completed the notification; may be null
+	 * @return true if the notification was queued, false if it was dropped because the queue is full
+	 * or because it was shed; onCompletion is run right away for stage-level notifications then
+	 */
+	public boolean submit(final StatusInfoWrapper statusInfo, final Runnable onCompletion) {
+		final long enqueuedAt = System.currentTimeMillis();
+		final EventPriority priority = EventPriority.of(statusInfo);
+		if (isShed(priority)) {
+			long shedCount = shed.get(priority).incrementAndGet();
+			dropped.incrementAndGet();
+			if (shedCount == 1 || shedCount % 100 == 0) { // avoid flooding the log while under pressure.
+				Log.warn("Event queue is under pressure, shedding " + priority + " status of pipeline '" + statusInfo.getPipelineName() + "' (" + shedCount + " shed so far). " + getStatistics());
+			}
+			complete(onCompletion);
+			return false;
+		}
+		try {
+			executor.execute(statusInfo.getPipelineName(), priority.ordinal(), () -> process(statusInfo, enqueuedAt, onCompletion));
+			accepted.incrementAndGet();
+			return true;
+		} catch (RejectedExecutionException e) {
+			shed.get(priority).incrementAndGet();
+			long droppedCount = dropped.incrementAndGet();
+			Log.warn("Event queue is full, dropping status of pipeline '" + statusInfo.getPipelineName() + "' (" + droppedCount + " dropped so far). " + getStatistics());
+			if (priority.isSheddable()) { // would have been shed anyway, so it must not be replayed later.
+				complete(onCompletion);
+			}
+			return false;
+		}
+	}
+
+	private static void complete(Runnable onCompletion) {
+		if (onCompletion != null) {
+			onCompletion.run();
+		}
+	}
+
+	private boolean isShed(EventPriority priority) {
+		if (!priority.isSheddable()) {
+			return false;
+		}
+		final int queued = executor.getQueuedCount();
+		if (priority == EventPriority.StageStart) {
+			return queued >= sheddingThreshold;
+		}
+		final int threshold = sheddingThreshold;
+		return queued >= threshold + Math.max(0, executor.getCapacity() - threshold) / 2;
+	}
+
+	private void process(StatusInfoWrapper statusInfo, long enqueuedAt, Runnable onCompletion) {
+		final long waitMillis = System.currentTimeMillis() - enqueuedAt;
+		totalWaitMillis.addAndGet(waitMillis);
+		maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+		try {
+			handler.accept(statusInfo, onCompletion != null ? onCompletion : () -> { });
+		} catch (RuntimeException e) {
+			failed.incrementAndGet();
+			Log.error("Could not process status of pipeline '" + statusInfo.getPipelineName() + "'", e);
+		} finally {
+			processed.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Stops accepting new notifications. Already queued notifications are still processed.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	public int getQueueDepth() {
+		return executor.getQueuedCount();
+	}
+
+	public long getAcceptedCount() {
+		return accepted.get();
+	}
+
+	public long getProcessedCount() {
+		return processed.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return the number of notifications of the given class which were shed or dropped
+	 */
+	public long getShedCount(EventPriority priority) {
+		return shed.get(priority).get();
+	}
+
+	/**
+	 * @return the average time in ms a notification waited in the queue before it was processed
+	 */
+	public long getAverageWaitMillis() {
+		long count = processed.get();
+		return count > 0 ? totalWaitMillis.get() / count : 0;
+	}
+
+	public long getMaxWaitMillis() {
+		return maxWaitMillis.get();
+	}
+
+	public String getStatistics() {
+		return "queue depth: " + getQueueDepth() + ", accepted: " + getAcceptedCount() + ", processed: " + getProcessedCount()
+			+ ", failed: " + getFailedCount() + ", dropped: " + getDroppedCount()
+			+ " (pipeline end: " + getShedCount(EventPriority.PipelineEnd) + ", pipeline start: " + getShedCount(EventPriority.PipelineStart)
+			+ ", stage end: " + getShedCount(EventPriority.StageEnd) + ", stage start: " + getShedCount(EventPriority.StageStart) + ")"
+			+ ", average wait: " + getAverageWaitMillis() + "ms, max wait: " + getMaxWaitMillis() + "ms";
+	}
+}
@@ -26,11 +26,25 @@ package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.settings;
  */
 public class OctaneGoCDPluginSettings {
 
+	public static final int DefaultEventWorkers = 4;
+	public static final int DefaultEventQueueSize = 1000;
+	public static final int DefaultStageEventThreshold = 80;
+	public static final int DefaultDuplicateWindow = 300;
+
 	private String serverURL;
 	private String clientID;
 	private String clientSecret;
 	private String goUsername;
 	private String goPassword;
+	private String includedPipelines;
+	private String excludedPipelines;
+	private String eventWorkers;
+	private String eventQueueSize;
+	private String stageEventThreshold;
+	private String duplicateWindow;
+	private String backfillBuilds;
+	private String includedReports;
+	private String excludedReports;
 
 	public OctaneGoCDPluginSettings(OctaneGoCDPluginSettings settings){
 		if(settings!=null) {
@@ -39,6 +53,15 @@ public class OctaneGoCDPluginSettings {
 			this.clientSecret = settings.clientSecret;
 			this.goUsername = settings.goUsername;
 			this.goPassword = settings.goPassword;
+			this.includedPipelines = settings.includedPipelines;
+			this.excludedPipelines = settings.excludedPipelines;
+			this.eventWorkers = settings.eventWorkers;
+			this.eventQueueSize = settings.eventQueueSize;
+			this.stageEventThreshold = settings.stageEventThreshold;
+			this.duplicateWindow = settings.duplicateWindow;
+			this.backfillBuilds = settings.backfillBuilds;
+			this.includedReports = settings.includedReports;
+			this.excludedReports = settings.excludedReports;
 		}
 	}
 
@@ -90,4 +113,141 @@ public class OctaneGoCDPluginSettings {
 		this.goPassword = goPassword;
 		return this;
 	}
+
+	public String getIncludedPipelines() {
+		return includedPipelines;
+	}
+
+	public OctaneGoCDPluginSettings setIncludedPipelines(String includedPipelines) {
+		this.includedPipelines = includedPipelines;
+		return this;
+	}
+
+	public String getExcludedPipelines() {
+		return excludedPipelines;
+	}
+
+	public OctaneGoCDPluginSettings setExcludedPipelines(String excludedPipelines) {
+		this.excludedPipelines = excludedPipelines;
+		return this;
+	}
+
+	public String getEventWorkers() {
+		return eventWorkers;
+	}
+
+	public OctaneGoCDPluginSettings setEventWorkers(String eventWorkers) {
+		this.eventWorkers = eventWorkers;
+		return this;
+	}
+
+	public String getEventQueueSize() {
+		return eventQueueSize;
+	}
+
+	public OctaneGoCDPluginSettings setEventQueueSize(String eventQueueSize) {
+		this.eventQueueSize = eventQueueSize;
+		return this;
+	}
+
+	public String getStageEventThreshold() {
+		return stageEventThreshold;
+	}
+
+	public OctaneGoCDPluginSettings setStageEventThreshold(String stageEventThreshold) {
+		this.stageEventThreshold = stageEventThreshold;
+		return this;
+	}
+
+	public String getDuplicateWindow() {
+		return duplicateWindow;
+	}
+
+	public OctaneGoCDPluginSettings setDuplicateWindow(String duplicateWindow) {
+		this.duplicateWindow = duplicateWindow;
+		return this;
+	}
+
+	public String getBackfillBuilds() {
+		return backfillBuilds;
+	}
+
+	public OctaneGoCDPluginSettings setBackfillBuilds(String backfillBuilds) {
+		this.backfillBuilds = backfillBuilds;
+		return this;
+	}
+
+	public String getIncludedReports() {
+		return includedReports;
+	}
+
+	public OctaneGoCDPluginSettings setIncludedReports(String includedReports) {
+		this.includedReports = includedReports;
+		return this;
+	}
+
+	public String getExcludedReports() {
+		return excludedReports;
+	}
+
+	public OctaneGoCDPluginSettings setExcludedReports(String excludedReports) {
+		this.excludedReports = excludedReports;
+		return this;
+	}
+
+	/**
+	 * @return the number of threads processing stage-status notifications
+	 */
+	public int getEventWorkerCount() {
+		return toPositiveInt(eventWorkers, DefaultEventWorkers);
+	}
+
+	/**
+	 * @return the maximum number of stage-status notifications waiting to be processed
+	 */
+	public int getEventQueueCapacity() {
+		return toPositiveInt(eventQueueSize, DefaultEventQueueSize);
+	}
+
+	/**
+	 * @return the number of queued notifications above which starts of later stages are shed (and, closer to the capacity, ends of intermediate stages);
+	 * derived from the configured percentage of the queue capacity
+	 */
+	public int getStageEventSheddingThreshold() {
+		int percentage = Math.min(100, toPositiveInt(stageEventThreshold, DefaultStageEventThreshold));
+		return Math.max(1, getEventQueueCapacity() * percentage / 100);
+	}
+
+	/**
+	 * @return the time in ms within which repeated stage-status notifications are suppressed
+	 */
+	public long getDuplicateWindowMillis() {
+		return toPositiveInt(duplicateWindow, DefaultDuplicateWindow) * 1000L;
+	}
+
+	/**
+	 * @return the number of past runs reported for a newly linked pipeline; 0 if the backfill is disabled
+	 */
+	public int getBackfillBuildCount() {
+		return toPositiveInt(backfillBuilds, 0);
+	}
+
+	/**
+	 * Converts an optional numeric setting.
+	 *
+	 * @param value the value of the setting
+	 * @param defaultValue used if the value is empty or not a positive number
+	 * @return the positive value of the setting
+	 */
+	public static int toPositiveInt(String value, int defaultValue) {
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			int number = Integer.parseInt(value.trim());
+			return number > 0 ? number : defaultValue;
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
 }
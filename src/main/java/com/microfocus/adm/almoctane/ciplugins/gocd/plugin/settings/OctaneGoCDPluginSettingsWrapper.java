@@ -43,7 +43,16 @@ public class OctaneGoCDPluginSettingsWrapper {
 			.setClientID((String)getValueFor("clientID"))
 			.setClientSecret((String)getValueFor("clientSecret"))
 			.setGoUsername((String)getValueFor("goUsername"))
-			.setGoPassword((String)getValueFor("goPassword"));
+			.setGoPassword((String)getValueFor("goPassword"))
+			.setIncludedPipelines((String)getValueFor("includedPipelines"))
+			.setExcludedPipelines((String)getValueFor("excludedPipelines"))
+			.setEventWorkers((String)getValueFor("eventWorkers"))
+			.setEventQueueSize((String)getValueFor("eventQueueSize"))
+			.setStageEventThreshold((String)getValueFor("stageEventThreshold"))
+			.setDuplicateWindow((String)getValueFor("duplicateWindow"))
+			.setBackfillBuilds((String)getValueFor("backfillBuilds"))
+			.setIncludedReports((String)getValueFor("includedReports"))
+			.setExcludedReports((String)getValueFor("excludedReports"));
 	}
 
 	protected Object getValueFor(final String property) {
@@ -0,0 +1,107 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.settings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * This filter decides which pipelines are tracked by Octane, based on the include and exclude
+ * patterns of the {@link OctaneGoCDPluginSettings}. Notifications of all other pipelines are
+ * dropped before any request is sent to GoCD.
+ *
+ * Patterns are separated by commas or line breaks and may use the wildcards '*' and '?'.
+ * A pipeline is tracked if it matches any include pattern (or no include pattern is given)
+ * and does not match any exclude pattern.
+ */
+public class PipelineFilter {
+
+	private final List<Pattern> includes;
+	private final List<Pattern> excludes;
+	private final Map<String, Boolean> decisions = new ConcurrentHashMap<>();
+
+	public PipelineFilter(String includes, String excludes) {
+		this.includes = parse(includes);
+		this.excludes = parse(excludes);
+	}
+
+	public PipelineFilter(OctaneGoCDPluginSettings settings) {
+		this(settings != null ? settings.getIncludedPipelines() : null, settings != null ? settings.getExcludedPipelines() : null);
+	}
+
+	public boolean isTracked(String pipelineName) {
+		if (pipelineName == null) {
+			return false;
+		}
+		return decisions.computeIfAbsent(pipelineName, this::matches);
+	}
+
+	private boolean matches(String pipelineName) {
+		if (!includes.isEmpty() && !matchesAny(includes, pipelineName)) {
+			return false;
+		}
+		return !matchesAny(excludes, pipelineName);
+	}
+
+	private static boolean matchesAny(List<Pattern> patterns, String pipelineName) {
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(pipelineName).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static List<Pattern> parse(String patterns) {
+		final List<Pattern> result = new ArrayList<>();
+		if (patterns != null) {
+			for (String glob : patterns.split("[,\\r\\n]+")) {
+				glob = glob.trim();
+				if (!glob.isEmpty()) {
+					result.add(toPattern(glob));
+				}
+			}
+		}
+		return result;
+	}
+
+	static Pattern toPattern(String glob) {
+		final StringBuilder regex = new StringBuilder();
+		int literalStart = 0;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*' || c == '?') {
+				if (literalStart < i) {
+					regex.append(Pattern.quote(glob.substring(literalStart, i)));
+				}
+				regex.append(c == '*' ? ".*" : ".");
+				literalStart = i + 1;
+			}
+		}
+		if (literalStart < glob.length()) {
+			regex.append(Pattern.quote(glob.substring(literalStart)));
+		}
+		return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.settings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * This filter decides which artifacts of a job are downloaded as test reports, based on the
+ * included and excluded report paths of the {@link OctaneGoCDPluginSettings}.
+ *
+ * Rules are separated by commas or line breaks. A rule is a path relative to the artifacts of a
+ * job, separated by '/', which may use the wildcards '*' and '?' within a name and '**' for any
+ * number of folders, for example '**&#47;TEST-*.xml'. A rule prefixed with a pipeline pattern and a
+ * colon only applies to the matching pipelines, for example 'dotnet-*:**&#47;TestResult.xml'.
+ *
+ * An XML file is a report of a pipeline if it matches any include rule and does not match any
+ * exclude rule. The include rules of a pipeline are the rules for that pipeline or, if there are
+ * none, the rules for all pipelines. Without include rules every XML file is a report. Exclude
+ * rules for all pipelines and for the pipeline apply together.
+ */
+public class ReportFilter {
+
+	private final List<Rule> includes;
+	private final List<Rule> excludes;
+	private final Map<String, PathRules> pipelineRules = new ConcurrentHashMap<>();
+
+	public ReportFilter(String includes, String excludes) {
+		this.includes = parse(includes);
+		this.excludes = parse(excludes);
+	}
+
+	public ReportFilter(OctaneGoCDPluginSettings settings) {
+		this(settings != null ? settings.getIncludedReports() : null, settings != null ? settings.getExcludedReports() : null);
+	}
+
+	/**
+	 * @return the rules which apply to the artifacts of the given pipeline
+	 */
+	public PathRules forPipeline(String pipelineName) {
+		return pipelineRules.computeIfAbsent(pipelineName != null ? pipelineName : "", this::select);
+	}
+
+	/**
+	 * @return the first rule with an empty pipeline pattern or path; null if all rules are valid
+	 */
+	public static String findInvalidRule(String rules) {
+		if (rules != null) {
+			for (String rule : rules.split("[,\\r\\n]+")) {
+				final int colon = rule.indexOf(':');
+				if (colon > -1 && (rule.substring(0, colon).trim().isEmpty() || rule.substring(colon + 1).trim().isEmpty())) {
+					return rule.trim();
+				}
+			}
+		}
+		return null;
+	}
+
+	private PathRules select(String pipelineName) {
+		final List<String[]> pipelineIncludes = new ArrayList<>();
+		final List<String[]> globalIncludes = new ArrayList<>();
+		for (Rule rule : includes) {
+			if (rule.pipeline == null) {
+				globalIncludes.add(rule.path);
+			} else if (rule.pipeline.matcher(pipelineName).matches()) {
+				pipelineIncludes.add(rule.path);
+			}
+		}
+		final List<String[]> pathExcludes = new ArrayList<>();
+		for (Rule rule : excludes) {
+			if (rule.pipeline == null || rule.pipeline.matcher(pipelineName).matches()) {
+				pathExcludes.add(rule.path);
+			}
+		}
+		return new PathRules(!pipelineIncludes.isEmpty() ? pipelineIncludes : globalIncludes, pathExcludes);
+	}
+
+	private static List<Rule> parse(String rules) {
+		final List<Rule> result = new ArrayList<>();
+		if (rules != null) {
+			for (String rule : rules.split("[,\\r\\n]+")) {
+				final int colon = rule.indexOf(':');
+				final String pipeline = colon > -1 ? rule.substring(0, colon).trim() : null;
+				final String path = (colon > -1 ? rule.substring(colon + 1) : rule).trim();
+				if (!path.isEmpty() && (pipeline == null || !pipeline.isEmpty())) {
+					result.add(new Rule(pipeline != null ? PipelineFilter.toPattern(pipeline) : null, split(path)));
+				}
+			}
+		}
+		return result;
+	}
+
+	private static String[] split(String path) {
+		final List<String> names = new ArrayList<>();
+		for (String name : path.split("[/\\\\]+")) {
+			if (!name.isEmpty() && !(name.equals("**") && !names.isEmpty() && names.get(names.size() - 1).equals("**"))) {
+				names.add(name);
+			}
+		}
+		return names.toArray(new String[0]);
+	}
+
+	private static class Rule {
+		private final Pattern pipeline; // null if the rule applies to all pipelines.
+		private final String[] path;
+
+		private Rule(Pattern pipeline, String[] path) {
+			this.pipeline = pipeline;
+			this.path = path;
+		}
+	}
+
+	/**
+	 * The include and exclude rules of a single pipeline. Paths are given as the names of their folders and file.
+	 */
+	public static class PathRules {
+
+		private final List<String[]> includes;
+		private final List<String[]> excludes;
+		private final Map<String, Pattern> namePatterns = new ConcurrentHashMap<>();
+
+		private PathRules(List<String[]> includes, List<String[]> excludes) {
+			this.includes = includes;
+			this.excludes = excludes;
+		}
+
+		/**
+		 * @return whether the XML file with the given path is a test report
+		 */
+		public boolean isReport(List<String> path) {
+			if (!path.isEmpty() && !path.get(path.size() - 1).toLowerCase().endsWith(".xml")) {
+				return false;
+			}
+			if (!includes.isEmpty() && !matchesAny(includes, path)) {
+				return false;
+			}
+			return !matchesAny(excludes, path);
+		}
+
+		/**
+		 * @return false if no file below the folder with the given path can be a test report, so the
+		 * folder does not need to be traversed
+		 */
+		public boolean mayContainReports(List<String> folder) {
+			for (String[] exclude : excludes) { // an exclude rule ending with '**' excludes whole folders.
+				if (exclude.length > 0 && exclude[exclude.length - 1].equals("**")
+					&& matches(Arrays.copyOf(exclude, exclude.length - 1), 0, folder, 0)) {
+					return false;
+				}
+			}
+			if (includes.isEmpty()) {
+				return true;
+			}
+			for (String[] include : includes) {
+				if (matchesBelow(include, 0, folder, 0)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean matchesAny(List<String[]> rules, List<String> path) {
+			for (String[] rule : rules) {
+				if (matches(rule, 0, path, 0)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return whether the rule from index i matches the path from index j
+		 */
+		private boolean matches(String[] rule, int i, List<String> path, int j) {
+			if (i == rule.length) {
+				return j == path.size();
+			} else if (rule[i].equals("**")) {
+				return matches(rule, i + 1, path, j) || (j < path.size() && matches(rule, i, path, j + 1));
+			}
+			return j < path.size() && matchesName(rule[i], path.get(j)) && matches(rule, i + 1, path, j + 1);
+		}
+
+		/**
+		 * @return whether the rule from index i can match a file below the folder from index j
+		 */
+		private boolean matchesBelow(String[] rule, int i, List<String> folder, int j) {
+			if (j == folder.size()) {
+				return i < rule.length;
+			} else if (i == rule.length) {
+				return false;
+			} else if (rule[i].equals("**")) {
+				return true;
+			}
+			return matchesName(rule[i], folder.get(j)) && matchesBelow(rule, i + 1, folder, j + 1);
+		}
+
+		private boolean matchesName(String glob, String name) {
+			return namePatterns.computeIfAbsent(glob, PipelineFilter::toPattern).matcher(name).matches();
+		}
+	}
+}
@@ -70,6 +70,52 @@ public class SettingsValidator {
 
 		}
 
+		if (!isEmptyOrPositiveNumber(settings.getEventWorkers())) {
+			issues.add(new ValidationIssue("eventWorkers", "Event Processing Threads must be a positive number"));
+		}
+
+		if (!isEmptyOrPositiveNumber(settings.getEventQueueSize())) {
+			issues.add(new ValidationIssue("eventQueueSize", "Event Queue Size must be a positive number"));
+		}
+
+		if (!isEmptyOrNumberBetween(settings.getStageEventThreshold(), 1, 100)) {
+			issues.add(new ValidationIssue("stageEventThreshold", "Stage Event Threshold must be a percentage between 1 and 100"));
+		}
+
+		if (!isEmptyOrPositiveNumber(settings.getDuplicateWindow())) {
+			issues.add(new ValidationIssue("duplicateWindow", "Duplicate Suppression Window must be a positive number of seconds"));
+		}
+
+		if (!isEmptyOrPositiveNumber(settings.getBackfillBuilds())) {
+			issues.add(new ValidationIssue("backfillBuilds", "Backfilled Builds must be a positive number"));
+		}
+
+		String invalidRule = ReportFilter.findInvalidRule(settings.getIncludedReports());
+		if (invalidRule != null) {
+			issues.add(new ValidationIssue("includedReports", "Included Test Reports contains an incomplete rule: " + invalidRule));
+		}
+
+		invalidRule = ReportFilter.findInvalidRule(settings.getExcludedReports());
+		if (invalidRule != null) {
+			issues.add(new ValidationIssue("excludedReports", "Excluded Test Reports contains an incomplete rule: " + invalidRule));
+		}
+
 		return issues;
 	}
+
+	private static boolean isEmptyOrPositiveNumber(String value) {
+		return isEmptyOrNumberBetween(value, 1, Integer.MAX_VALUE);
+	}
+
+	private static boolean isEmptyOrNumberBetween(String value, int min, int max) {
+		if (value == null || value.trim().isEmpty()) {
+			return true;
+		}
+		try {
+			int number = Integer.parseInt(value.trim());
+			return number >= min && number <= max;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
 }
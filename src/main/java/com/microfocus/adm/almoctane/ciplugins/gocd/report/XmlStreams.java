@@ -0,0 +1,111 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.microfocus.adm.almoctane.ciplugins.gocd.report;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * This class helps the streaming report parsers with reading XML through a {@link XMLStreamReader}.
+ *
+ * Text content is only collected where it is needed and then truncated, so the memory used while
+ * reading a report does not depend on the size of the report or of its captured output.
+ */
+public class XmlStreams {
+
+	/** Longer error messages and stack traces are truncated. */
+	public static final int MaxTextLength = 64 * 1024;
+
+	private static final XMLInputFactory InputFactory = createInputFactory();
+
+	/**
+	 * Creates a reader which neither loads DTDs nor resolves external entities.
+	 */
+	public static XMLStreamReader createReader(InputStream stream) throws XMLStreamException {
+		return InputFactory.createXMLStreamReader(stream);
+	}
+
+	/**
+	 * Skips the current element including all its content.
+	 * The reader has to be positioned at the start of the element and ends at its end.
+	 */
+	public static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Reads the text content of the current element, including the text of nested elements,
+	 * truncated to {@link #MaxTextLength} characters. The reader has to be positioned at the
+	 * start of the element and ends at its end.
+	 */
+	public static String readText(XMLStreamReader reader) throws XMLStreamException {
+		final StringBuilder text = new StringBuilder();
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (reader.isCharacters() && text.length() < MaxTextLength) {
+				text.append(reader.getTextCharacters(), reader.getTextStart(), Math.min(reader.getTextLength(), MaxTextLength - text.length()));
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @return the value of the given attribute of the current element or null if it is missing
+	 */
+	public static String attribute(XMLStreamReader reader, String name) {
+		return reader.getAttributeValue(null, name);
+	}
+
+	/**
+	 * @return the numeric value of the given attribute; 0 if it is missing or malformed
+	 */
+	public static double doubleAttribute(XMLStreamReader reader, String name) {
+		final String value = attribute(reader, name);
+		if (value == null) {
+			return 0;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false); // reports never need a DTD; this also prevents XXE.
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, false); // deliver long texts in chunks.
+		return factory;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.microfocus.adm.almoctane.ciplugins.gocd.report.junit;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.XmlStreams;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.junit.dom.JUnitFailure;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.junit.dom.JUnitSkipped;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.junit.dom.JUnitTestCase;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.junit.dom.JUnitTestSuite;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * This parser reads a JUnit report as a stream and hands over one test case at a time.
+ *
+ * Unlike {@link JUnitReportParser} it never holds more than a single test case in memory. The
+ * captured output ('system-out', 'system-err') is skipped. Both a single 'testsuite' and an
+ * aggregated 'testsuites' report are supported.
+ */
+public class JUnitStreamingParser {
+
+	/**
+	 * Receives the test cases of a report in document order.
+	 */
+	public interface Listener {
+		/**
+		 * @param testSuite the suite of the test case; only its attributes are set
+		 * @param testCase  the test case; its output is not set
+		 */
+		void testCase(JUnitTestSuite testSuite, JUnitTestCase testCase);
+	}
+
+	public void parse(InputStream stream, Listener listener) throws XMLStreamException {
+		final XMLStreamReader reader = XmlStreams.createReader(stream);
+		try {
+			JUnitTestSuite testSuite = new JUnitTestSuite();
+			while (reader.hasNext()) {
+				if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+				switch (reader.getLocalName()) {
+					case "testsuite":
+						testSuite = new JUnitTestSuite();
+						testSuite.setName(XmlStreams.attribute(reader, "name"));
+						testSuite.setTimestamp(XmlStreams.attribute(reader, "timestamp"));
+						break;
+					case "testcase":
+						listener.testCase(testSuite, readTestCase(reader));
+						break;
+					case "testsuites":
+						break;
+					default: // properties and the output of the suite.
+						XmlStreams.skipElement(reader);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static JUnitTestCase readTestCase(XMLStreamReader reader) throws XMLStreamException {
+		final JUnitTestCase testCase = new JUnitTestCase();
+		testCase.setName(XmlStreams.attribute(reader, "name"));
+		testCase.setClassName(XmlStreams.attribute(reader, "classname"));
+		testCase.setTime(XmlStreams.doubleAttribute(reader, "time"));
+		int event;
+		while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) { // all children are consumed completely.
+			if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			switch (reader.getLocalName()) {
+				case "skipped":
+					testCase.setSkipped(new JUnitSkipped());
+					XmlStreams.skipElement(reader);
+					break;
+				case "failure":
+					final JUnitFailure failure = new JUnitFailure();
+					failure.setMessage(XmlStreams.attribute(reader, "message"));
+					failure.setType(XmlStreams.attribute(reader, "type"));
+					failure.setContent(XmlStreams.readText(reader));
+					if (testCase.getFailures() == null) {
+						testCase.setFailures(new ArrayList<JUnitFailure>());
+					}
+					testCase.getFailures().add(failure);
+					break;
+				default: // the output of the test case.
+					XmlStreams.skipElement(reader);
+			}
+		}
+		return testCase;
+	}
+}
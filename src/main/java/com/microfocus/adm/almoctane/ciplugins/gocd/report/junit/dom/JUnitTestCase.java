@@ -86,6 +86,10 @@ public class JUnitTestCase {
 		return skipped != null;
 	}
 
+	public void setSkipped(JUnitSkipped skipped) {
+		this.skipped = skipped;
+	}
+
 	/**
 	 * When using gradle systemOut will only exist when
 	 * <code>
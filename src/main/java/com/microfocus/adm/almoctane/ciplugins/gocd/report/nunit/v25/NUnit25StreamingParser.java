@@ -0,0 +1,126 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v25;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.XmlStreams;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v25.dom.NUnitFailure;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v25.dom.NUnitTestCase;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v25.dom.NUnitTestResults;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * This parser reads a NUnit 2.5 report as a stream and hands over one test case at a time.
+ *
+ * Unlike {@link NUnit25ReportParser} it does not build the tree of test suites; the test cases
+ * of all nested suites are handed over in document order while the rest of the report is skipped.
+ */
+public class NUnit25StreamingParser {
+
+	/**
+	 * Receives the test cases of a report in document order.
+	 */
+	public interface Listener {
+		/**
+		 * @param testResults the root of the report; only its attributes are set
+		 * @param testCase    the test case
+		 */
+		void testCase(NUnitTestResults testResults, NUnitTestCase testCase);
+	}
+
+	public void parse(InputStream stream, Listener listener) throws XMLStreamException {
+		final XMLStreamReader reader = XmlStreams.createReader(stream);
+		try {
+			final NUnitTestResults testResults = new NUnitTestResults();
+			while (reader.hasNext()) {
+				if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+				switch (reader.getLocalName()) {
+					case "test-results":
+						testResults.setDate(XmlStreams.attribute(reader, "date"));
+						testResults.setTime(XmlStreams.attribute(reader, "time"));
+						break;
+					case "test-suite":
+					case "results":
+						break;
+					case "test-case":
+						listener.testCase(testResults, readTestCase(reader));
+						break;
+					default: // environment, properties and the failures of suites.
+						XmlStreams.skipElement(reader);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static NUnitTestCase readTestCase(XMLStreamReader reader) throws XMLStreamException {
+		final NUnitTestCase testCase = new NUnitTestCase();
+		testCase.setName(XmlStreams.attribute(reader, "name"));
+		testCase.setExecuted(toBoolean(XmlStreams.attribute(reader, "executed")));
+		testCase.setSuccess(toBoolean(XmlStreams.attribute(reader, "success")));
+		testCase.setResult(XmlStreams.attribute(reader, "result"));
+		testCase.setTime(XmlStreams.doubleAttribute(reader, "time"));
+		int event;
+		while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) { // all children are consumed completely.
+			if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			if ("failure".equals(reader.getLocalName())) {
+				testCase.setFailure(readFailure(reader));
+			} else {
+				XmlStreams.skipElement(reader);
+			}
+		}
+		return testCase;
+	}
+
+	private static NUnitFailure readFailure(XMLStreamReader reader) throws XMLStreamException {
+		final NUnitFailure failure = new NUnitFailure();
+		int event;
+		while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+			if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			if ("message".equals(reader.getLocalName())) {
+				failure.setMessage(XmlStreams.readText(reader));
+			} else if ("stack-trace".equals(reader.getLocalName())) {
+				failure.setStacktrace(XmlStreams.readText(reader));
+			} else {
+				XmlStreams.skipElement(reader);
+			}
+		}
+		return failure;
+	}
+
+	/**
+	 * Booleans are written as 'True' and 'False', see {@link BooleanAdapter}.
+	 */
+	private static Boolean toBoolean(String value) {
+		if ("True".equals(value)) {
+			return Boolean.TRUE;
+		} else if ("False".equals(value)) {
+			return Boolean.FALSE;
+		}
+		return null;
+	}
+}
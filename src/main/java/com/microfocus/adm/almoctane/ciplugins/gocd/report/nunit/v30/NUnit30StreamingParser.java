@@ -0,0 +1,124 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v30;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.XmlStreams;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v30.dom.NUnitFailure;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v30.dom.NUnitTestCase;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v30.dom.NUnitTestResult;
+import com.microfocus.adm.almoctane.ciplugins.gocd.report.nunit.v30.dom.NUnitTestRun;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * This parser reads a NUnit 3.0 report as a stream and hands over one test case at a time.
+ *
+ * Unlike {@link NUnit30ReportParser} it does not build the tree of test suites; the test cases
+ * of all nested suites are handed over in document order while their output is skipped.
+ */
+public class NUnit30StreamingParser {
+
+	/**
+	 * Receives the test cases of a report in document order.
+	 */
+	public interface Listener {
+		/**
+		 * @param testRun  the root of the report; only its attributes are set
+		 * @param testCase the test case; its output is not set
+		 */
+		void testCase(NUnitTestRun testRun, NUnitTestCase testCase);
+	}
+
+	public void parse(InputStream stream, Listener listener) throws XMLStreamException {
+		final XMLStreamReader reader = XmlStreams.createReader(stream);
+		try {
+			final NUnitTestRun testRun = new NUnitTestRun();
+			while (reader.hasNext()) {
+				if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+				switch (reader.getLocalName()) {
+					case "test-run":
+						testRun.setStartTime(XmlStreams.attribute(reader, "start-time"));
+						break;
+					case "test-suite":
+						break;
+					case "test-case":
+						listener.testCase(testRun, readTestCase(reader));
+						break;
+					default: // command line, environment, properties and the failures of suites.
+						XmlStreams.skipElement(reader);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static NUnitTestCase readTestCase(XMLStreamReader reader) throws XMLStreamException {
+		final NUnitTestCase testCase = new NUnitTestCase();
+		testCase.setName(XmlStreams.attribute(reader, "name"));
+		testCase.setClassName(XmlStreams.attribute(reader, "classname"));
+		testCase.setResult(toResult(XmlStreams.attribute(reader, "result")));
+		testCase.setDuration(XmlStreams.doubleAttribute(reader, "duration"));
+		int event;
+		while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) { // all children are consumed completely.
+			if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			if ("failure".equals(reader.getLocalName())) {
+				testCase.setFailure(readFailure(reader));
+			} else {
+				XmlStreams.skipElement(reader);
+			}
+		}
+		return testCase;
+	}
+
+	private static NUnitFailure readFailure(XMLStreamReader reader) throws XMLStreamException {
+		final NUnitFailure failure = new NUnitFailure();
+		int event;
+		while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+			if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			if ("message".equals(reader.getLocalName())) {
+				failure.setMessage(XmlStreams.readText(reader));
+			} else if ("stack-trace".equals(reader.getLocalName())) {
+				failure.setStacktrace(XmlStreams.readText(reader));
+			} else {
+				XmlStreams.skipElement(reader);
+			}
+		}
+		return failure;
+	}
+
+	/**
+	 * @return the result of the test case or null if it is unknown
+	 */
+	private static NUnitTestResult toResult(String value) {
+		for (NUnitTestResult result : NUnitTestResult.values()) {
+			if (result.name().equals(value)) {
+				return result;
+			}
+		}
+		return null;
+	}
+}
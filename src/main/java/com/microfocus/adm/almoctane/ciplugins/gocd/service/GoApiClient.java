@@ -42,6 +42,9 @@ import java.net.URL;
  */
 public class GoApiClient {
 
+	/** Reports are downloaded in parallel; the default of two connections per host would serialize them. */
+	public static final int MaxConnections = 16;
+
 	private final HttpHost httpHost;
 	private final HttpClient httpClient;
 
@@ -51,7 +54,8 @@ public class GoApiClient {
 		final CredentialsProvider provider = new BasicCredentialsProvider();
 		provider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
 
-		httpClient = HttpClientBuilder.create().setDefaultCredentialsProvider(provider).build();
+		httpClient = HttpClientBuilder.create().setDefaultCredentialsProvider(provider)
+			.setMaxConnPerRoute(MaxConnections).setMaxConnTotal(MaxConnections).build();
 	}
 
 	public HttpResponse execute(final HttpRequest request) throws IOException {
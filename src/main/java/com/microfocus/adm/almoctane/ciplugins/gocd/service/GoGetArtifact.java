@@ -19,13 +19,19 @@
 package com.microfocus.adm.almoctane.ciplugins.gocd.service;
 
 import com.thoughtworks.go.plugin.api.logging.Logger;
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.function.Predicate;
 
 /**
  * This class encapsulates the API call to get a single artifact of a job from Go.
@@ -36,6 +42,9 @@ public class GoGetArtifact {
 
 	private static final Logger Log = Logger.getLoggerFor(GoGetArtifact.class);
 
+	/** The number of bytes requested first to decide whether an artifact is downloaded completely. */
+	public static final int PrefixSize = 8 * 1024;
+
 	private final GoApiClient goApiClient;
 
 	public GoGetArtifact(GoApiClient goApiClient) {
@@ -49,10 +58,122 @@ public class GoGetArtifact {
 				return response.getEntity().getContent();
 			} else {
 				Log.error("Request got HTTP-" + response.getStatusLine().getStatusCode());
+				EntityUtils.consumeQuietly(response.getEntity()); // releases the connection.
+			}
+		} catch (IOException e) {
+			Log.error("Could not perform request", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Downloads the given artifact only if its first bytes are accepted. The first {@link #PrefixSize}
+	 * bytes are requested with a HTTP range and the rest of the artifact is requested once the prefix
+	 * has been accepted. If the server ignores the range, the transfer of the whole artifact is aborted
+	 * after the prefix if it is not accepted.
+	 * @param artifactUrl  the URL of the artifact
+	 * @param acceptPrefix decides on the first bytes whether the artifact is needed
+	 * @return the content of the artifact; null if its prefix was not accepted or it could not be downloaded
+	 */
+	public InputStream get(final String artifactUrl, final Predicate<InputStream> acceptPrefix) {
+		try {
+			final String path = new URL(artifactUrl).getPath();
+			final HttpGet request = new HttpGet(path);
+			request.addHeader("Range", "bytes=0-" + (PrefixSize - 1));
+			final HttpResponse response = goApiClient.execute(request);
+			final int statusCode = response.getStatusLine().getStatusCode();
+			if (statusCode == HttpStatus.SC_PARTIAL_CONTENT) {
+				final byte[] prefix;
+				try (InputStream content = response.getEntity().getContent()) {
+					prefix = readPrefix(content);
+				}
+				if (!acceptPrefix.test(new ByteArrayInputStream(prefix))) {
+					Log.debug("artifact '" + artifactUrl + "' is skipped after its first " + prefix.length + " bytes");
+					return null;
+				}
+				if (isComplete(response, prefix.length)) {
+					return new ByteArrayInputStream(prefix);
+				}
+				return getRemainder(path, prefix, response.getFirstHeader("ETag"));
+			} else if (statusCode == HttpStatus.SC_OK) { // the server ignored the range and sends the whole artifact.
+				final InputStream content = response.getEntity().getContent();
+				final byte[] prefix;
+				try {
+					prefix = readPrefix(content);
+				} catch (IOException e) {
+					request.abort();
+					throw e;
+				}
+				if (!acceptPrefix.test(new ByteArrayInputStream(prefix))) {
+					Log.debug("artifact '" + artifactUrl + "' is skipped after its first " + prefix.length + " bytes");
+					request.abort(); // closing the content would read the rest of the artifact.
+					return null;
+				}
+				return new SequenceInputStream(new ByteArrayInputStream(prefix), content);
+			} else if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) { // the artifact is empty.
+				EntityUtils.consumeQuietly(response.getEntity());
+				return new ByteArrayInputStream(new byte[0]);
+			} else {
+				Log.error("Request got HTTP-" + statusCode);
+				EntityUtils.consumeQuietly(response.getEntity()); // releases the connection.
 			}
 		} catch (IOException e) {
 			Log.error("Could not perform request", e);
 		}
 		return null;
 	}
+
+	/**
+	 * Requests the artifact after the given prefix. If the artifact has been replaced since the prefix
+	 * was read, the server sends the whole new artifact instead.
+	 */
+	private InputStream getRemainder(final String path, final byte[] prefix, final Header eTag) throws IOException {
+		final HttpGet request = new HttpGet(path);
+		request.addHeader("Range", "bytes=" + prefix.length + "-");
+		if (eTag != null) {
+			request.addHeader("If-Range", eTag.getValue());
+		}
+		final HttpResponse response = goApiClient.execute(request);
+		final int statusCode = response.getStatusLine().getStatusCode();
+		if (statusCode == HttpStatus.SC_PARTIAL_CONTENT) {
+			return new SequenceInputStream(new ByteArrayInputStream(prefix), response.getEntity().getContent());
+		} else if (statusCode == HttpStatus.SC_OK) {
+			return response.getEntity().getContent();
+		} else if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) { // the prefix was the whole artifact.
+			EntityUtils.consumeQuietly(response.getEntity());
+			return new ByteArrayInputStream(prefix);
+		}
+		Log.error("Request got HTTP-" + statusCode);
+		EntityUtils.consumeQuietly(response.getEntity()); // releases the connection.
+		return null;
+	}
+
+	/**
+	 * @return whether the partial response with the given number of bytes contains the whole artifact
+	 */
+	private static boolean isComplete(HttpResponse response, int length) {
+		if (length < PrefixSize) {
+			return true;
+		}
+		final Header contentRange = response.getFirstHeader("Content-Range"); // e.g. 'bytes 0-8191/120000'
+		if (contentRange != null && contentRange.getValue() != null) {
+			final String total = contentRange.getValue().substring(contentRange.getValue().indexOf('/') + 1).trim();
+			try {
+				return Long.parseLong(total) <= length;
+			} catch (NumberFormatException e) { // the total length is unknown ('*').
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private static byte[] readPrefix(InputStream content) throws IOException {
+		final byte[] prefix = new byte[PrefixSize];
+		int length = 0;
+		int read;
+		while (length < prefix.length && (read = content.read(prefix, length, prefix.length - length)) != -1) {
+			length += read;
+		}
+		return length < prefix.length ? Arrays.copyOf(prefix, length) : prefix;
+	}
 }
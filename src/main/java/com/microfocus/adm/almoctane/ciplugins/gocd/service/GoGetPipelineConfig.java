@@ -22,13 +22,17 @@ import com.google.gson.Gson;
 import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineConfig;
 import com.microfocus.adm.almoctane.ciplugins.gocd.util.GoApiUtil;
 import com.thoughtworks.go.plugin.api.logging.Logger;
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import com.microfocus.adm.almoctane.ciplugins.gocd.util.Streams;
 
-import java.io.IOException;
+import java.math.BigInteger;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * This class encapsulates the API call to get an complete pipeline configuration from Go.
@@ -46,21 +50,79 @@ public class GoGetPipelineConfig {
 	}
 
 	public GoPipelineConfig get(final String pipelineName) {
+		final Result result = get(pipelineName, null);
+		return result != null ? result.getConfig() : null;
+	}
+
+	/**
+	 * Conditionally retrieves the pipeline configuration. If the given eTag still matches
+	 * the current configuration the server answers with HTTP-304 and no configuration is transferred.
+	 *
+	 * @param pipelineName name of the pipeline
+	 * @param eTag the eTag of a previously retrieved configuration; may be null
+	 * @return the result of the request; null if the request failed
+	 */
+	public Result get(final String pipelineName, final String eTag) {
 		try {
 			HttpGet request = new HttpGet(GoApiUtil.PIPELINE_CONFIG_API + URLEncoder.encode(pipelineName, "UTF-8"));
 			request.addHeader("Accept", "application/vnd.go.cd.v11+json");
+			if (eTag != null) {
+				request.addHeader("If-None-Match", eTag);
+			}
 			HttpResponse response = goApiClient.execute(request);
-			if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+			if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+				return new Result(null, eTag);
+			} else if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
 				String content = Streams.readAsString(response.getEntity().getContent());
-				return new Gson().fromJson(content, GoPipelineConfig.class);
+				Header eTagHeader = response.getFirstHeader("ETag");
+				String newETag = eTagHeader != null && eTagHeader.getValue() != null ? eTagHeader.getValue() : hashOf(content);
+				return new Result(new Gson().fromJson(content, GoPipelineConfig.class), newETag);
 			} else {
 				Log.error("Request got HTTP-" + response.getStatusLine().getStatusCode());
 			}
-		} catch (IOException e) {
-			Log.error("Could not perform request", e);
-		} catch (Exception e){
+		} catch (Exception e) {
 			Log.error("Could not perform request", e);
 		}
 		return null;
 	}
+
+	/**
+	 * Fallback fingerprint of the configuration, in case the server did not send an eTag.
+	 */
+	private static String hashOf(String content) throws NoSuchAlgorithmException {
+		byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+		return String.format("%064x", new BigInteger(1, digest));
+	}
+
+	/**
+	 * This is the outcome of a conditional request.
+	 */
+	public static class Result {
+
+		private final GoPipelineConfig config;
+		private final String eTag;
+
+		Result(GoPipelineConfig config, String eTag) {
+			this.config = config;
+			this.eTag = eTag;
+		}
+
+		/**
+		 * @return true if the configuration did not change since the given eTag
+		 */
+		public boolean isNotModified() {
+			return config == null;
+		}
+
+		/**
+		 * @return the configuration or null if it was not modified
+		 */
+		public GoPipelineConfig getConfig() {
+			return config;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+	}
 }
@@ -28,6 +28,8 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.util.Collections;
 import java.util.List;
@@ -61,4 +63,37 @@ public class GoGetPipelineHistory {
 		}
 		return Collections.emptyList();
 	}
+
+	/**
+	 * Requests a single page of the pipeline's history, newest instance first.
+	 *
+	 * @param pipelineName the name of the pipeline
+	 * @param pageSize     the number of instances per page
+	 * @param pageHref     the link to the page as returned by {@link GoPipelineHistory#getNextPageHref()}
+	 *                     or null for the first page
+	 * @return the page or null if it could not be retrieved
+	 */
+	public GoPipelineHistory getPage(final String pipelineName, final int pageSize, final String pageHref) {
+		try {
+			final String path;
+			if (pageHref == null) {
+				path = "/go/api/pipelines/" + URLEncoder.encode(pipelineName, "UTF-8") + "/history?page_size=" + pageSize;
+			} else { // the link is absolute, but the client resolves paths against the configured server.
+				URI uri = new URI(pageHref);
+				path = uri.getRawPath() + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+			}
+			HttpGet request = new HttpGet(path);
+			request.addHeader("Accept", "application/vnd.go.cd.v1+json");
+			HttpResponse response = goApiClient.execute(request);
+			if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+				String content = Streams.readAsString(response.getEntity().getContent());
+				return new Gson().fromJson(content, GoPipelineHistory.class);
+			} else {
+				Log.error("Request got HTTP-" + response.getStatusLine().getStatusCode());
+			}
+		} catch (IOException | URISyntaxException e) {
+			Log.error("Could not perform request", e);
+		}
+		return null;
+	}
 }
@@ -0,0 +1,88 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.util;
+
+/**
+ * This is a simple thread-safe circuit breaker.
+ *
+ * After the given number of consecutive failures the breaker opens and rejects all requests
+ * for the given time. Afterwards it is half-open: the next request is allowed as a trial, which
+ * closes the breaker again on success or re-opens it on failure.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		Closed,
+		Open,
+		HalfOpen
+	}
+
+	private final int failureThreshold;
+	private final long openMillis;
+	private State state = State.Closed;
+	private int consecutiveFailures;
+	private long openedAt;
+
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		if (failureThreshold < 1 || openMillis < 0) {
+			throw new IllegalArgumentException("failureThreshold must be positive and openMillis must not be negative");
+		}
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * @return whether a request may be sent now
+	 */
+	public boolean allowRequest() {
+		return allowRequest(System.currentTimeMillis());
+	}
+
+	synchronized boolean allowRequest(long now) {
+		if (state == State.Open && now - openedAt >= openMillis) {
+			state = State.HalfOpen;
+		}
+		return state != State.Open;
+	}
+
+	public synchronized void recordSuccess() {
+		consecutiveFailures = 0;
+		state = State.Closed;
+	}
+
+	/**
+	 * @return true if this failure has opened the breaker
+	 */
+	public boolean recordFailure() {
+		return recordFailure(System.currentTimeMillis());
+	}
+
+	synchronized boolean recordFailure(long now) {
+		consecutiveFailures++;
+		if (state == State.HalfOpen || (state == State.Closed && consecutiveFailures >= failureThreshold)) {
+			state = State.Open;
+			openedAt = now;
+			return true;
+		}
+		return false;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * This is a small thread-safe cache, which evicts the least recently used entry
+ * as soon as more than the given number of entries are stored.
+ */
+public class LruCache<Key, Value> {
+
+	private final Map<Key, Value> entries;
+
+	public LruCache(final int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		this.entries = new LinkedHashMap<Key, Value>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Value> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public synchronized Value get(Key key) {
+		return entries.get(key);
+	}
+
+	public synchronized void put(Key key, Value value) {
+		entries.put(key, value);
+	}
+
+	public synchronized Value remove(Key key) {
+		return entries.remove(key);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the cached value for the given key or computes and caches it.
+	 * The computation is done outside of the lock, so two threads might compute
+	 * the same value concurrently; the first one stored wins.
+	 *
+	 * @param key key of the entry
+	 * @param loader computes the value if it is not cached; may return null which is not cached
+	 * @return the cached or computed value
+	 */
+	public Value computeIfAbsent(Key key, Function<Key, Value> loader) {
+		Value value = get(key);
+		if (value != null) {
+			return value;
+		}
+		value = loader.apply(key);
+		if (value == null) {
+			return null;
+		}
+		synchronized (this) {
+			Value existing = entries.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			entries.put(key, value);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.util;
+
+/**
+ * This rate limiter hands out permits with a fixed minimum interval between them.
+ * It is meant for background work which must not put noticeable load on a server.
+ */
+public class RateLimiter {
+
+	private final long intervalMillis;
+	private long nextPermit;
+
+	public RateLimiter(long intervalMillis) {
+		if (intervalMillis < 0) {
+			throw new IllegalArgumentException("intervalMillis must not be negative");
+		}
+		this.intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * Blocks until the next permit is available.
+	 *
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public void acquire() throws InterruptedException {
+		final long waitMillis;
+		synchronized (this) {
+			final long now = System.currentTimeMillis();
+			final long permit = Math.max(now, nextPermit);
+			nextPermit = permit + intervalMillis;
+			waitMillis = permit - now;
+		}
+		if (waitMillis > 0) {
+			Thread.sleep(waitMillis);
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.microfocus.adm.almoctane.ciplugins.gocd.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * This buffer keeps the written content in memory up to a threshold and spools it to a temporary
+ * file beyond that, so large content does not occupy the heap. After it has been closed, the
+ * content can be read any number of times until the buffer is deleted. The file is removed once the
+ * buffer has been deleted and all streams opened on it have been closed.
+ *
+ * The files are created in the directory given by {@link #useDirectory(File)}, which is cleaned up
+ * when it is set, so files left over by a previous run do not pile up.
+ */
+public class SpoolBuffer extends OutputStream {
+
+	public static final int DefaultMemoryThreshold = 1024 * 1024;
+
+	private static final String FilePrefix = "octane-spool";
+	private static volatile File directory;
+
+	private final int memoryThreshold;
+	private byte[] memory = new byte[1024];
+	private long size;
+	private File file;
+	private OutputStream fileStream;
+	private boolean closed;
+	private boolean deleted;
+	private int openStreams;
+
+	/**
+	 * @param memoryThreshold the size up to which the content is kept in memory
+	 */
+	public SpoolBuffer(int memoryThreshold) {
+		this.memoryThreshold = memoryThreshold;
+	}
+
+	/**
+	 * Spools all further buffers into the given directory and deletes the files left in it.
+	 * Without a directory, the default temporary directory is used.
+	 */
+	public static void useDirectory(File spoolDirectory) throws IOException {
+		if (spoolDirectory == null) {
+			directory = null;
+			return;
+		}
+		if (!spoolDirectory.isDirectory() && !spoolDirectory.mkdirs()) {
+			throw new IOException("Could not create spool directory '" + spoolDirectory + "'");
+		}
+		final File[] leftovers = spoolDirectory.listFiles((dir, name) -> name.startsWith(FilePrefix));
+		if (leftovers != null) {
+			for (File leftover : leftovers) {
+				if (!leftover.delete()) {
+					leftover.deleteOnExit();
+				}
+			}
+		}
+		directory = spoolDirectory;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte)b}, 0, 1);
+	}
+
+	@Override
+	public synchronized void write(byte[] buffer, int offset, int length) throws IOException {
+		if (closed) {
+			throw new IOException("buffer is closed");
+		}
+		if (fileStream == null && size + length > memoryThreshold) {
+			file = File.createTempFile(FilePrefix, ".tmp", directory);
+			fileStream = new FileOutputStream(file);
+			fileStream.write(memory, 0, (int)size);
+			memory = null;
+		}
+		if (fileStream != null) {
+			fileStream.write(buffer, offset, length);
+		} else {
+			if (size + length > memory.length) {
+				memory = Arrays.copyOf(memory, (int)Math.min(memoryThreshold, Math.max(2 * memory.length, size + length)));
+			}
+			System.arraycopy(buffer, offset, memory, (int)size, length);
+		}
+		size += length;
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		if (fileStream != null) {
+			fileStream.flush();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			if (fileStream != null) {
+				fileStream.close();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of bytes written
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * @return whether the content has been spooled to a file
+	 */
+	public synchronized boolean isSpooled() {
+		return file != null;
+	}
+
+	/**
+	 * Opens the content for reading. The buffer has to be closed before. The stream must be closed,
+	 * otherwise the file of a deleted buffer is kept.
+	 */
+	public synchronized InputStream openStream() throws IOException {
+		if (deleted) {
+			throw new IOException("buffer has been deleted");
+		} else if (!closed) {
+			throw new IOException("buffer is still being written");
+		}
+		final InputStream content = file == null ? new ByteArrayInputStream(memory, 0, (int)size) : new FileInputStream(file);
+		openStreams++;
+		return new FilterInputStream(content) {
+			private boolean streamClosed;
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					synchronized (SpoolBuffer.this) {
+						if (!streamClosed) {
+							streamClosed = true;
+							openStreams--;
+							release();
+						}
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Opens the content for reading, once; the buffer is deleted when the stream is closed.
+	 */
+	public synchronized InputStream takeStream() throws IOException {
+		final InputStream content = openStream();
+		delete();
+		return content;
+	}
+
+	/**
+	 * Releases the content. Streams opened before can still be read; the file is removed when the
+	 * last of them is closed.
+	 */
+	public synchronized void delete() {
+		closed = true;
+		deleted = true;
+		memory = null;
+		if (fileStream != null) {
+			try {
+				fileStream.close();
+			} catch (IOException e) {
+				// the file is deleted anyway.
+			}
+		}
+		release();
+	}
+
+	/**
+	 * @return whether the buffer has been deleted and all its streams have been closed
+	 */
+	public synchronized boolean isReleased() {
+		return deleted && openStreams == 0;
+	}
+
+	/** Removes the file once the buffer has been deleted and is not read anymore. */
+	private void release() {
+		if (deleted && openStreams == 0 && file != null) {
+			if (!file.delete() && file.exists()) {
+				file.deleteOnExit();
+			}
+			file = null;
+		}
+	}
+}
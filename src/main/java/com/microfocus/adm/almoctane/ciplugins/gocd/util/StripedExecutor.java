@@ -0,0 +1,266 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.util;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This executor runs all tasks submitted with the same key strictly in submission order,
+ * while tasks of different keys run in parallel on a shared pool of worker threads.
+ *
+ * Each key owns a lane (a FIFO of its pending tasks). A lane is never bound to a fixed thread:
+ * whenever a lane has pending tasks, it is handed to the next free worker, which runs exactly one
+ * task and then puts the lane back at the end of the ready queue. Therefore a busy key can not
+ * starve other keys and an idle worker always picks up any ready lane.
+ *
+ * Tasks may carry a priority. Ready lanes are handed to the workers in order of the priority of
+ * their next task, so urgent work of one key overtakes ordinary work of other keys. The order within
+ * a lane is never changed by priorities.
+ *
+ * The total number of waiting tasks is bounded; {@link #execute(Object, int, Runnable)} rejects tasks
+ * when the capacity is exhausted.
+ */
+public class StripedExecutor {
+
+	private final ThreadPoolExecutor workers;
+	private int capacity;
+	private final Map<Object, Lane> lanes = new HashMap<>();
+	private int queued;
+	private long sequence;
+	private boolean shutdown;
+
+	public StripedExecutor(int threads, int capacity, String threadNamePrefix) {
+		this(new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+			new PriorityBlockingQueue<>(), new DaemonThreadFactory(threadNamePrefix)), capacity);
+		this.workers.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @param workers the pool the lanes are handed to; its queue must order the lanes by priority
+	 */
+	StripedExecutor(ThreadPoolExecutor workers, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.workers = workers;
+	}
+
+	/**
+	 * Submits a task with the default priority 0 to the lane of the given key.
+	 *
+	 * @param key tasks with equal keys are executed one after another in submission order
+	 * @param task the task to run
+	 * @throws RejectedExecutionException if the executor is full or shut down
+	 */
+	public void execute(Object key, Runnable task) {
+		execute(key, 0, task);
+	}
+
+	/**
+	 * Submits a task to the lane of the given key.
+	 *
+	 * @param key tasks with equal keys are executed one after another in submission order
+	 * @param priority lanes whose next task has a lower value are run first
+	 * @param task the task to run
+	 * @throws RejectedExecutionException if the executor is full or shut down
+	 */
+	public void execute(Object key, int priority, Runnable task) {
+		final LaneRunner runner;
+		synchronized (this) {
+			if (shutdown) {
+				throw new RejectedExecutionException("executor has been shut down");
+			}
+			if (queued >= capacity) {
+				throw new RejectedExecutionException("executor is full");
+			}
+			final Lane lane = lanes.computeIfAbsent(key, Lane::new);
+			lane.tasks.add(new Task(priority, task));
+			queued++;
+			if (lane.scheduled) {
+				return; // the lane is already waiting for or running on a worker.
+			}
+			lane.scheduled = true;
+			runner = new LaneRunner(lane, priority, sequence++);
+		}
+		try {
+			workers.execute(runner);
+		} catch (RejectedExecutionException e) {
+			abandon(runner.lane);
+			throw e;
+		}
+	}
+
+	private void runNext(Lane lane) {
+		final Runnable task;
+		synchronized (this) {
+			task = lane.tasks.poll().runnable;
+			queued--;
+		}
+		try {
+			task.run();
+		} finally {
+			LaneRunner reschedule = null;
+			synchronized (this) {
+				if (lane.tasks.isEmpty()) {
+					lane.scheduled = false;
+					lanes.remove(lane.key);
+					if (shutdown && lanes.isEmpty()) {
+						workers.shutdown();
+					}
+				} else {
+					reschedule = new LaneRunner(lane, lane.tasks.peek().priority, sequence++);
+				}
+			}
+			if (reschedule != null) { // go to the end of the ready lanes of equal priority to give other lanes a chance.
+				try {
+					workers.execute(reschedule);
+				} catch (RejectedExecutionException e) {
+					abandon(lane);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops the pending tasks of a lane which could not be handed to a worker, so the lane does not
+	 * stay marked as scheduled and later tasks of its key are run again.
+	 */
+	private synchronized void abandon(Lane lane) {
+		queued -= lane.tasks.size();
+		lane.tasks.clear();
+		lane.scheduled = false;
+		lanes.remove(lane.key, lane);
+		if (shutdown && lanes.isEmpty()) {
+			workers.shutdown();
+		}
+	}
+
+	/**
+	 * Changes the number of worker threads and the capacity. Already submitted tasks are kept, even
+	 * if they exceed the new capacity, and the order of each lane is preserved.
+	 */
+	public synchronized void resize(int threads, int capacity) {
+		if (threads < 1 || capacity < 1) {
+			throw new IllegalArgumentException("threads and capacity must be positive");
+		}
+		this.capacity = capacity;
+		if (threads > workers.getMaximumPoolSize()) { // the core size must never exceed the maximum size.
+			workers.setMaximumPoolSize(threads);
+			workers.setCorePoolSize(threads);
+		} else {
+			workers.setCorePoolSize(threads);
+			workers.setMaximumPoolSize(threads);
+		}
+	}
+
+	/**
+	 * @return the number of worker threads
+	 */
+	public int getThreadCount() {
+		return workers.getMaximumPoolSize();
+	}
+
+	/**
+	 * Stops accepting new tasks. Already submitted tasks are still executed.
+	 */
+	public synchronized void shutdown() {
+		shutdown = true;
+		if (lanes.isEmpty()) {
+			workers.shutdown();
+		}
+	}
+
+	/**
+	 * @return the maximum number of tasks which may wait
+	 */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the number of tasks which have been submitted but not yet started
+	 */
+	public synchronized int getQueuedCount() {
+		return queued;
+	}
+
+	/**
+	 * @return the number of keys which currently have pending or running tasks
+	 */
+	public synchronized int getActiveLaneCount() {
+		return lanes.size();
+	}
+
+	private static class Lane {
+
+		private final Object key;
+		private final Queue<Task> tasks = new ArrayDeque<>();
+		private boolean scheduled;
+
+		private Lane(Object key) {
+			this.key = key;
+		}
+	}
+
+	private static class Task {
+
+		private final int priority;
+		private final Runnable runnable;
+
+		private Task(int priority, Runnable runnable) {
+			this.priority = priority;
+			this.runnable = runnable;
+		}
+	}
+
+	/**
+	 * A ready lane waiting for a worker; ordered by the priority of the lane's next task
+	 * and then by the time the lane became ready.
+	 */
+	private class LaneRunner implements Runnable, Comparable<LaneRunner> {
+
+		private final Lane lane;
+		private final int priority;
+		private final long sequence;
+
+		private LaneRunner(Lane lane, int priority, long sequence) {
+			this.lane = lane;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public void run() {
+			runNext(lane);
+		}
+
+		@Override
+		public int compareTo(LaneRunner other) {
+			int result = Integer.compare(priority, other.priority);
+			return result != 0 ? result : Long.compare(sequence, other.sequence);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This is a thread-safe set, which forgets its values after the given time window.
+ *
+ * The window is divided into a fixed number of time buckets. New values are added to the newest
+ * bucket and whole buckets are discarded as soon as they are older than the window. Therefore a
+ * value is remembered for at least the window and at most one bucket longer. The total number of
+ * values is bounded as well: if it is exceeded, the oldest bucket is discarded early.
+ */
+public class TimeBucketedSet<Value> {
+
+	private final long bucketMillis;
+	private final int bucketCount;
+	private final int maxSize;
+	private final Deque<Bucket<Value>> buckets = new ArrayDeque<>();
+	private int size;
+
+	public TimeBucketedSet(long windowMillis, int bucketCount, int maxSize) {
+		if (windowMillis < 1 || bucketCount < 1 || maxSize < 1) {
+			throw new IllegalArgumentException("windowMillis, bucketCount and maxSize must be positive");
+		}
+		this.bucketMillis = Math.max(1, windowMillis / bucketCount);
+		this.bucketCount = bucketCount;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Adds the given value, unless it has been added within the time window.
+	 *
+	 * @return true if the value was added, false if it was already contained
+	 */
+	public boolean add(Value value) {
+		return add(value, System.currentTimeMillis());
+	}
+
+	synchronized boolean add(Value value, long now) {
+		expire(now);
+		for (Bucket<Value> bucket : buckets) {
+			if (bucket.values.contains(value)) {
+				return false;
+			}
+		}
+		Bucket<Value> newest = buckets.peekLast();
+		if (newest == null || newest.start + bucketMillis <= now) {
+			newest = new Bucket<>(now - now % bucketMillis);
+			buckets.addLast(newest);
+		}
+		newest.values.add(value);
+		size++;
+		while (size > maxSize) {
+			size -= buckets.removeFirst().values.size();
+		}
+		return true;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	private void expire(long now) {
+		final long windowStart = now - bucketMillis * bucketCount;
+		while (!buckets.isEmpty() && buckets.peekFirst().start + bucketMillis <= windowStart) {
+			size -= buckets.removeFirst().values.size();
+		}
+	}
+
+	private static class Bucket<Value> {
+
+		private final long start;
+		private final Set<Value> values = new HashSet<>();
+
+		private Bucket(long start) {
+			this.start = start;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.octane;
+
+import com.hp.octane.integrations.dto.pipelines.PipelineNode;
+import com.microfocus.adm.almoctane.ciplugins.gocd.service.GoApiClient;
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This test ensures that {@link GoPluginServices} reuses pipeline structures while the configuration's eTag is unchanged.
+ */
+public class GoPluginServicesTest {
+
+	private static final String Config = "{\"name\":\"%s\",\"stages\":[{\"name\":\"%s\",\"jobs\":[{\"name\":\"test\"}]}]}";
+
+	/**
+	 * Serves the configuration with the current eTag and answers HTTP-304 if the request carries it.
+	 */
+	private static class ConfigServer extends GoApiClient {
+
+		private final List<String> requestedETags = new ArrayList<>();
+		private String eTag = "\"1\"";
+		private String stageName = "build";
+
+		private ConfigServer() throws Exception {
+			super(new URL("http://localhost:8153/go"), "user", "password");
+		}
+
+		@Override
+		public HttpResponse execute(HttpRequest request) {
+			final Header ifNoneMatch = request.getFirstHeader("If-None-Match");
+			requestedETags.add(ifNoneMatch != null ? ifNoneMatch.getValue() : null);
+			if (ifNoneMatch != null && eTag.equals(ifNoneMatch.getValue())) {
+				return new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_MODIFIED, "Not Modified");
+			}
+			final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+			response.addHeader("ETag", eTag);
+			response.setEntity(new StringEntity(String.format(Config, "memoized", stageName), StandardCharsets.UTF_8));
+			return response;
+		}
+	}
+
+	@Test
+	public void testStructureIsReusedWhileETagMatches() throws Exception {
+		final ConfigServer server = new ConfigServer();
+		final GoPluginServices services = new GoPluginServices();
+		final PipelineNode first = services.getPipeline(server, "memoized");
+		Assert.assertNotNull("structure", first);
+		Assert.assertEquals("stage", "build", first.getPhasesInternal().get(0).getJobs().get(0).getName());
+
+		final PipelineNode second = services.getPipeline(server, "memoized");
+		Assert.assertSame("unchanged configuration reuses the structure", first, second);
+		Assert.assertEquals("second request is conditional", "\"1\"", server.requestedETags.get(1));
+
+		server.eTag = "\"2\"";
+		server.stageName = "deploy";
+		final PipelineNode third = services.getPipeline(server, "memoized");
+		Assert.assertNotSame("changed configuration rebuilds the structure", first, third);
+		Assert.assertEquals("stage of the new configuration", "deploy", third.getPhasesInternal().get(0).getJobs().get(0).getName());
+		Assert.assertSame("new eTag is memoized", third, services.getPipeline(server, "memoized"));
+		Assert.assertEquals("last request carries the new eTag", "\"2\"", server.requestedETags.get(3));
+	}
+}
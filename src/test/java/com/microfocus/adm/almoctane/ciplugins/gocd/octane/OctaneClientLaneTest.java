@@ -0,0 +1,61 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.octane;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This test ensures that {@link OctaneClientLane} reports the delivery of its batches correctly.
+ */
+public class OctaneClientLaneTest {
+
+	@Test
+	public void testCompletionReportsDelivery() throws InterruptedException {
+		final AtomicInteger failures = new AtomicInteger();
+		final OctaneClientLane lane = new OctaneClientLane("test", (client, batch) -> failures.get());
+		final BlockingQueue<Boolean> completions = new ArrayBlockingQueue<>(10);
+
+		Assert.assertTrue("batch is queued", lane.dispatch(null, Collections.emptyList(), completions::add));
+		Assert.assertEquals("handed over batch is delivered", Boolean.TRUE, completions.poll(5, TimeUnit.SECONDS));
+
+		failures.set(1);
+		Assert.assertTrue("batch is queued", lane.dispatch(null, Collections.emptyList(), completions::add));
+		Assert.assertEquals("failed batch is undelivered", Boolean.FALSE, completions.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testBatchesDroppedByOpenBreakerAreUndelivered() throws InterruptedException {
+		final OctaneClientLane lane = new OctaneClientLane("test", (client, batch) -> 1);
+		final BlockingQueue<Boolean> completions = new ArrayBlockingQueue<>(10);
+		for (int i = 0; i < OctaneClientLane.FailureThreshold; i++) {
+			lane.dispatch(null, Collections.emptyList(), completions::add);
+			Assert.assertEquals("failed batch is undelivered", Boolean.FALSE, completions.poll(5, TimeUnit.SECONDS));
+		}
+
+		Assert.assertFalse("batch is dropped while the breaker is open", lane.dispatch(null, Collections.emptyList(), completions::add));
+		Assert.assertEquals("dropped batch is undelivered", Boolean.FALSE, completions.poll());
+		Assert.assertEquals("dropped batches", 1, lane.getDroppedCount());
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.microfocus.adm.almoctane.ciplugins.gocd.octane;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoArtifact;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * This test ensures that {@link TestReportFetcher} is working correctly.
+ */
+public class TestReportFetcherTest {
+
+	/**
+	 * Every job has three reports whose content is their name; later reports are downloaded faster.
+	 */
+	private static class Reports implements TestReportFetcher.ReportSource<String> {
+
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger maxRunning = new AtomicInteger();
+
+		@Override
+		public List<GoArtifact> list(String jobName) {
+			if ("broken".equals(jobName)) {
+				throw new IllegalStateException("listing failed");
+			}
+			final List<GoArtifact> reports = new ArrayList<>();
+			for (int i = 1; i <= 3; i++) {
+				GoArtifact report = new GoArtifact();
+				report.setName(jobName + "-" + i);
+				report.setUrl("http://localhost/" + jobName + "-" + i);
+				reports.add(report);
+			}
+			return reports;
+		}
+
+		@Override
+		public InputStream download(GoArtifact report) {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(10 * (4 - Integer.parseInt(report.getName().substring(report.getName().length() - 1))));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new ByteArrayInputStream(report.getName().getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void convert(GoArtifact report, InputStream content, Consumer<String> runs) {
+			try (InputStream stream = content) {
+				final byte[] buffer = new byte[64];
+				final int length = stream.read(buffer);
+				runs.accept(new String(buffer, 0, length, StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				Assert.fail(e.getMessage());
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	@Test
+	public void testRunsAreMergedInOrder() {
+		TestReportFetcher<String> fetcher = new TestReportFetcher<>(4, TestReportFetcher.DefaultMaxInFlightBytes);
+		Reports reports = new Reports();
+		List<String> runs = fetcher.fetch(Arrays.asList("a", "b"), reports);
+		fetcher.shutdown();
+		Assert.assertTrue("reports should be downloaded in parallel", reports.maxRunning.get() > 1);
+		Assert.assertEquals("runs should keep the order of jobs and reports", Arrays.asList("a-1", "a-2", "a-3", "b-1", "b-2", "b-3"), runs);
+	}
+
+	@Test
+	public void testInFlightBytesAreBounded() {
+		TestReportFetcher<String> fetcher = new TestReportFetcher<>(4, 1);
+		Reports reports = new Reports();
+		List<String> runs = fetcher.fetch(Arrays.asList("a", "b", "c"), reports);
+		fetcher.shutdown();
+		Assert.assertEquals("all reports should be fetched", 9, runs.size());
+		Assert.assertEquals("runs should keep their order", "c-3", runs.get(8));
+		Assert.assertEquals("reports should be fetched one by one", 1, reports.maxRunning.get());
+	}
+
+	@Test
+	public void testRunsOfFirstReportAreHandedOverWhileConverted() {
+		final CountDownLatch merged = new CountDownLatch(1);
+		final AtomicBoolean mergedWhileConverting = new AtomicBoolean();
+		TestReportFetcher<String> fetcher = new TestReportFetcher<>(2, TestReportFetcher.DefaultMaxInFlightBytes);
+		List<String> received = new ArrayList<>();
+		fetcher.fetch(Arrays.asList("a"), new Reports() {
+			@Override
+			public void convert(GoArtifact report, InputStream content, Consumer<String> runs) {
+				runs.accept(report.getName());
+				if (report.getName().equals("a-1")) {
+					try {
+						mergedWhileConverting.set(merged.await(5, TimeUnit.SECONDS));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}, run -> {
+			received.add(run);
+			merged.countDown();
+		});
+		fetcher.shutdown();
+		Assert.assertTrue("runs of the first report should not wait for its end", mergedWhileConverting.get());
+		Assert.assertEquals("runs should keep their order", Arrays.asList("a-1", "a-2", "a-3"), received);
+	}
+
+	@Test
+	public void testFailedListingSkipsOnlyItsJob() {
+		TestReportFetcher<String> fetcher = new TestReportFetcher<>(2, TestReportFetcher.DefaultMaxInFlightBytes);
+		List<String> runs = fetcher.fetch(Arrays.asList("a", "broken", "b"), new Reports());
+		fetcher.shutdown();
+		Assert.assertEquals("runs of the other jobs", Arrays.asList("a-1", "a-2", "a-3", "b-1", "b-2", "b-3"), runs);
+	}
+}
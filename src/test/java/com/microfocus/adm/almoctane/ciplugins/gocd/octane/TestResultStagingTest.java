@@ -0,0 +1,127 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.octane;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.SpoolBuffer;
+import com.microfocus.adm.almoctane.ciplugins.gocd.util.Streams;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This test ensures that {@link TestResultStaging} is working correctly.
+ */
+public class TestResultStagingTest {
+
+	private static SpoolBuffer spooled(byte[] content) {
+		SpoolBuffer buffer = new SpoolBuffer(SpoolBuffer.DefaultMemoryThreshold);
+		try {
+			buffer.write(content);
+			buffer.close();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return buffer;
+	}
+
+	@Test
+	public void testPullWaitsForPrefetch() throws IOException, InterruptedException {
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch blocker = new CountDownLatch(1);
+		TestResultStaging staging = new TestResultStaging(10, 1000, 60000, 1, (jobId, buildNumber) -> {
+			loads.incrementAndGet();
+			try {
+				blocker.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return spooled((jobId + "/" + buildNumber).getBytes(StandardCharsets.UTF_8));
+		});
+		Assert.assertTrue("prefetch should start", staging.prefetch("p", "1"));
+		Assert.assertFalse("prefetch is already running", staging.prefetch("p", "1"));
+		new Thread(blocker::countDown).start();
+		Assert.assertEquals("staged result", "p/1", Streams.readAsString(staging.get("p", "1")));
+		Assert.assertEquals("staged result is served again", "p/1", Streams.readAsString(staging.get("p", "1")));
+		Assert.assertEquals("results should be loaded once", 1, loads.get());
+		staging.shutdown();
+	}
+
+	@Test
+	public void testUnstagedResultsAreLoadedDirectly() {
+		TestResultStaging staging = new TestResultStaging(10, 1000, 60000, 1, (jobId, buildNumber) -> null);
+		Assert.assertNull("no test results", staging.get("p", "1"));
+		Assert.assertFalse("direct loads are not staged", staging.isStaged("p", "1"));
+		staging.shutdown();
+	}
+
+	@Test
+	public void testStagingIsBounded() throws InterruptedException {
+		TestResultStaging staging = new TestResultStaging(10, 250, 60000, 1, (jobId, buildNumber) -> spooled(new byte[100]));
+		for (int build = 1; build <= 4; build++) {
+			Assert.assertTrue("prefetch should start", staging.prefetch("p", String.valueOf(build)));
+			staging.get("p", String.valueOf(build));
+		}
+		Assert.assertFalse("oldest result should be evicted", staging.isStaged("p", "1"));
+		Assert.assertFalse("older result should be evicted", staging.isStaged("p", "2"));
+		Assert.assertTrue("newest result should be staged", staging.isStaged("p", "4"));
+		Assert.assertTrue("staged bytes should be bounded", staging.getStagedBytes() <= 250);
+		staging.shutdown();
+	}
+
+	@Test
+	public void testEvictedResultsAreDeleted() throws IOException {
+		final SpoolBuffer first = spooled(new byte[100]);
+		TestResultStaging staging = new TestResultStaging(1, 1000, 60000, 1, (jobId, buildNumber) -> "1".equals(buildNumber) ? first : spooled(new byte[100]));
+		Assert.assertTrue("prefetch should start", staging.prefetch("p", "1"));
+		Assert.assertNotNull("first result", staging.get("p", "1"));
+		Assert.assertTrue("prefetch should start", staging.prefetch("p", "2"));
+		Assert.assertNotNull("second result", staging.get("p", "2"));
+		Assert.assertFalse("first result should be evicted", staging.isStaged("p", "1"));
+		try {
+			first.openStream();
+			Assert.fail("evicted result should be deleted");
+		} catch (IOException e) {
+			// expected.
+		}
+		staging.shutdown();
+	}
+
+	@Test
+	public void testExpiredResultsAreRemoved() throws IOException, InterruptedException {
+		final SpoolBuffer first = spooled(new byte[100]);
+		TestResultStaging staging = new TestResultStaging(10, 1000, 1, 1, (jobId, buildNumber) -> "1".equals(buildNumber) ? first : spooled(new byte[100]));
+		Assert.assertTrue("prefetch should start", staging.prefetch("p", "1"));
+		Assert.assertNotNull("first result", staging.get("p", "1"));
+		Thread.sleep(10);
+		Assert.assertNotNull("other result", staging.get("p", "2"));
+		Assert.assertFalse("expired result should be removed", staging.isStaged("p", "1"));
+		Assert.assertEquals("expired result should not be counted", 0, staging.getStagedBytes());
+		try {
+			first.openStream();
+			Assert.fail("expired result should be deleted");
+		} catch (IOException e) {
+			// expected.
+		}
+		staging.shutdown();
+	}
+}
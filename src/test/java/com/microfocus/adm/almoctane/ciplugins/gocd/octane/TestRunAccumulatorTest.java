@@ -0,0 +1,116 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.octane;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This test ensures that {@link TestRunAccumulator} is working correctly.
+ */
+public class TestRunAccumulatorTest {
+
+	@Test
+	public void testIngestedStagesAreServedPerStageCounter() throws InterruptedException {
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch blocker = new CountDownLatch(1);
+		TestRunAccumulator<String> accumulator = new TestRunAccumulator<>(10, Long.MAX_VALUE, 1, run -> 1, (pipelineName, pipelineCounter, stageName, stageCounter) -> {
+			loads.incrementAndGet();
+			try {
+				blocker.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return Collections.singletonList(pipelineName + "/" + pipelineCounter + "/" + stageName + "/" + stageCounter);
+		});
+		Assert.assertTrue("ingestion should start", accumulator.ingest("p", 3, "build", 1));
+		Assert.assertTrue("ingestion should start", accumulator.ingest("p", 3, "test", 2));
+		new Thread(blocker::countDown).start();
+
+		Assert.assertEquals("waits for the running ingestion", Collections.singletonList("p/3/build/1"), accumulator.get("p", 3, "build", 1));
+		Assert.assertEquals("second stage", Collections.singletonList("p/3/test/2"), accumulator.get("p", 3, "test", 2));
+		Assert.assertNull("previous attempt of a rerun stage", accumulator.get("p", 3, "test", 1));
+		Assert.assertNull("stage not ingested", accumulator.get("p", 3, "deploy", 1));
+		Assert.assertEquals("each stage is loaded once", 2, loads.get());
+
+		accumulator.discard("p", 3);
+		Assert.assertNull("discarded run", accumulator.get("p", 3, "build", 1));
+		accumulator.shutdown();
+	}
+
+	@Test
+	public void testFailedIngestionIsNotServed() {
+		TestRunAccumulator<String> accumulator = new TestRunAccumulator<>(10, Long.MAX_VALUE, 1, run -> 1, (pipelineName, pipelineCounter, stageName, stageCounter) -> {
+			throw new IllegalStateException("server not reachable");
+		});
+		accumulator.ingest("p", 1, "build", 1);
+		Assert.assertNull("failed stage must be loaded again", accumulator.get("p", 1, "build", 1));
+		accumulator.shutdown();
+	}
+
+	@Test
+	public void testNumberOfRunsIsBounded() {
+		TestRunAccumulator<String> accumulator = new TestRunAccumulator<>(2, Long.MAX_VALUE, 1, run -> 1, (pipelineName, pipelineCounter, stageName, stageCounter) -> Arrays.asList("run"));
+		for (int counter = 1; counter <= 3; counter++) {
+			accumulator.ingest("p", counter, "build", 1);
+		}
+		List<String> newest = accumulator.get("p", 3, "build", 1);
+		Assert.assertEquals("newest run", Collections.singletonList("run"), newest);
+		Assert.assertNull("oldest run should be dropped", accumulator.get("p", 1, "build", 1));
+		accumulator.shutdown();
+	}
+
+	@Test
+	public void testSizeOfRunsIsBounded() {
+		TestRunAccumulator<String> accumulator = new TestRunAccumulator<>(10, 250, 1, String::length,
+			(pipelineName, pipelineCounter, stageName, stageCounter) -> Collections.singletonList(new String(new char[100])));
+		for (int counter = 1; counter <= 3; counter++) {
+			accumulator.ingest("p", counter, "build", 1);
+			Assert.assertNotNull("run " + counter + " should be ingested", accumulator.get("p", counter, "build", 1));
+		}
+		Assert.assertEquals("two runs fit into the bound", 200, accumulator.getKeptBytes());
+		Assert.assertNull("least recently used run should be dropped", accumulator.get("p", 1, "build", 1));
+		Assert.assertNotNull("newest run", accumulator.get("p", 3, "build", 1));
+
+		accumulator.discard("p", 3);
+		Assert.assertEquals("discarded runs are released", 100, accumulator.getKeptBytes());
+		accumulator.shutdown();
+	}
+
+	@Test
+	public void testOversizedRunIsKept() {
+		TestRunAccumulator<String> accumulator = new TestRunAccumulator<>(10, 50, 1, String::length,
+			(pipelineName, pipelineCounter, stageName, stageCounter) -> Collections.singletonList(new String(new char[100])));
+		accumulator.ingest("p", 1, "build", 1);
+		Assert.assertNotNull("oversized run should be served", accumulator.get("p", 1, "build", 1));
+		Assert.assertEquals("oversized run is kept", 100, accumulator.getKeptBytes());
+
+		accumulator.ingest("p", 2, "build", 1);
+		Assert.assertNotNull("newest run should be served", accumulator.get("p", 2, "build", 1));
+		Assert.assertNull("previous oversized run should be dropped", accumulator.get("p", 1, "build", 1));
+		Assert.assertEquals("only the newest run is kept", 100, accumulator.getKeptBytes());
+		accumulator.shutdown();
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.microfocus.adm.almoctane.ciplugins.gocd.octane;
+
+import com.hp.octane.integrations.dto.DTOFactory;
+import com.hp.octane.integrations.dto.tests.BuildContext;
+import com.hp.octane.integrations.dto.tests.TestRun;
+import com.hp.octane.integrations.dto.tests.TestRunError;
+import com.hp.octane.integrations.dto.tests.TestRunResult;
+import com.hp.octane.integrations.dto.tests.TestsResult;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This test ensures that {@link TestsResultWriter} writes the test results like the SDK.
+ */
+public class TestsResultWriterTest {
+
+	@Test
+	public void testWritingTestRuns() throws Exception {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final BuildContext buildContext = DTOFactory.getInstance().newDTO(BuildContext.class)
+			.setServerId("server").setJobId("pipeline1").setJobName("pipeline1").setBuildId("12").setBuildName("12");
+		try (TestsResultWriter writer = new TestsResultWriter(output, buildContext)) {
+			writer.accept(DTOFactory.getInstance().newDTO(TestRun.class)
+				.setModuleName("module").setPackageName("org.example").setClassName("ATest").setTestName("a")
+				.setDuration(1500).setStarted(1510064768720L).setResult(TestRunResult.PASSED));
+			writer.accept(DTOFactory.getInstance().newDTO(TestRun.class)
+				.setPackageName("org.example").setClassName("BTest").setTestName("b <\"&>")
+				.setDuration(10).setStarted(1510064768720L).setResult(TestRunResult.FAILED)
+				.setError(DTOFactory.getInstance().newDTO(TestRunError.class)
+					.setErrorType("java.lang.AssertionError").setErrorMessage("expected").setStackTrace("at org.example.BTest.b")));
+			Assert.assertEquals("number of test runs", 2, writer.getTestRunCount());
+		}
+
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(output.toByteArray()));
+		Element root = document.getDocumentElement();
+		Assert.assertEquals("root element", "test_result", root.getTagName());
+		Element build = (Element)root.getElementsByTagName("build").item(0);
+		Assert.assertEquals("server id", "server", build.getAttribute("server_id"));
+		Assert.assertEquals("build id", "12", build.getAttribute("build_id"));
+		Assert.assertFalse("missing values are omitted", build.hasAttribute("sub_type"));
+		NodeList testRuns = ((Element)root.getElementsByTagName("test_runs").item(0)).getElementsByTagName("test_run");
+		Assert.assertEquals("number of test runs", 2, testRuns.getLength());
+		Element first = (Element)testRuns.item(0);
+		Assert.assertEquals("module", "module", first.getAttribute("module"));
+		Assert.assertEquals("class", "ATest", first.getAttribute("class"));
+		Assert.assertEquals("duration", "1500", first.getAttribute("duration"));
+		Assert.assertEquals("status", "Passed", first.getAttribute("status"));
+		Assert.assertEquals("started", "1510064768720", first.getAttribute("started"));
+		Element second = (Element)testRuns.item(1);
+		Assert.assertEquals("escaped name", "b <\"&>", second.getAttribute("name"));
+		Assert.assertEquals("status", "Failed", second.getAttribute("status"));
+		Element error = (Element)second.getElementsByTagName("error").item(0);
+		Assert.assertEquals("error type", "java.lang.AssertionError", error.getAttribute("type"));
+		Assert.assertEquals("error message", "expected", error.getAttribute("message"));
+		Assert.assertEquals("stack trace", "at org.example.BTest.b", error.getTextContent());
+	}
+
+	@Test
+	public void testOutputMatchesTheSdk() throws Exception {
+		final BuildContext buildContext = DTOFactory.getInstance().newDTO(BuildContext.class)
+			.setServerId("server").setJobId("pipeline1").setJobName("pipeline1").setBuildId("12").setBuildName("");
+		final List<TestRun> testRuns = Arrays.asList(
+			DTOFactory.getInstance().newDTO(TestRun.class)
+				.setModuleName("module").setPackageName("org.example").setClassName("ATest").setTestName("a")
+				.setDuration(1500).setStarted(1510064768720L).setResult(TestRunResult.PASSED),
+			DTOFactory.getInstance().newDTO(TestRun.class)
+				.setPackageName("org.example").setClassName("BTest").setTestName("b <\"&>\u00e4")
+				.setDuration(10).setStarted(1510064768720L).setResult(TestRunResult.FAILED)
+				.setError(DTOFactory.getInstance().newDTO(TestRunError.class)
+					.setErrorType("java.lang.AssertionError").setErrorMessage("expected <1>")
+					.setStackTrace("java.lang.AssertionError: expected <1>\n\tat org.example.BTest.b(BTest.java:12)")),
+			DTOFactory.getInstance().newDTO(TestRun.class)
+				.setModuleName("").setPackageName("").setClassName("CTest").setTestName("c")
+				.setResult(TestRunResult.SKIPPED)
+				.setError(DTOFactory.getInstance().newDTO(TestRunError.class).setErrorType("skipped")));
+
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (TestsResultWriter writer = new TestsResultWriter(output, buildContext)) {
+			testRuns.forEach(writer);
+		}
+		final TestsResult testsResult = DTOFactory.getInstance().newDTO(TestsResult.class)
+			.setBuildContext(buildContext).setTestRuns(new ArrayList<>(testRuns));
+		final String sdkOutput = DTOFactory.getInstance().dtoToXml(testsResult);
+
+		assertSameElement("", parse(sdkOutput.getBytes(StandardCharsets.UTF_8)), parse(output.toByteArray()));
+	}
+
+	private static Element parse(byte[] content) throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(content)).getDocumentElement();
+	}
+
+	/**
+	 * Compares the names, attributes, text and children of the given elements; whitespace between elements is ignored.
+	 */
+	private static void assertSameElement(String path, Element expected, Element actual) {
+		path = path + "/" + expected.getTagName();
+		Assert.assertEquals("element at " + path, expected.getTagName(), actual.getTagName());
+		Assert.assertEquals("attributes of " + path, attributesOf(expected), attributesOf(actual));
+		Assert.assertEquals("text of " + path, textOf(expected), textOf(actual));
+		final List<Element> expectedChildren = childrenOf(expected);
+		final List<Element> actualChildren = childrenOf(actual);
+		Assert.assertEquals("number of children of " + path, expectedChildren.size(), actualChildren.size());
+		for (int i = 0; i < expectedChildren.size(); i++) {
+			assertSameElement(path + "[" + i + "]", expectedChildren.get(i), actualChildren.get(i));
+		}
+	}
+
+	private static Map<String, String> attributesOf(Element element) {
+		final Map<String, String> attributes = new TreeMap<>();
+		final NamedNodeMap nodes = element.getAttributes();
+		for (int i = 0; i < nodes.getLength(); i++) {
+			final Attr attribute = (Attr)nodes.item(i);
+			attributes.put(attribute.getName(), attribute.getValue());
+		}
+		return attributes;
+	}
+
+	private static String textOf(Element element) {
+		final StringBuilder text = new StringBuilder();
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+				text.append(child.getNodeValue());
+			}
+		}
+		return text.toString().trim().isEmpty() ? "" : text.toString();
+	}
+
+	private static List<Element> childrenOf(Element element) {
+		final List<Element> children = new ArrayList<>();
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				children.add((Element)child);
+			}
+		}
+		return children;
+	}
+}
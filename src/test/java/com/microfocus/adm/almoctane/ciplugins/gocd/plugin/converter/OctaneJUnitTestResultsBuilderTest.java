@@ -21,10 +21,14 @@
 package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter;
 
 import com.hp.octane.integrations.dto.tests.TestRun;
+import com.hp.octane.integrations.dto.tests.TestRunResult;
 import org.junit.Assert;
 import org.junit.Test;
 
 import javax.xml.bind.JAXBException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -43,4 +47,55 @@ public class OctaneJUnitTestResultsBuilderTest {
 		Assert.assertEquals("test name", "testComparison", testRun.getTestName());
 
 	}
+
+	@Test
+	public void testStreamingConversion() throws Exception {
+		final List<TestRun> tests = new ArrayList<>();
+		OctaneJUnitTestResultsBuilder.convert(getClass().getClassLoader().getResourceAsStream("junit.testResults.xml"), tests::add);
+		assertSameTestRuns(OctaneJUnitTestResultsBuilder.convert(getClass().getClassLoader().getResourceAsStream("junit.testResults.xml")), tests);
+	}
+
+	@Test
+	public void testStreamingConversionOfAggregatedReport() throws Exception {
+		final StringBuilder output = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			output.append("a line of captured output\n");
+		}
+		final String report = "<?xml version=\"1.0\"?><testsuites>"
+			+ "<testsuite name=\"first\" timestamp=\"2018-01-01T10:00:00\"><testcase name=\"a\" classname=\"org.example.ATest\" time=\"1.5\">"
+			+ "<system-out>" + output + "</system-out></testcase></testsuite>"
+			+ "<testsuite name=\"second\" timestamp=\"2018-01-01T11:00:00\"><testcase name=\"b\" classname=\"org.example.BTest\">"
+			+ "<failure message=\"expected\" type=\"java.lang.AssertionError\">at org.example.BTest.b</failure></testcase>"
+			+ "<testcase name=\"c\" classname=\"org.example.BTest\"><skipped/></testcase></testsuite></testsuites>";
+		final List<TestRun> tests = new ArrayList<>();
+		OctaneJUnitTestResultsBuilder.convert(new ByteArrayInputStream(report.getBytes(StandardCharsets.UTF_8)), tests::add);
+		Assert.assertEquals("number of tests", 3, tests.size());
+		Assert.assertEquals("module name", "first", tests.get(0).getModuleName());
+		Assert.assertEquals("duration", 1500, tests.get(0).getDuration());
+		Assert.assertEquals("test result", TestRunResult.PASSED, tests.get(0).getResult());
+		Assert.assertEquals("module name", "second", tests.get(1).getModuleName());
+		Assert.assertEquals("suites should keep their start time", 3600000, tests.get(1).getStarted() - tests.get(0).getStarted());
+		Assert.assertEquals("test result", TestRunResult.FAILED, tests.get(1).getResult());
+		Assert.assertEquals("error type", "java.lang.AssertionError", tests.get(1).getError().getErrorType());
+		Assert.assertEquals("stack trace", "at org.example.BTest.b", tests.get(1).getError().getStackTrace());
+		Assert.assertEquals("test result", TestRunResult.SKIPPED, tests.get(2).getResult());
+	}
+
+	private static void assertSameTestRuns(List<TestRun> expected, List<TestRun> actual) {
+		Assert.assertEquals("number of tests", expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			TestRun testRun = actual.get(i);
+			Assert.assertEquals("package name", expected.get(i).getPackageName(), testRun.getPackageName());
+			Assert.assertEquals("class name", expected.get(i).getClassName(), testRun.getClassName());
+			Assert.assertEquals("test name", expected.get(i).getTestName(), testRun.getTestName());
+			Assert.assertEquals("duration", expected.get(i).getDuration(), testRun.getDuration());
+			Assert.assertEquals("started", expected.get(i).getStarted(), testRun.getStarted());
+			Assert.assertEquals("test result", expected.get(i).getResult(), testRun.getResult());
+			Assert.assertEquals("error", expected.get(i).getError() != null, testRun.getError() != null);
+			if (testRun.getError() != null) {
+				Assert.assertEquals("error message", expected.get(i).getError().getErrorMessage(), testRun.getError().getErrorMessage());
+				Assert.assertEquals("stack trace", expected.get(i).getError().getStackTrace(), testRun.getError().getStackTrace());
+			}
+		}
+	}
 }
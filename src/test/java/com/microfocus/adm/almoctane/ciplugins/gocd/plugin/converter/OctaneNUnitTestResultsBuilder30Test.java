@@ -26,6 +26,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import javax.xml.bind.JAXBException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -64,4 +65,36 @@ public class OctaneNUnitTestResultsBuilder30Test {
 			"5200\n\n", testRun.getError().getErrorMessage());
 		Assert.assertEquals("error stackTrace", "   at MicroFocus.PT.Api.SystemTests.TestBase.GlAssert.Verify(GlExpectation expected, JournalTransaction actual)\n", testRun.getError().getStackTrace());
 	}
+
+	@Test
+	public void testStreamingConversion01() throws Exception {
+		final List<TestRun> tests = new ArrayList<>();
+		OctaneNUnit30TestResultsBuilder.convert(getClass().getClassLoader().getResourceAsStream("nunit30.testResults.xml"), tests::add);
+		assertSameTestRuns(OctaneNUnit30TestResultsBuilder.convert(getClass().getClassLoader().getResourceAsStream("nunit30.testResults.xml")), tests);
+	}
+
+	@Test
+	public void testStreamingConversion02() throws Exception {
+		final List<TestRun> tests = new ArrayList<>();
+		OctaneNUnit30TestResultsBuilder.convert(getClass().getClassLoader().getResourceAsStream("nunit30.failed.testResults.xml"), tests::add);
+		assertSameTestRuns(OctaneNUnit30TestResultsBuilder.convert(getClass().getClassLoader().getResourceAsStream("nunit30.failed.testResults.xml")), tests);
+	}
+
+	private static void assertSameTestRuns(List<TestRun> expected, List<TestRun> actual) {
+		Assert.assertEquals("number of tests", expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			TestRun testRun = actual.get(i);
+			Assert.assertEquals("package name", expected.get(i).getPackageName(), testRun.getPackageName());
+			Assert.assertEquals("class name", expected.get(i).getClassName(), testRun.getClassName());
+			Assert.assertEquals("test name", expected.get(i).getTestName(), testRun.getTestName());
+			Assert.assertEquals("duration", expected.get(i).getDuration(), testRun.getDuration());
+			Assert.assertEquals("started", expected.get(i).getStarted(), testRun.getStarted());
+			Assert.assertEquals("test result", expected.get(i).getResult(), testRun.getResult());
+			Assert.assertEquals("error", expected.get(i).getError() != null, testRun.getError() != null);
+			if (testRun.getError() != null) {
+				Assert.assertEquals("error message", expected.get(i).getError().getErrorMessage(), testRun.getError().getErrorMessage());
+				Assert.assertEquals("stack trace", expected.get(i).getError().getStackTrace(), testRun.getError().getStackTrace());
+			}
+		}
+	}
 }
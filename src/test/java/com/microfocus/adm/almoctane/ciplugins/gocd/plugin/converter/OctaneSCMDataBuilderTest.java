@@ -0,0 +1,59 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter;
+
+import com.google.gson.Gson;
+import com.hp.octane.integrations.dto.scm.SCMData;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoMaterial;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineInstance;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This test ensures that {@link OctaneSCMDataBuilder} is working correctly.
+ */
+public class OctaneSCMDataBuilderTest {
+
+	private static final String PipelineInstanceJson = "{\"name\":\"%s\",\"counter\":1,\"build_cause\":{\"material_revisions\":[{" +
+		"\"changed\":true," +
+		"\"material\":{\"type\":\"Git\",\"description\":\"URL: https://github.com/gocd/gocd, Branch: master\",\"fingerprint\":\"f6e7a3899c55e1682ffb\"}," +
+		"\"modifications\":[{\"revision\":\"c194b49db102\",\"user_name\":\"alice\",\"comment\":\"second\",\"modified_time\":1434957613000}," +
+		"{\"revision\":\"a1b2c3d4e5f6\",\"user_name\":\"bob\",\"comment\":\"first\",\"modified_time\":1434957600000}]}]}}";
+
+	@Test
+	public void testRepositoryIsParsedFromDescription() {
+		GoMaterial material = new GoMaterial();
+		material.setType("Git");
+		material.setDescription("URL: https://github.com/gocd/gocd, Branch: master");
+		Assert.assertEquals("url", "https://github.com/gocd/gocd", new OctaneSCMDataBuilder().retrieveFrom(material).getUrl());
+		Assert.assertEquals("branch", "master", new OctaneSCMDataBuilder().retrieveFrom(material).getBranch());
+	}
+
+	@Test
+	public void testFanOutPipelinesShareConvertedData() {
+		SCMData first = new OctaneSCMDataBuilder().retrieveFrom(new Gson().fromJson(String.format(PipelineInstanceJson, "first"), GoPipelineInstance.class));
+		SCMData second = new OctaneSCMDataBuilder().retrieveFrom(new Gson().fromJson(String.format(PipelineInstanceJson, "second"), GoPipelineInstance.class));
+		Assert.assertNotSame("each pipeline gets its own scm data", first, second);
+		Assert.assertEquals("number of commits", 2, first.getCommits().size());
+		Assert.assertSame("repository should be reused", first.getRepository(), second.getRepository());
+		Assert.assertSame("commits should be reused", first.getCommits(), second.getCommits());
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoBuildCause;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoMaterial;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoMaterialConfig;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoMaterialRevision;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoModification;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineConfig;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineInstance;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This test ensures that {@link PipelineDependencyGraph} is working correctly.
+ */
+public class PipelineDependencyGraphTest {
+
+	private static GoMaterialConfig material(String type, String attribute, String value) {
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put(attribute, value);
+		GoMaterialConfig material = new GoMaterialConfig();
+		material.setType(type);
+		material.setAttributes(attributes);
+		return material;
+	}
+
+	private static GoPipelineConfig config(GoMaterialConfig... materials) {
+		GoPipelineConfig config = new GoPipelineConfig();
+		config.setMaterials(Arrays.asList(materials));
+		return config;
+	}
+
+	private static StatusInfoWrapper notification(String upstreamRevision, boolean changed) {
+		return new StatusInfoWrapper("{\"pipeline\":{\"name\":\"downstream\",\"counter\":\"7\",\"build-cause\":["
+			+ "{\"material\":{\"git-configuration\":{\"url\":\"https://example.org/repo.git\"},\"type\":\"git\"},\"changed\":true,\"modifications\":[{\"revision\":\"abc123\"}]},"
+			+ "{\"material\":{\"pipeline-configuration\":{\"pipeline-name\":\"upstream\",\"stage-name\":\"deploy\"},\"type\":\"pipeline\"},"
+			+ "\"changed\":" + changed + ",\"modifications\":[{\"revision\":\"" + upstreamRevision + "\"}]}],"
+			+ "\"stage\":{\"name\":\"build\",\"counter\":\"1\",\"state\":\"Building\"}}}");
+	}
+
+	@Test
+	public void testDependenciesAreTakenFromTheConfiguration() {
+		PipelineDependencyGraph graph = new PipelineDependencyGraph(10);
+		Assert.assertTrue("unknown pipeline", graph.getUpstreamPipelines("downstream").isEmpty());
+
+		graph.update("downstream", config(material("git", "url", "https://example.org/repo.git"), material("dependency", "pipeline", "upstream")), "etag1");
+		Assert.assertEquals("upstream pipelines", Collections.singleton("upstream"), graph.getUpstreamPipelines("downstream"));
+
+		graph.update("downstream", config(), "etag1");
+		Assert.assertEquals("unchanged configuration is not processed again", Collections.singleton("upstream"), graph.getUpstreamPipelines("downstream"));
+
+		graph.update("downstream", config(material("dependency", "pipeline", "other")), "etag2");
+		Assert.assertEquals("changed configuration", Collections.singleton("other"), graph.getUpstreamPipelines("downstream"));
+	}
+
+	@Test
+	public void testUpstreamRunsAreTakenFromTheBuildCause() {
+		PipelineDependencyGraph graph = new PipelineDependencyGraph(10);
+		StatusInfoWrapper statusInfo = notification("upstream/4/deploy/1", true);
+		graph.recordRun("downstream", 7, statusInfo.getBuildCause());
+
+		Assert.assertEquals("upstream runs", Collections.singletonList(new PipelineDependencyGraph.Run("upstream", 4)), graph.getUpstreamRuns("downstream", 7));
+		Assert.assertTrue("unknown run", graph.getUpstreamRuns("downstream", 6).isEmpty());
+
+		graph.recordRun("downstream", 8, notification("upstream/5/deploy/1", false).getBuildCause());
+		Assert.assertTrue("unchanged upstream did not trigger the run", graph.getUpstreamRuns("downstream", 8).isEmpty());
+
+		graph.update("downstream", config(material("dependency", "pipeline", "other")), "etag");
+		graph.recordRun("downstream", 9, notification("upstream/6/deploy/1", true).getBuildCause());
+		Assert.assertTrue("undeclared upstream is ignored", graph.getUpstreamRuns("downstream", 9).isEmpty());
+	}
+
+	@Test
+	public void testUpstreamRunsAreTakenFromThePipelineInstance() {
+		GoModification modification = new GoModification();
+		modification.setRevision("upstream/4/deploy/1");
+		GoMaterial material = new GoMaterial();
+		material.setType("Pipeline");
+		GoMaterialRevision revision = new GoMaterialRevision();
+		revision.setMaterial(material);
+		revision.setChanged(true);
+		revision.setModifications(Collections.singletonList(modification));
+		GoBuildCause buildCause = new GoBuildCause();
+		buildCause.setMaterialRevision(Collections.singletonList(revision));
+		GoPipelineInstance instance = new GoPipelineInstance();
+		instance.setName("downstream");
+		instance.setCounter(7);
+		instance.setBuildCause(buildCause);
+
+		PipelineDependencyGraph graph = new PipelineDependencyGraph(10);
+		Assert.assertEquals("upstream runs", Collections.singletonList(new PipelineDependencyGraph.Run("upstream", 4)), graph.recordRun(instance));
+		Assert.assertEquals("remembered upstream runs", Collections.singletonList(new PipelineDependencyGraph.Run("upstream", 4)), graph.getUpstreamRuns("downstream", 7));
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This test ensures that {@link PipelineRunState} is working correctly.
+ */
+public class PipelineRunStateTest {
+
+	private static StatusInfoWrapper statusOf(String stage, int stageCounter, String state, String createTime) {
+		return new StatusInfoWrapper("{\"pipeline\":{\"name\":\"p\",\"counter\":\"7\",\"stage\":{\"name\":\"" + stage
+			+ "\",\"counter\":\"" + stageCounter + "\",\"state\":\"" + state + "\",\"create-time\":\"" + createTime + "\"}}}");
+	}
+
+	@Test
+	public void testStartTimeIsTakenFromFirstStage() {
+		PipelineRunState runState = new PipelineRunState();
+		Assert.assertEquals("start is unknown", StatusInfoWrapper.UnknownTime, runState.getStartTime());
+		runState.update(statusOf("build", 1, "Building", "2017-11-07T14:26:08.720+0000"), true);
+		runState.update(statusOf("build", 1, "Passed", "2017-11-07T14:26:08.720+0000"), true);
+		runState.update(statusOf("deploy", 1, "Building", "2017-11-07T14:30:00.000+0000"), false);
+		Assert.assertEquals("start time", 1510064768720L, runState.getStartTime());
+	}
+
+	@Test
+	public void testRerunOfFirstStageKeepsStartTime() {
+		PipelineRunState runState = new PipelineRunState();
+		runState.update(statusOf("build", 1, "Building", "2017-11-07T14:26:08.720+0000"), true);
+		runState.update(statusOf("build", 2, "Building", "2017-11-07T15:00:00.000+0000"), true);
+		Assert.assertEquals("start time", 1510064768720L, runState.getStartTime());
+	}
+
+	@Test
+	public void testLaterStagesDoNotSetStartTime() {
+		PipelineRunState runState = new PipelineRunState();
+		runState.update(statusOf("deploy", 1, "Building", "2017-11-07T14:30:00.000+0000"), false);
+		Assert.assertEquals("start is unknown if the first stage has been missed", StatusInfoWrapper.UnknownTime, runState.getStartTime());
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This test ensures that {@link ReportFormat} identifies test reports correctly.
+ */
+public class ReportFormatTest {
+
+	private static ReportFormat sniff(String xml) {
+		return ReportFormat.sniff(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static InputStream prefix(String xml) {
+		return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testSniffingReportResources() {
+		Assert.assertEquals("junit", ReportFormat.JUnit, ReportFormat.sniff(getClass().getClassLoader().getResourceAsStream("junit.testResults.xml")));
+		Assert.assertEquals("nunit 2.5", ReportFormat.NUnit25, ReportFormat.sniff(getClass().getClassLoader().getResourceAsStream("nunit25.testResults.xml")));
+		Assert.assertEquals("nunit 3.0", ReportFormat.NUnit30, ReportFormat.sniff(getClass().getClassLoader().getResourceAsStream("nunit30.testResults.xml")));
+	}
+
+	@Test
+	public void testSniffingUnknownFiles() {
+		Assert.assertEquals("junit aggregate", ReportFormat.JUnit, sniff("<?xml version=\"1.0\"?><!-- report --><testsuites><testsuite/></testsuites>"));
+		Assert.assertNull("other xml", sniff("<project><modelVersion>4.0.0</modelVersion></project>"));
+		Assert.assertNull("no xml", sniff("this is plain text"));
+		Assert.assertNull("external entities are not resolved", sniff("<!DOCTYPE x [<!ENTITY e SYSTEM \"file:///etc/passwd\">]><x>&e;</x>"));
+	}
+
+	@Test
+	public void testDecidingOnPrefix() {
+		Assert.assertTrue("junit prefix", ReportFormat.mayBeReport(prefix("<?xml version=\"1.0\"?><testsuite name=\"a\"><testcase name=")));
+		Assert.assertFalse("other xml prefix", ReportFormat.mayBeReport(prefix("<?xml version=\"1.0\"?><dump><row id=\"1\">")));
+		Assert.assertTrue("prefix ending before the root element", ReportFormat.mayBeReport(prefix("<?xml version=\"1.0\"?><!-- a very long comm")));
+	}
+
+	@Test
+	public void testStreamCanBeParsedAfterSniffing() throws Exception {
+		try (InputStream report = new BufferedInputStream(getClass().getClassLoader().getResourceAsStream("nunit30.testResults.xml"))) {
+			report.mark(ReportFormat.SniffLimit);
+			Assert.assertEquals("nunit 3.0", ReportFormat.NUnit30, ReportFormat.sniff(report));
+			report.reset();
+			Assert.assertEquals("number of tests", 27, OctaneNUnit30TestResultsBuilder.convert(report).size());
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter;
+
+import com.google.gson.JsonParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * This test ensures that {@link StatusInfoWrapper} decodes stage-status notifications correctly.
+ */
+public class StatusInfoWrapperTest {
+
+	private static final String Notification = "{\"pipeline\":{\"name\":\"pipeline1\",\"counter\":\"12\",\"group\":\"defaultGroup\","
+		+ "\"build-cause\":[{\"material\":{\"git-configuration\":{\"shallow-clone\":false,\"branch\":\"master\",\"url\":\"https://example.org/repo.git\"},\"type\":\"git\"},"
+		+ "\"changed\":true,\"modifications\":[{\"revision\":\"abc123\",\"modified-time\":\"2017-11-07T14:20:00.000Z\",\"data\":{}}]},"
+		+ "{\"material\":{\"pipeline-configuration\":{\"pipeline-name\":\"upstream\",\"stage-name\":\"deploy\"},\"type\":\"pipeline\"},\"changed\":false,\"modifications\":[{\"revision\":\"upstream/4/deploy/1\"}]}],"
+		+ "\"stage\":{\"name\":\"build\",\"counter\":\"2\",\"approval-type\":\"success\",\"approved-by\":\"changes\","
+		+ "\"state\":\"Passed\",\"result\":\"Passed\",\"create-time\":\"2017-11-07T14:26:08.720+0000\","
+		+ "\"last-transition-time\":\"2017-11-07T14:27:08.720+0000\","
+		+ "\"jobs\":[{\"name\":\"test\",\"schedule-time\":\"2017-11-07T14:26:10.000+0000\",\"complete-time\":\"2017-11-07T14:27:00.000+0000\","
+		+ "\"state\":\"Completed\",\"result\":\"Passed\",\"agent-uuid\":\"uuid\"}]}}}";
+
+	@Test
+	public void testDecodingNotification() {
+		StatusInfoWrapper statusInfo = new StatusInfoWrapper(Notification);
+		Assert.assertEquals("pipeline name", "pipeline1", statusInfo.getPipelineName());
+		Assert.assertEquals("pipeline counter", 12, statusInfo.getPipelineCounter());
+		Assert.assertEquals("stage name", "build", statusInfo.getStageName());
+		Assert.assertEquals("stage counter", 2, statusInfo.getStageCounter());
+		Assert.assertEquals("stage status", OctaneCIEventBuilder.PipelineStageState.Passed, statusInfo.getStageStatus());
+		Assert.assertEquals("create time", 1510064768720L, statusInfo.getStageCreateTime());
+		Assert.assertEquals("duration", 60000L, statusInfo.getStageLastTransitionTime() - statusInfo.getStageCreateTime());
+	}
+
+	@Test
+	public void testDecodingJobsAndBuildCause() {
+		StatusInfoWrapper statusInfo = new StatusInfoWrapper(Notification);
+		Assert.assertTrue("jobs should be present", statusInfo.hasJobs());
+		Assert.assertEquals("number of jobs", 1, statusInfo.getJobs().size());
+		StatusInfoWrapper.Job job = statusInfo.getJobs().get(0);
+		Assert.assertEquals("job name", "test", job.getName());
+		Assert.assertEquals("job result", "Passed", job.getResult());
+		Assert.assertEquals("job duration", 50000L, job.getCompleteTime() - job.getScheduleTime());
+
+		Assert.assertTrue("build cause should be present", statusInfo.hasBuildCause());
+		Assert.assertEquals("number of material revisions", 2, statusInfo.getBuildCause().size());
+		StatusInfoWrapper.MaterialRevision git = statusInfo.getBuildCause().get(0);
+		Assert.assertEquals("material type", "git", git.getType());
+		Assert.assertTrue("material should be changed", git.isChanged());
+		Assert.assertEquals("material url", "https://example.org/repo.git", git.getConfiguration().get("url"));
+		Assert.assertEquals("material branch", "master", git.getConfiguration().get("branch"));
+		Assert.assertEquals("revisions", Collections.singletonList("abc123"), git.getRevisions());
+		StatusInfoWrapper.MaterialRevision upstream = statusInfo.getBuildCause().get(1);
+		Assert.assertEquals("upstream pipeline", "upstream", upstream.getConfiguration().get("pipeline-name"));
+		Assert.assertEquals("upstream revision", Collections.singletonList("upstream/4/deploy/1"), upstream.getRevisions());
+	}
+
+	@Test
+	public void testDecodingNotificationOfNewerApiVersions() {
+		// later versions add properties like the label, the previous stage and the assign time, and use Zulu times.
+		StatusInfoWrapper statusInfo = new StatusInfoWrapper("{\"pipeline\":{\"name\":\"pipeline1\",\"counter\":\"7\",\"label\":\"1.0.7\",\"group\":\"defaultGroup\","
+			+ "\"build-cause\":[{\"material\":{\"git-configuration\":{\"shallow-clone\":false,\"branch\":\"main\",\"url\":\"https://example.org/repo.git\"},\"type\":\"git\"},"
+			+ "\"changed\":true,\"modifications\":[{\"revision\":\"def456\",\"modified-time\":\"2019-04-06T12:50:03.317Z\",\"data\":{}}]}],"
+			+ "\"stage\":{\"name\":\"test\",\"counter\":\"1\",\"approval-type\":\"success\",\"approved-by\":\"changes\","
+			+ "\"previous-stage-name\":\"build\",\"previous-stage-counter\":1,\"state\":\"Failed\",\"result\":\"Failed\","
+			+ "\"create-time\":\"2019-07-13T19:43:37.100Z\",\"last-transition-time\":\"2019-07-13T19:45:37.100Z\","
+			+ "\"jobs\":[{\"name\":\"unit\",\"schedule-time\":\"2019-07-13T19:43:38.100Z\",\"assign-time\":\"2019-07-13T19:43:40.100Z\","
+			+ "\"complete-time\":\"2019-07-13T19:45:30.100Z\",\"state\":\"Completed\",\"result\":\"Failed\",\"agent-uuid\":\"uuid\"}]}}}");
+		Assert.assertEquals("pipeline counter", 7, statusInfo.getPipelineCounter());
+		Assert.assertEquals("stage name", "test", statusInfo.getStageName());
+		Assert.assertEquals("stage counter", 1, statusInfo.getStageCounter());
+		Assert.assertEquals("stage status", OctaneCIEventBuilder.PipelineStageState.Failed, statusInfo.getStageStatus());
+		Assert.assertEquals("stage duration", 120000L, statusInfo.getStageLastTransitionTime() - statusInfo.getStageCreateTime());
+		Assert.assertEquals("job duration", 112000L, statusInfo.getJobs().get(0).getCompleteTime() - statusInfo.getJobs().get(0).getScheduleTime());
+		Assert.assertEquals("revisions", Collections.singletonList("def456"), statusInfo.getBuildCause().get(0).getRevisions());
+	}
+
+	@Test
+	public void testDecodingIncompleteNotification() {
+		StatusInfoWrapper statusInfo = new StatusInfoWrapper("{\"pipeline\":{\"name\":\"pipeline1\",\"counter\":3,\"stage\":{\"state\":\"Unknown\"}}}");
+		Assert.assertEquals("pipeline counter", 3, statusInfo.getPipelineCounter());
+		Assert.assertNull("stage name", statusInfo.getStageName());
+		Assert.assertNull("unknown stage status", statusInfo.getStageStatus());
+		Assert.assertEquals("raw stage state", "Unknown", statusInfo.getStageState());
+		Assert.assertEquals("create time", StatusInfoWrapper.UnknownTime, statusInfo.getStageCreateTime());
+		Assert.assertFalse("jobs should be missing", statusInfo.hasJobs());
+		Assert.assertFalse("build cause should be missing", statusInfo.hasBuildCause());
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testDecodingMalformedNotification() {
+		new StatusInfoWrapper("{\"pipeline\":");
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoJobInstance;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoLinks;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineHistory;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineInstance;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoStageInstance;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This test ensures that {@link HistoryBackfill} and {@link BackfillCheckpoints} are working correctly.
+ */
+public class HistoryBackfillTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static GoPipelineInstance run(int counter, String result) {
+		return run("p", counter, result);
+	}
+
+	private static GoPipelineInstance run(String pipelineName, int counter, String result) {
+		GoJobInstance job = new GoJobInstance();
+		job.setScheduledDate(0);
+		GoStageInstance stage = new GoStageInstance();
+		stage.setResult(result);
+		stage.setJobs(Collections.singletonList(job));
+		GoPipelineInstance instance = new GoPipelineInstance();
+		instance.setName(pipelineName);
+		instance.setCounter(counter);
+		instance.setStages(Collections.singletonList(stage));
+		return instance;
+	}
+
+	private static GoPipelineHistory page(String next, GoPipelineInstance... instances) {
+		GoPipelineHistory history = new GoPipelineHistory();
+		history.setPipelines(Arrays.asList(instances));
+		if (next != null) {
+			GoLinks.Link link = new GoLinks.Link();
+			link.setHref(next);
+			GoLinks links = new GoLinks();
+			links.setNext(link);
+			history.setLinks(links);
+		}
+		return history;
+	}
+
+	private static Map<String, GoPipelineHistory> history() {
+		Map<String, GoPipelineHistory> pages = new HashMap<>();
+		pages.put(null, page("page2", run(7, "Unknown"), run(6, "Passed"), run(5, "Failed")));
+		pages.put("page2", page("page3", run(4, "Passed"), run(3, "Passed"), run(2, "Passed")));
+		pages.put("page3", page(null, run(1, "Passed")));
+		return pages;
+	}
+
+	@Test
+	public void testBackfillIsLimitedToTheRequestedBuilds() throws IOException {
+		BackfillCheckpoints checkpoints = new BackfillCheckpoints(new File(folder.newFolder(), "checkpoints.json"));
+		List<Integer> reported = new ArrayList<>();
+		HistoryBackfill backfill = new HistoryBackfill(() -> null, checkpoints, 2, instance -> reported.add(instance.getCounter()));
+		backfill.backfill("p", 5, history()::get);
+		backfill.shutdown();
+
+		Assert.assertEquals("finished runs of the requested builds, oldest first", Arrays.asList(3, 4, 5, 6), reported);
+		Assert.assertTrue("backfill should be finished", checkpoints.get("p").isFinished());
+		Assert.assertEquals("last reported run", 6, checkpoints.get("p").getLastReported());
+		Assert.assertTrue("no unfinished backfills", checkpoints.getUnfinished().isEmpty());
+	}
+
+	@Test
+	public void testBackfillResumesAtCheckpoint() throws IOException {
+		File file = new File(folder.newFolder(), "checkpoints.json");
+		List<Integer> reported = new ArrayList<>();
+		HistoryBackfill backfill = new HistoryBackfill(() -> null, new BackfillCheckpoints(file), 2, instance -> {
+			if (instance.getCounter() == 4) { // e.g. the plugin is not configured yet.
+				return false;
+			}
+			return reported.add(instance.getCounter());
+		});
+		backfill.backfill("p", 100, history()::get);
+		backfill.shutdown();
+		Assert.assertEquals("runs before the failure", Arrays.asList(1, 2, 3), reported);
+
+		BackfillCheckpoints reloaded = new BackfillCheckpoints(file);
+		Assert.assertEquals("unfinished backfills", Collections.singletonList("p"), reloaded.getUnfinished());
+		Assert.assertEquals("last reported run", 3, reloaded.get("p").getLastReported());
+
+		reported.clear();
+		Map<String, GoPipelineHistory> pages = history();
+		pages.put(null, page("page1", run(8, "Passed"))); // a run started after the backfill is reported live.
+		pages.put("page1", history().get(null));
+		backfill = new HistoryBackfill(() -> null, reloaded, 2, instance -> reported.add(instance.getCounter()));
+		backfill.backfill("p", 100, pages::get);
+		backfill.shutdown();
+		Assert.assertEquals("remaining runs", Arrays.asList(4, 5, 6), reported);
+		Assert.assertTrue("backfill should be finished", reloaded.get("p").isFinished());
+	}
+
+	@Test
+	public void testPipelinesAreBackfilledConcurrentlyAndRunsSequentially() throws IOException, InterruptedException {
+		final int pipelines = 6;
+		final int runs = 4;
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final Map<String, AtomicInteger> runningPerPipeline = new ConcurrentHashMap<>();
+		final AtomicInteger maxRunningPerPipeline = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(pipelines * runs);
+		HistoryBackfill backfill = new HistoryBackfill((pipelineName, pageHref) -> {
+			List<GoPipelineInstance> instances = new ArrayList<>();
+			for (int counter = runs; counter > 0; counter--) {
+				instances.add(run(pipelineName, counter, "Passed"));
+			}
+			return page(null, instances.toArray(new GoPipelineInstance[0]));
+		}, new BackfillCheckpoints(new File(folder.newFolder(), "checkpoints.json")), 3, instance -> {
+			AtomicInteger pipelineRunning = runningPerPipeline.computeIfAbsent(instance.getName(), name -> new AtomicInteger());
+			maxRunningPerPipeline.accumulateAndGet(pipelineRunning.incrementAndGet(), Math::max);
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			running.decrementAndGet();
+			pipelineRunning.decrementAndGet();
+			done.countDown();
+			return true;
+		});
+		for (int i = 0; i < pipelines; i++) {
+			backfill.request("p" + i, runs);
+		}
+		Assert.assertTrue("all runs should be reported", done.await(10, TimeUnit.SECONDS));
+		backfill.shutdown();
+		Assert.assertTrue("pipelines should be backfilled concurrently", maxRunning.get() > 1);
+		Assert.assertTrue("concurrency should be capped", maxRunning.get() <= 3);
+		Assert.assertEquals("runs of a pipeline are reported one after the other", 1, maxRunningPerPipeline.get());
+	}
+
+	@Test
+	public void testOnlyUnknownPipelinesAreRequested() throws IOException, InterruptedException {
+		BackfillCheckpoints checkpoints = new BackfillCheckpoints(new File(folder.newFolder(), "checkpoints.json"));
+		checkpoints.put("known", new BackfillCheckpoints.Checkpoint(5)); // e.g. an interrupted backfill.
+		final Map<String, AtomicInteger> requestedPages = new ConcurrentHashMap<>();
+		final CountDownLatch done = new CountDownLatch(1);
+		HistoryBackfill backfill = new HistoryBackfill((pipelineName, pageHref) -> {
+			requestedPages.computeIfAbsent(pipelineName, name -> new AtomicInteger()).incrementAndGet();
+			return page(null, run(pipelineName, 1, "Passed"));
+		}, checkpoints, 2, instance -> {
+			done.countDown();
+			return true;
+		});
+		backfill.requestIfUnknown("known", 5);
+		backfill.requestIfUnknown("new", 5);
+		Assert.assertTrue("new pipeline should be backfilled", done.await(5, TimeUnit.SECONDS));
+		backfill.shutdown();
+		Assert.assertNull("known pipeline should not be scanned again", requestedPages.get("known"));
+		Assert.assertNotNull("new pipeline has a checkpoint", checkpoints.get("new"));
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * This test ensures that {@link NotificationJournal} is working correctly.
+ */
+public class NotificationJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testUnfinishedEntriesAreRecoveredInOrder() throws IOException {
+		File directory = folder.newFolder("journal");
+		NotificationJournal journal = new NotificationJournal(directory);
+		long first = journal.append("{\"pipeline\":{\"name\":\"a\"}}");
+		journal.append("{\"pipeline\":{\"name\":\"b\"}}");
+		journal.append("line one\nline two");
+		journal.markDone(first);
+		Assert.assertEquals("pending entries", 2, journal.getPendingCount());
+		journal.close();
+
+		NotificationJournal reopened = new NotificationJournal(directory);
+		List<NotificationJournal.Entry> entries = reopened.getRecoveredEntries();
+		Assert.assertEquals("number of recovered entries", 2, entries.size());
+		Assert.assertEquals("first recovered entry", "{\"pipeline\":{\"name\":\"b\"}}", entries.get(0).getBody());
+		Assert.assertEquals("second recovered entry", "line one\nline two", entries.get(1).getBody());
+		for (NotificationJournal.Entry entry : entries) {
+			reopened.markDone(entry.getId());
+		}
+		reopened.close();
+
+		Assert.assertTrue("nothing recovered after all entries are done", new NotificationJournal(directory).getRecoveredEntries().isEmpty());
+	}
+
+	@Test
+	public void testIncompleteRecordIsIgnored() throws IOException {
+		File directory = folder.newFolder("journal");
+		NotificationJournal journal = new NotificationJournal(directory);
+		journal.append("complete");
+		journal.close();
+		File[] segments = directory.listFiles();
+		Assert.assertEquals("number of segments", 1, segments.length);
+		try (FileOutputStream out = new FileOutputStream(segments[0], true)) { // simulates a crash in the middle of a write.
+			out.write("A 99 not-base64!".getBytes(StandardCharsets.UTF_8));
+		}
+
+		NotificationJournal reopened = new NotificationJournal(directory);
+		List<NotificationJournal.Entry> entries = reopened.getRecoveredEntries();
+		Assert.assertEquals("number of recovered entries", 1, entries.size());
+		Assert.assertEquals("recovered entry", "complete", entries.get(0).getBody());
+		reopened.markDone(entries.get(0).getId()); // the marker must not be glued to the incomplete record.
+		reopened.close();
+		Assert.assertTrue("nothing recovered after the entry is done", new NotificationJournal(directory).getRecoveredEntries().isEmpty());
+	}
+
+	@Test
+	public void testMarkersSurviveDeletionOfNewerSegments() throws IOException {
+		File directory = folder.newFolder("journal");
+		NotificationJournal journal = new NotificationJournal(directory, 64);
+		long old = journal.append("an old notification");
+		long done = journal.append("a notification which is done");
+		for (int i = 0; i < 5; i++) {
+			journal.markDone(journal.append("notification number " + i));
+		}
+		journal.markDone(done); // its marker goes into the first segment, not into a later one which gets deleted.
+		journal.close();
+
+		List<NotificationJournal.Entry> entries = new NotificationJournal(directory, 64).getRecoveredEntries();
+		Assert.assertEquals("number of recovered entries", 1, entries.size());
+		Assert.assertEquals("recovered entry", old, entries.get(0).getId());
+	}
+
+	@Test
+	public void testIdsContinueAfterRecovery() throws IOException {
+		File directory = folder.newFolder("journal");
+		NotificationJournal journal = new NotificationJournal(directory);
+		long first = journal.append("first");
+		journal.markDone(journal.append("second"));
+		journal.close();
+
+		NotificationJournal reopened = new NotificationJournal(directory);
+		Assert.assertEquals("recovered entry keeps its id", first, reopened.getRecoveredEntries().get(0).getId());
+		long third = reopened.append("third");
+		Assert.assertTrue("ids are not reused", third > first + 1);
+		reopened.markDone(third);
+		reopened.close();
+
+		NotificationJournal again = new NotificationJournal(directory);
+		List<NotificationJournal.Entry> entries = again.getRecoveredEntries();
+		Assert.assertEquals("the marker of the new entry does not hide the recovered one", 1, entries.size());
+		Assert.assertEquals("recovered entry", "first", entries.get(0).getBody());
+		again.close();
+	}
+
+	@Test
+	public void testRecoveryDoesNotDuplicateEntries() throws IOException {
+		File directory = folder.newFolder("journal");
+		NotificationJournal journal = new NotificationJournal(directory, 64);
+		for (int i = 0; i < 4; i++) {
+			journal.append("notification number " + i);
+		}
+		journal.close();
+		new NotificationJournal(directory, 64).close(); // recovering twice must not copy the entries.
+
+		Assert.assertEquals("number of recovered entries", 4, new NotificationJournal(directory, 64).getRecoveredEntries().size());
+	}
+
+	@Test
+	public void testDoneSegmentsAreDeleted() throws IOException {
+		File directory = folder.newFolder("journal");
+		NotificationJournal journal = new NotificationJournal(directory, 64);
+		for (int i = 0; i < 10; i++) {
+			journal.markDone(journal.append("notification number " + i));
+		}
+		Assert.assertEquals("pending entries", 0, journal.getPendingCount());
+		Assert.assertEquals("only the current segment remains", 1, directory.listFiles().length);
+		journal.close();
+	}
+
+	@Test
+	public void testStaleEntriesAreTakenAgain() throws IOException {
+		File directory = folder.newFolder("journal");
+		NotificationJournal journal = new NotificationJournal(directory);
+		long first = journal.append("first");
+		journal.append("second");
+		journal.markDone(first);
+		List<NotificationJournal.Entry> stale = journal.takeStaleEntries(0);
+		Assert.assertEquals("pending entries are stale", 1, stale.size());
+		Assert.assertEquals("stale entry", "second", stale.get(0).getBody());
+		Assert.assertTrue("taken entries are not stale again right away", journal.takeStaleEntries(60 * 1000).isEmpty());
+		journal.markDone(stale.get(0).getId());
+		Assert.assertTrue("done entries are not stale", journal.takeStaleEntries(0).isEmpty());
+		journal.close();
+	}
+
+	@Test
+	public void testEntriesAreGivenUp() throws IOException {
+		File directory = folder.newFolder("journal");
+		NotificationJournal journal = new NotificationJournal(directory, 64);
+		for (int i = 0; i < 10; i++) {
+			journal.append("notification number " + i);
+		}
+		Assert.assertEquals("young entries of few segments are kept", 0, journal.giveUp(60 * 1000, 10));
+		final int segments = directory.listFiles().length;
+		Assert.assertTrue("entries of the oldest segments are given up", journal.giveUp(60 * 1000, 2) > 0);
+		Assert.assertEquals("only two older segments remain", 3, directory.listFiles().length);
+		Assert.assertTrue("there were more segments before", segments > 3);
+		Assert.assertEquals("old entries are given up", journal.getPendingCount(), journal.giveUp(0, 10));
+		Assert.assertEquals("pending entries", 0, journal.getPendingCount());
+		Assert.assertEquals("only the current segment remains", 1, directory.listFiles().length);
+		journal.close();
+
+		Assert.assertTrue("nothing recovered after giving up", new NotificationJournal(directory).getRecoveredEntries().isEmpty());
+	}
+}
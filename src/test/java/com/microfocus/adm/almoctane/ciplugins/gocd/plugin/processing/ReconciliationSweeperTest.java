@@ -0,0 +1,129 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing;
+
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoJobInstance;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoJobStateTransition;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineInstance;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoStageInstance;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This test ensures that {@link ReconciliationSweeper} and {@link ReconciliationCursors} are working correctly.
+ */
+public class ReconciliationSweeperTest {
+
+	private static final long Now = 100 * ReconciliationSweeper.GraceMillis;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static GoPipelineInstance run(int counter, long completed, String... stageResults) {
+		List<GoStageInstance> stages = new ArrayList<>();
+		for (String result : stageResults) {
+			GoJobStateTransition transition = new GoJobStateTransition();
+			transition.setState("Completed");
+			transition.setStateChangeTime(completed);
+			GoJobInstance job = new GoJobInstance();
+			job.setScheduledDate(0); // scheduled long ago, but completed at the given time.
+			job.setJobStateTransitions(Arrays.asList(transition));
+			GoStageInstance stage = new GoStageInstance();
+			stage.setResult(result);
+			stage.setJobs(Arrays.asList(job));
+			stages.add(stage);
+		}
+		GoPipelineInstance instance = new GoPipelineInstance();
+		instance.setName("p");
+		instance.setCounter(counter);
+		instance.setStages(stages);
+		return instance;
+	}
+
+	@Test
+	public void testRunIsFinished() {
+		Assert.assertTrue("last stage passed", ReconciliationSweeper.isFinished(run(1, 0, "Passed", "Passed")));
+		Assert.assertTrue("a stage failed", ReconciliationSweeper.isFinished(run(1, 0, "Failed", "Unknown")));
+		Assert.assertFalse("last stage still running", ReconciliationSweeper.isFinished(run(1, 0, "Passed", "Unknown")));
+		Assert.assertEquals("completion time", Long.valueOf(Now - 1000), ReconciliationSweeper.getCompletionTime(run(1, Now - 1000, "Passed")));
+	}
+
+	@Test
+	public void testMissedRunsAreReported() throws IOException {
+		File file = new File(folder.newFolder(), "cursors.json");
+		ReconciliationCursors cursors = new ReconciliationCursors(file);
+		List<Integer> reported = new ArrayList<>();
+		ReconciliationSweeper sweeper = new ReconciliationSweeper(null, name -> true, cursors, () -> false, (instance, onDelivered) -> {
+			reported.add(instance.getCounter());
+			onDelivered.run();
+			return true;
+		});
+
+		sweeper.reconcile("p", Arrays.asList(run(3, 0, "Passed"), run(2, 0, "Passed")), Now);
+		Assert.assertTrue("first sweep only positions the cursor", reported.isEmpty());
+		Assert.assertEquals("cursor", 3, cursors.getCursor("p"));
+
+		cursors.markDone("p", 5); // published live.
+		sweeper.reconcile("p", Arrays.asList(run(7, Now, "Passed"), run(6, 0, "Unknown"), run(5, 0, "Passed"), run(4, 0, "Failed"), run(3, 0, "Passed")), Now);
+		Assert.assertEquals("reported runs", Arrays.asList(4), reported);
+		Assert.assertEquals("cursor stops at the unfinished run", 5, cursors.getCursor("p"));
+		Assert.assertFalse("recently completed run is not done yet", cursors.isDone("p", 7));
+
+		cursors.save();
+		ReconciliationCursors reloaded = new ReconciliationCursors(file);
+		Assert.assertEquals("persisted cursor", 5, reloaded.getCursor("p"));
+		reloaded.markDone("p", 6);
+		Assert.assertEquals("cursor advances over done runs", 6, reloaded.getCursor("p"));
+	}
+
+	@Test
+	public void testCursorOnlyAdvancesOnceDelivered() throws IOException {
+		ReconciliationCursors cursors = new ReconciliationCursors(new File(folder.newFolder(), "cursors.json"));
+		cursors.moveTo("p", 1);
+		List<Runnable> deliveries = new ArrayList<>();
+		boolean[] available = {false};
+		ReconciliationSweeper sweeper = new ReconciliationSweeper(null, name -> true, cursors, () -> false, (instance, onDelivered) -> {
+			deliveries.add(onDelivered);
+			return available[0];
+		});
+
+		List<GoPipelineInstance> history = Arrays.asList(run(3, 0, "Passed"), run(2, 0, "Passed"));
+		sweeper.reconcile("p", history, Now);
+		Assert.assertEquals("reporting stops at the first failure", 1, deliveries.size());
+		Assert.assertEquals("cursor stays if the run could not be reported", 1, cursors.getCursor("p"));
+
+		available[0] = true;
+		deliveries.clear();
+		sweeper.reconcile("p", history, Now);
+		Assert.assertEquals("both runs are reported", 2, deliveries.size());
+		Assert.assertEquals("cursor stays until delivered", 1, cursors.getCursor("p"));
+		deliveries.forEach(Runnable::run);
+		Assert.assertEquals("cursor advances once delivered", 3, cursors.getCursor("p"));
+	}
+}
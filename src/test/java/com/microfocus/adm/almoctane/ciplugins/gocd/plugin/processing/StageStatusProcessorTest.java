@@ -0,0 +1,189 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.processing;
+
+import com.google.gson.Gson;
+import com.microfocus.adm.almoctane.ciplugins.gocd.dto.GoPipelineConfig;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter.PipelineDependencyGraph;
+import com.microfocus.adm.almoctane.ciplugins.gocd.plugin.converter.StatusInfoWrapper;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This test ensures that {@link StageStatusProcessor} is working correctly.
+ */
+public class StageStatusProcessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static StatusInfoWrapper statusOf(String pipelineName) {
+		return statusOf(pipelineName, "Building");
+	}
+
+	private static StatusInfoWrapper statusOf(String pipelineName, String state) {
+		return statusOf(pipelineName, "build", state);
+	}
+
+	private static StatusInfoWrapper statusOf(String pipelineName, String stageName, String state) {
+		return new StatusInfoWrapper(bodyOf(pipelineName, stageName, state));
+	}
+
+	private static String bodyOf(String pipelineName, String stageName, String state) {
+		return "{\"pipeline\":{\"name\":\"" + pipelineName + "\",\"counter\":\"1\",\"stage\":{\"name\":\"" + stageName + "\",\"state\":\"" + state + "\"}}}";
+	}
+
+	/**
+	 * Makes the given pipelines known with the stages 'build', 'test' and 'deploy'.
+	 */
+	private static void configureStages(String... pipelineNames) {
+		for (String pipelineName : pipelineNames) {
+			GoPipelineConfig config = new Gson().fromJson("{\"name\":\"" + pipelineName + "\",\"stages\":[{\"name\":\"build\"},{\"name\":\"test\"},{\"name\":\"deploy\"}]}", GoPipelineConfig.class);
+			PipelineDependencyGraph.getInstance().update(pipelineName, config, null);
+		}
+	}
+
+	@Test
+	public void testNotificationsAreProcessedAsynchronously() throws InterruptedException {
+		final CountDownLatch processed = new CountDownLatch(3);
+		StageStatusProcessor processor = new StageStatusProcessor(2, 10, statusInfo -> processed.countDown());
+		Assert.assertTrue("notification should be accepted", processor.submit(statusOf("a")));
+		Assert.assertTrue("notification should be accepted", processor.submit(statusOf("b")));
+		Assert.assertTrue("notification should be accepted", processor.submit(statusOf("c")));
+		Assert.assertTrue("all notifications should be processed", processed.await(5, TimeUnit.SECONDS));
+		processor.shutdown();
+		Assert.assertEquals("accepted notifications", 3, processor.getAcceptedCount());
+		Assert.assertEquals("dropped notifications", 0, processor.getDroppedCount());
+	}
+
+	@Test
+	public void testNotificationsAreDroppedIfQueueIsFull() throws InterruptedException {
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		StageStatusProcessor processor = new StageStatusProcessor(1, 1, statusInfo -> {
+			started.countDown();
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		Assert.assertTrue("first notification is processed", processor.submit(statusOf("a")));
+		Assert.assertTrue("worker should start", started.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue("second notification is queued", processor.submit(statusOf("b")));
+		Assert.assertFalse("third notification is dropped", processor.submit(statusOf("c")));
+		Assert.assertEquals("queue depth", 1, processor.getQueueDepth());
+		Assert.assertEquals("dropped notifications", 1, processor.getDroppedCount());
+		blocker.countDown();
+		processor.shutdown();
+	}
+
+	@Test
+	public void testNotificationsAreClassifiedByEventKind() {
+		configureStages("kind");
+		Assert.assertEquals("first stage start", EventPriority.PipelineStart, EventPriority.of(statusOf("kind", "build", "Building")));
+		Assert.assertEquals("later stage start", EventPriority.StageStart, EventPriority.of(statusOf("kind", "test", "Building")));
+		Assert.assertEquals("intermediate stage end", EventPriority.StageEnd, EventPriority.of(statusOf("kind", "test", "Passed")));
+		Assert.assertEquals("last stage end", EventPriority.PipelineEnd, EventPriority.of(statusOf("kind", "deploy", "Passed")));
+		Assert.assertEquals("failed stage", EventPriority.PipelineEnd, EventPriority.of(statusOf("kind", "build", "Failed")));
+		Assert.assertFalse("stages of unknown pipelines are never shed", EventPriority.of(statusOf("unknown", "test", "Building")).isSheddable());
+		Assert.assertFalse("stages of unknown pipelines are never shed", EventPriority.of(statusOf("unknown", "test", "Passed")).isSheddable());
+	}
+
+	@Test
+	public void testStageLevelNotificationsAreShedUnderPressure() throws InterruptedException {
+		configureStages("shed-a", "shed-b", "shed-c", "shed-d", "shed-e", "shed-f", "shed-g");
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		StageStatusProcessor processor = new StageStatusProcessor(1, 5, 1, statusInfo -> {
+			started.countDown();
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		Assert.assertTrue("first notification is processed", processor.submit(statusOf("shed-a")));
+		Assert.assertTrue("worker should start", started.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue("stage start is queued below the threshold", processor.submit(statusOf("shed-b", "test", "Building")));
+		Assert.assertFalse("stage start is shed above the threshold", processor.submit(statusOf("shed-c", "test", "Building")));
+		Assert.assertTrue("intermediate stage end is queued below the middle", processor.submit(statusOf("shed-c", "build", "Passed")));
+		Assert.assertTrue("pipeline start is never shed", processor.submit(statusOf("shed-d", "build", "Building")));
+		Assert.assertFalse("intermediate stage end is shed above the middle", processor.submit(statusOf("shed-e", "build", "Passed")));
+		Assert.assertTrue("pipeline end is never shed", processor.submit(statusOf("shed-e", "deploy", "Passed")));
+		Assert.assertTrue("failed stage ends the pipeline", processor.submit(statusOf("shed-f", "test", "Failed")));
+		Assert.assertFalse("pipeline end is dropped if the queue is full", processor.submit(statusOf("shed-g", "deploy", "Passed")));
+		Assert.assertEquals("shed stage starts", 1, processor.getShedCount(EventPriority.StageStart));
+		Assert.assertEquals("shed stage ends", 1, processor.getShedCount(EventPriority.StageEnd));
+		Assert.assertEquals("shed pipeline starts", 0, processor.getShedCount(EventPriority.PipelineStart));
+		Assert.assertEquals("dropped pipeline ends", 1, processor.getShedCount(EventPriority.PipelineEnd));
+		Assert.assertEquals("dropped notifications", 3, processor.getDroppedCount());
+		blocker.countDown();
+		processor.shutdown();
+	}
+
+	@Test
+	public void testShedNotificationsAreNotReplayedAfterRestart() throws IOException, InterruptedException {
+		configureStages("replay-a", "replay-b", "replay-c", "replay-d", "replay-e");
+		File directory = folder.newFolder("journal");
+		final NotificationJournal journal = new NotificationJournal(directory);
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		StageStatusProcessor processor = new StageStatusProcessor(1, 1, 1, statusInfo -> {
+			started.countDown();
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		Assert.assertTrue("first notification is processed", submit(processor, journal, "replay-a", "build", "Building"));
+		Assert.assertTrue("worker should start", started.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue("pipeline start is queued", submit(processor, journal, "replay-b", "build", "Building"));
+		Assert.assertFalse("stage start is shed", submit(processor, journal, "replay-c", "test", "Building"));
+		Assert.assertFalse("pipeline end is dropped", submit(processor, journal, "replay-d", "deploy", "Passed"));
+		Assert.assertFalse("intermediate stage end is shed", submit(processor, journal, "replay-e", "build", "Passed"));
+		blocker.countDown();
+		for (int i = 0; i < 500 && processor.getProcessedCount() < 2; i++) {
+			Thread.sleep(10);
+		}
+		processor.shutdown();
+		Assert.assertEquals("processed notifications", 2, processor.getProcessedCount());
+		journal.close();
+
+		List<NotificationJournal.Entry> entries = new NotificationJournal(directory).getRecoveredEntries();
+		Assert.assertEquals("only the dropped pipeline end is replayed", 1, entries.size());
+		Assert.assertEquals("replayed notification", bodyOf("replay-d", "deploy", "Passed"), entries.get(0).getBody());
+	}
+
+	private static boolean submit(StageStatusProcessor processor, final NotificationJournal journal, String pipelineName, String stageName, String state) throws IOException {
+		final long id = journal.append(bodyOf(pipelineName, stageName, state));
+		return processor.submit(statusOf(pipelineName, stageName, state), () -> journal.markDone(id));
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.settings;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This test ensures that {@link PipelineFilter} is working correctly.
+ */
+public class PipelineFilterTest {
+
+	@Test
+	public void testAllPipelinesAreTrackedByDefault() {
+		PipelineFilter filter = new PipelineFilter(new OctaneGoCDPluginSettings());
+		Assert.assertTrue("pipeline should be tracked", filter.isTracked("any-pipeline"));
+		Assert.assertFalse("unknown pipeline should not be tracked", filter.isTracked(null));
+	}
+
+	@Test
+	public void testIncludeAndExcludePatterns() {
+		PipelineFilter filter = new PipelineFilter("octane-*, release?\n nightly", "*-sandbox");
+		Assert.assertTrue("pipeline matching wildcard", filter.isTracked("octane-build"));
+		Assert.assertTrue("pipeline matching single character wildcard", filter.isTracked("release1"));
+		Assert.assertTrue("pipeline matching exact name", filter.isTracked("Nightly"));
+		Assert.assertFalse("excluded pipeline", filter.isTracked("octane-sandbox"));
+		Assert.assertFalse("pipeline not included", filter.isTracked("release10"));
+		Assert.assertFalse("pipeline not included", filter.isTracked("other"));
+	}
+
+	@Test
+	public void testPatternCharactersAreTakenLiterally() {
+		PipelineFilter filter = new PipelineFilter("a.b(c)", null);
+		Assert.assertTrue("pipeline with special characters", filter.isTracked("a.b(c)"));
+		Assert.assertFalse("dot is no wildcard", filter.isTracked("axb(c)"));
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ *  (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * /
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.plugin.settings;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * This test ensures that {@link ReportFilter} selects and prunes test report paths correctly.
+ */
+public class ReportFilterTest {
+
+	@Test
+	public void testWithoutRulesAllXmlFilesAreReports() {
+		ReportFilter.PathRules rules = new ReportFilter(null, " ").forPipeline("pipeline");
+		Assert.assertTrue("xml file", rules.isReport(Arrays.asList("target", "TEST-a.xml")));
+		Assert.assertFalse("other file", rules.isReport(Arrays.asList("target", "log.txt")));
+		Assert.assertTrue("any folder", rules.mayContainReports(Arrays.asList("target")));
+	}
+
+	@Test
+	public void testIncludeRules() {
+		ReportFilter.PathRules rules = new ReportFilter("**/TEST-*.xml, results/TestResult.xml", null).forPipeline("pipeline");
+		Assert.assertTrue("nested junit report", rules.isReport(Arrays.asList("target", "surefire-reports", "TEST-a.xml")));
+		Assert.assertTrue("top level junit report", rules.isReport(Arrays.asList("TEST-a.xml")));
+		Assert.assertTrue("matching is case insensitive", rules.isReport(Arrays.asList("Results", "testresult.XML")));
+		Assert.assertFalse("nested nunit report", rules.isReport(Arrays.asList("target", "results", "TestResult.xml")));
+		Assert.assertFalse("other xml file", rules.isReport(Arrays.asList("target", "pom.xml")));
+	}
+
+	@Test
+	public void testFoldersArePruned() {
+		ReportFilter.PathRules rules = new ReportFilter("build/test-results/*/TEST-*.xml", "build/tmp/**").forPipeline("pipeline");
+		Assert.assertTrue("report folder", rules.mayContainReports(Arrays.asList("build", "test-results", "test")));
+		Assert.assertTrue("parent folder", rules.mayContainReports(Arrays.asList("build")));
+		Assert.assertFalse("folder below the reports", rules.mayContainReports(Arrays.asList("build", "test-results", "test", "binary")));
+		Assert.assertFalse("other folder", rules.mayContainReports(Arrays.asList("docs")));
+		Assert.assertFalse("excluded folder", new ReportFilter(null, "build/tmp/**").forPipeline("pipeline").mayContainReports(Arrays.asList("build", "tmp")));
+	}
+
+	@Test
+	public void testPipelineRules() {
+		ReportFilter filter = new ReportFilter("**/TEST-*.xml\ndotnet-*:**/TestResult.xml", "legacy:**/TEST-old*.xml");
+		Assert.assertTrue("global include", filter.forPipeline("java").isReport(Arrays.asList("TEST-a.xml")));
+		Assert.assertFalse("include of other pipelines", filter.forPipeline("java").isReport(Arrays.asList("TestResult.xml")));
+		Assert.assertTrue("pipeline include", filter.forPipeline("dotnet-app").isReport(Arrays.asList("out", "TestResult.xml")));
+		Assert.assertFalse("pipeline include replaces global includes", filter.forPipeline("dotnet-app").isReport(Arrays.asList("TEST-a.xml")));
+		Assert.assertFalse("pipeline exclude", filter.forPipeline("legacy").isReport(Arrays.asList("TEST-old1.xml")));
+		Assert.assertTrue("exclude of other pipelines", filter.forPipeline("java").isReport(Arrays.asList("TEST-old1.xml")));
+	}
+
+	@Test
+	public void testFindInvalidRule() {
+		Assert.assertNull("valid rules", ReportFilter.findInvalidRule("**/TEST-*.xml, pipeline:**/TestResult.xml"));
+		Assert.assertNull("no rules", ReportFilter.findInvalidRule(null));
+		Assert.assertEquals("empty path", "pipeline:", ReportFilter.findInvalidRule("**/*.xml, pipeline: "));
+		Assert.assertEquals("empty pipeline", ":**/*.xml", ReportFilter.findInvalidRule(" :**/*.xml"));
+	}
+}
@@ -122,4 +122,20 @@ public class SettingsValidatorTest {
 		Assert.assertTrue("list should contain validation issue for missing clientID", issues.contains(new ValidationIssue("clientID", "Client ID can not be empty")));
 		Assert.assertTrue("list should contain validation issue for missing clientSecret", issues.contains(new ValidationIssue("clientSecret", "Client Secret can not be empty")));
 	}
+
+	@Test
+	public void testAgainstSettingsWithInvalidEventProcessingValues() {
+		final List<ValidationIssue> issues = new SettingsValidator().validate(new OctaneGoCDPluginSettings()
+			.setServerURL("https://foobar.org/wildpath?token=s")
+			.setClientID("nobody")
+			.setClientSecret("key")
+			.setGoUsername("alice")
+			.setGoPassword("42")
+			.setEventWorkers("0")
+			.setEventQueueSize("many")
+			.setStageEventThreshold("150"));
+		Assert.assertTrue("list should contain validation issue for eventWorkers", issues.contains(new ValidationIssue("eventWorkers", "Event Processing Threads must be a positive number")));
+		Assert.assertTrue("list should contain validation issue for eventQueueSize", issues.contains(new ValidationIssue("eventQueueSize", "Event Queue Size must be a positive number")));
+		Assert.assertTrue("list should contain validation issue for stageEventThreshold", issues.contains(new ValidationIssue("stageEventThreshold", "Stage Event Threshold must be a percentage between 1 and 100")));
+	}
 }
@@ -0,0 +1,52 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This test ensures that {@link CircuitBreaker} is working correctly.
+ */
+public class CircuitBreakerTest {
+
+	@Test
+	public void testBreakerOpensAfterConsecutiveFailures() {
+		CircuitBreaker breaker = new CircuitBreaker(3, 1000);
+		Assert.assertFalse("first failure keeps the breaker closed", breaker.recordFailure(0));
+		breaker.recordSuccess();
+		Assert.assertFalse("failures are counted again after a success", breaker.recordFailure(0));
+		Assert.assertFalse("second failure keeps the breaker closed", breaker.recordFailure(0));
+		Assert.assertTrue("third failure opens the breaker", breaker.recordFailure(100));
+		Assert.assertFalse("requests are rejected while open", breaker.allowRequest(500));
+		Assert.assertEquals("state", CircuitBreaker.State.Open, breaker.getState());
+	}
+
+	@Test
+	public void testTrialRequestAfterOpenTime() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+		Assert.assertTrue("failure opens the breaker", breaker.recordFailure(0));
+		Assert.assertTrue("trial request is allowed after the open time", breaker.allowRequest(1000));
+		Assert.assertEquals("state", CircuitBreaker.State.HalfOpen, breaker.getState());
+		Assert.assertTrue("failed trial re-opens the breaker", breaker.recordFailure(1000));
+		Assert.assertFalse("requests are rejected again", breaker.allowRequest(1500));
+		Assert.assertTrue("next trial request is allowed", breaker.allowRequest(2000));
+		breaker.recordSuccess();
+		Assert.assertEquals("successful trial closes the breaker", CircuitBreaker.State.Closed, breaker.getState());
+	}
+}
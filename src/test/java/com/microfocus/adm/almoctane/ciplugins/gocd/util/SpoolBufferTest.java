@@ -0,0 +1,100 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.microfocus.adm.almoctane.ciplugins.gocd.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This test ensures that {@link SpoolBuffer} is working correctly.
+ */
+public class SpoolBufferTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSmallContentStaysInMemory() throws IOException {
+		SpoolBuffer buffer = new SpoolBuffer(100);
+		buffer.write("small content".getBytes(StandardCharsets.UTF_8));
+		buffer.close();
+		Assert.assertFalse("content should be kept in memory", buffer.isSpooled());
+		Assert.assertEquals("size", 13, buffer.size());
+		Assert.assertEquals("content", "small content", Streams.readAsString(buffer.openStream()));
+		Assert.assertEquals("content can be read again", "small content", Streams.readAsString(buffer.openStream()));
+	}
+
+	@Test
+	public void testLargeContentIsSpooled() throws IOException {
+		SpoolBuffer buffer = new SpoolBuffer(100);
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			buffer.write(("line " + i + ",").getBytes(StandardCharsets.UTF_8));
+			content.append("line ").append(i).append(',');
+		}
+		buffer.close();
+		Assert.assertTrue("content should be spooled", buffer.isSpooled());
+		Assert.assertEquals("size", content.length(), buffer.size());
+		try (InputStream stream = buffer.takeStream()) {
+			Assert.assertEquals("content", content.toString(), Streams.readAsString(stream));
+		}
+		try {
+			buffer.openStream();
+			Assert.fail("taken content should be deleted");
+		} catch (IOException e) {
+			// expected.
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testContentCannotBeReadWhileWritten() throws IOException {
+		SpoolBuffer buffer = new SpoolBuffer(100);
+		buffer.write(1);
+		buffer.openStream();
+	}
+
+	@Test
+	public void testSpooledFileIsKeptWhileRead() throws IOException {
+		File directory = folder.newFolder("spool");
+		Assert.assertTrue("leftover file", new File(directory, "octane-spool-leftover.tmp").createNewFile());
+		SpoolBuffer.useDirectory(directory);
+		try {
+			Assert.assertEquals("leftover files are deleted", 0, directory.listFiles().length);
+			SpoolBuffer buffer = new SpoolBuffer(10);
+			buffer.write("content beyond the threshold".getBytes(StandardCharsets.UTF_8));
+			buffer.close();
+			Assert.assertEquals("content is spooled into the directory", 1, directory.listFiles().length);
+
+			InputStream stream = buffer.openStream();
+			buffer.delete();
+			Assert.assertFalse("content is still being read", buffer.isReleased());
+			Assert.assertEquals("file is kept while read", 1, directory.listFiles().length);
+			Assert.assertEquals("content", "content beyond the threshold", Streams.readAsString(stream)); // closes the stream.
+			Assert.assertTrue("content is released", buffer.isReleased());
+			Assert.assertEquals("file is deleted after the last stream", 0, directory.listFiles().length);
+		} finally {
+			SpoolBuffer.useDirectory(null);
+		}
+	}
+}
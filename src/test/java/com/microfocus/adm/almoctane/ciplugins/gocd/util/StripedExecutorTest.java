@@ -0,0 +1,177 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This test ensures that {@link StripedExecutor} is working correctly.
+ */
+public class StripedExecutorTest {
+
+	@Test
+	public void testTasksOfSameKeyRunInSubmissionOrder() throws InterruptedException {
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch done = new CountDownLatch(100);
+		StripedExecutor executor = new StripedExecutor(4, 1000, "test");
+		for (int i = 0; i < 100; i++) {
+			final int number = i;
+			executor.execute("pipeline", () -> {
+				order.add(number);
+				done.countDown();
+			});
+		}
+		Assert.assertTrue("all tasks should run", done.await(5, TimeUnit.SECONDS));
+		executor.shutdown();
+		for (int i = 0; i < 100; i++) {
+			Assert.assertEquals("task order", Integer.valueOf(i), order.get(i));
+		}
+	}
+
+	@Test
+	public void testBusyKeyDoesNotStarveOtherKeys() throws InterruptedException {
+		final List<String> order = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(4);
+		StripedExecutor executor = new StripedExecutor(1, 10, "test");
+		executor.execute("a", () -> {
+			started.countDown();
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			order.add("a1");
+			done.countDown();
+		});
+		Assert.assertTrue("first task should start", started.await(5, TimeUnit.SECONDS));
+		executor.execute("a", () -> { order.add("a2"); done.countDown(); });
+		executor.execute("a", () -> { order.add("a3"); done.countDown(); });
+		executor.execute("b", () -> { order.add("b1"); done.countDown(); });
+		blocker.countDown();
+		Assert.assertTrue("all tasks should run", done.await(5, TimeUnit.SECONDS));
+		executor.shutdown();
+		Assert.assertEquals("lanes should be interleaved", Arrays.asList("a1", "b1", "a2", "a3"), order);
+	}
+
+	@Test
+	public void testUrgentLanesRunFirst() throws InterruptedException {
+		final List<String> order = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(5);
+		StripedExecutor executor = new StripedExecutor(1, 10, "test");
+		executor.execute("x", () -> {
+			started.countDown();
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			done.countDown();
+		});
+		Assert.assertTrue("first task should start", started.await(5, TimeUnit.SECONDS));
+		executor.execute("a", 1, () -> { order.add("a1"); done.countDown(); });
+		executor.execute("b", 1, () -> { order.add("b1"); done.countDown(); });
+		executor.execute("c", 0, () -> { order.add("c1"); done.countDown(); });
+		executor.execute("c", 1, () -> { order.add("c2"); done.countDown(); });
+		blocker.countDown();
+		Assert.assertTrue("all tasks should run", done.await(5, TimeUnit.SECONDS));
+		executor.shutdown();
+		Assert.assertEquals("urgent lane should run first", Arrays.asList("c1", "a1", "b1", "c2"), order);
+	}
+
+	@Test
+	public void testResizeKeepsQueuedTasks() throws InterruptedException {
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(3);
+		StripedExecutor executor = new StripedExecutor(1, 10, "test");
+		executor.execute("a", () -> {
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			order.add(1);
+			done.countDown();
+		});
+		executor.execute("a", () -> { order.add(2); done.countDown(); });
+		executor.execute("a", () -> { order.add(3); done.countDown(); });
+		executor.resize(4, 1);
+		Assert.assertEquals("thread count", 4, executor.getThreadCount());
+		try {
+			executor.execute("b", () -> { });
+			Assert.fail("task beyond the new capacity should be rejected");
+		} catch (RejectedExecutionException e) {
+			// expected.
+		}
+		blocker.countDown();
+		Assert.assertTrue("queued tasks should run", done.await(5, TimeUnit.SECONDS));
+		executor.shutdown();
+		Assert.assertEquals("order of the lane", Arrays.asList(1, 2, 3), order);
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testTasksAreRejectedAfterShutdown() {
+		StripedExecutor executor = new StripedExecutor(1, 10, "test");
+		executor.shutdown();
+		executor.execute("a", () -> { });
+	}
+
+	@Test
+	public void testRejectedHandOffDoesNotBlockTheLane() throws InterruptedException {
+		final AtomicBoolean reject = new AtomicBoolean(true);
+		ThreadPoolExecutor workers = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<>()) {
+			@Override
+			public void execute(Runnable command) {
+				if (reject.getAndSet(false)) {
+					throw new RejectedExecutionException("racing a shutdown");
+				}
+				super.execute(command);
+			}
+		};
+		StripedExecutor executor = new StripedExecutor(workers, 10);
+		try {
+			executor.execute("a", () -> { });
+			Assert.fail("the hand-off should be rejected");
+		} catch (RejectedExecutionException e) {
+			// expected.
+		}
+		Assert.assertEquals("rejected task is not queued", 0, executor.getQueuedCount());
+		Assert.assertEquals("rejected lane is removed", 0, executor.getActiveLaneCount());
+
+		final CountDownLatch ran = new CountDownLatch(1);
+		executor.execute("a", ran::countDown);
+		Assert.assertTrue("later tasks of the key should run", ran.await(5, TimeUnit.SECONDS));
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * (c) Copyright 2018 Micro Focus or one of its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.microfocus.adm.almoctane.ciplugins.gocd.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This test ensures that {@link TimeBucketedSet} is working correctly.
+ */
+public class TimeBucketedSetTest {
+
+	@Test
+	public void testValuesAreRememberedWithinWindow() {
+		TimeBucketedSet<String> set = new TimeBucketedSet<>(1000, 10, 100);
+		Assert.assertTrue("first occurrence is added", set.add("a", 10000));
+		Assert.assertFalse("repeat within the window is rejected", set.add("a", 10500));
+		Assert.assertTrue("other value is added", set.add("b", 10500));
+		Assert.assertFalse("repeat at the end of the window is rejected", set.add("a", 10999));
+		Assert.assertTrue("value is forgotten after the window", set.add("a", 11100));
+		Assert.assertEquals("size", 2, set.size());
+	}
+
+	@Test
+	public void testSizeIsBounded() {
+		TimeBucketedSet<Integer> set = new TimeBucketedSet<>(1000, 10, 5);
+		for (int i = 0; i < 20; i++) {
+			set.add(i, 10000 + i * 100);
+			Assert.assertTrue("size must not exceed the maximum", set.size() <= 5);
+		}
+		Assert.assertFalse("recent value is remembered", set.add(19, 12000));
+	}
+}